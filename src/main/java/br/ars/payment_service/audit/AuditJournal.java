@@ -0,0 +1,324 @@
+package br.ars.payment_service.audit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Journal de auditoria append-only em segmentos mapeados em memória.
+ *
+ * Quem audita só faz {@link #append} (offer numa fila lock-free, sem I/O); uma única thread
+ * escritora codifica os registros em binário compacto no segmento corrente e rola para um novo
+ * quando ele enche. Cada registro é [len:int][kind:byte][epochMs:long][latencyUs:long][status:short]
+ * seguido de três strings [n:short][UTF-8]; o len é escrito por último, então len = 0 marca o fim
+ * e um registro pela metade nunca é lido. Fila cheia descarta (métrica app.audit.dropped).
+ */
+@Component
+public class AuditJournal {
+  private static final Logger log = LoggerFactory.getLogger(AuditJournal.class);
+
+  private static final int MAGIC = 0x41554431; // "AUD1"
+  private static final int HEADER = 8;
+  private static final int MAX_STR = 512;
+  private static final String PREFIX = "audit-";
+  private static final String SUFFIX = ".seg";
+
+  private final Queue<AuditRecord> queue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pending = new AtomicInteger();
+  private final ByteBuffer scratch = ByteBuffer.allocate(4 + 1 + 8 + 8 + 2 + 3 * (2 + MAX_STR));
+  private final Counter written;
+  private final Counter dropped;
+
+  @Value("${app.audit.enabled:true}")
+  private boolean enabled;
+
+  @Value("${app.audit.dir:./audit}")
+  private String dirProp;
+
+  @Value("${app.audit.segment-bytes:33554432}")
+  private int segmentBytes;
+
+  @Value("${app.audit.max-segments:32}")
+  private int maxSegments;
+
+  @Value("${app.audit.queue-capacity:65536}")
+  private int queueCapacity;
+
+  @Value("${app.audit.force-interval-ms:1000}")
+  private long forceIntervalMs;
+
+  private Path dir;
+  private Thread writer;
+  private volatile boolean running;
+
+  // estado da thread escritora
+  private MappedByteBuffer segment;
+  private long lastForce;
+  private boolean dirty;
+
+  public AuditJournal(MeterRegistry meters) {
+    this.written = Counter.builder("app.audit.written").description("Registros gravados no journal").register(meters);
+    this.dropped = Counter.builder("app.audit.dropped").description("Registros descartados (fila cheia)").register(meters);
+    Gauge.builder("app.audit.queue", pending, AtomicInteger::get).register(meters);
+  }
+
+  @PostConstruct
+  void start() throws IOException {
+    if (!enabled) return;
+    dir = Paths.get(dirProp).toAbsolutePath();
+    Files.createDirectories(dir);
+    final List<Path> segs = segments();
+    if (segs.isEmpty()) {
+      segment = openNew();
+    } else {
+      segment = map(segs.get(segs.size() - 1), FileChannel.MapMode.READ_WRITE);
+      segment.position(endOf(segment));
+    }
+    running = true;
+    writer = new Thread(this::runWriter, "audit-writer");
+    writer.setDaemon(true);
+    writer.start();
+    log.info("[AUDIT] journal em {} (segmento {} bytes)", dir, segmentBytes);
+  }
+
+  @PreDestroy
+  void stop() throws InterruptedException {
+    running = false;
+    if (writer != null) writer.join(TimeUnit.SECONDS.toMillis(5));
+  }
+
+  public boolean enabled() {
+    return enabled;
+  }
+
+  /** Enfileira o registro; nunca bloqueia nem faz I/O no chamador. */
+  public void append(AuditRecord r) {
+    if (!running) return;
+    if (pending.incrementAndGet() > queueCapacity) {
+      pending.decrementAndGet();
+      dropped.increment();
+      return;
+    }
+    queue.offer(r);
+  }
+
+  public void stripeCall(String target, long latencyNanos, int status, String requestId, String detail) {
+    append(new AuditRecord(AuditRecord.Kind.STRIPE_CALL, Instant.now(), latencyNanos / 1000, status, target, requestId, detail));
+  }
+
+  public void webhook(String type, String eventId, long latencyNanos, int status, String outcome) {
+    append(new AuditRecord(AuditRecord.Kind.WEBHOOK, Instant.now(), latencyNanos / 1000, status, type, eventId, outcome));
+  }
+
+  /* ---------------- leitura ---------------- */
+
+  /**
+   * Percorre os registros em [from, to) em ordem de gravação até o visitor devolver false.
+   * Segmentos fora do intervalo (pelo instante de criação no nome) são pulados sem abrir.
+   */
+  public void scan(Instant from, Instant to, Predicate<AuditRecord> visitor) throws IOException {
+    if (dir == null) return;
+    final List<Path> segs = segments();
+    for (int i = 0; i < segs.size(); i++) {
+      final long created = createdAt(segs.get(i));
+      final long nextCreated = i + 1 < segs.size() ? createdAt(segs.get(i + 1)) : Long.MAX_VALUE;
+      if (to != null && created >= to.toEpochMilli()) break;
+      if (from != null && nextCreated <= from.toEpochMilli()) continue;
+
+      final MappedByteBuffer buf;
+      try {
+        buf = map(segs.get(i), FileChannel.MapMode.READ_ONLY);
+      } catch (IOException e) {
+        continue; // removido pela retenção entre a listagem e a abertura
+      }
+      if (buf.getInt(0) != MAGIC) continue;
+      int pos = HEADER;
+      while (pos + 4 <= buf.limit()) {
+        final int len = buf.getInt(pos);
+        if (len <= 0 || pos + 4 + len > buf.limit()) break;
+        final AuditRecord r = decode(buf.slice(pos + 4, len));
+        pos += 4 + len;
+        if (r == null) continue;
+        if (from != null && r.at().isBefore(from)) continue;
+        if (to != null && !r.at().isBefore(to)) return;
+        if (!visitor.test(r)) return;
+      }
+    }
+  }
+
+  /* ---------------- escrita (thread única) ---------------- */
+
+  private void runWriter() {
+    long idleNanos = 50_000;
+    while (running || !queue.isEmpty()) {
+      final AuditRecord r = queue.poll();
+      if (r == null) {
+        maybeForce();
+        LockSupport.parkNanos(idleNanos);
+        idleNanos = Math.min(idleNanos * 2, 2_000_000);
+        continue;
+      }
+      idleNanos = 50_000;
+      pending.decrementAndGet();
+      try {
+        write(r);
+        written.increment();
+      } catch (Exception e) {
+        dropped.increment();
+        log.warn("[AUDIT] falha ao gravar: {}", e.getMessage());
+      }
+    }
+    if (segment != null) segment.force();
+  }
+
+  private void write(AuditRecord r) throws IOException {
+    scratch.clear();
+    scratch.position(4);
+    scratch.put(r.kind().code);
+    scratch.putLong(r.at().toEpochMilli());
+    scratch.putLong(r.latencyMicros());
+    scratch.putShort((short) r.status());
+    putStr(r.target());
+    putStr(r.ref());
+    putStr(r.detail());
+    final int len = scratch.position() - 4;
+
+    // sempre sobra espaço para um len = 0 depois do registro
+    if (segment.remaining() < 4 + len + 4) {
+      segment.force();
+      segment = openNew();
+      prune();
+    }
+    final int at = segment.position();
+    segment.put(at + 4, scratch.array(), 4, len);
+    segment.putInt(at, len);
+    segment.position(at + 4 + len);
+    dirty = true;
+  }
+
+  private void putStr(String s) {
+    if (s == null || s.isEmpty()) {
+      scratch.putShort((short) 0);
+      return;
+    }
+    final byte[] b = s.getBytes(StandardCharsets.UTF_8);
+    final int n = Math.min(b.length, MAX_STR);
+    scratch.putShort((short) n);
+    scratch.put(b, 0, n);
+  }
+
+  private void maybeForce() {
+    final long now = System.currentTimeMillis();
+    if (dirty && now - lastForce >= forceIntervalMs) {
+      segment.force();
+      dirty = false;
+      lastForce = now;
+    }
+  }
+
+  private MappedByteBuffer openNew() throws IOException {
+    long created = System.currentTimeMillis();
+    Path p;
+    while (Files.exists(p = dir.resolve(name(created)))) created++;
+    final MappedByteBuffer buf;
+    try (FileChannel ch = FileChannel.open(p, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+    }
+    buf.putInt(0, MAGIC);
+    buf.position(HEADER);
+    return buf;
+  }
+
+  private void prune() {
+    try {
+      final List<Path> segs = segments();
+      for (int i = 0; i < segs.size() - maxSegments; i++) Files.deleteIfExists(segs.get(i));
+    } catch (IOException e) {
+      log.warn("[AUDIT] retenção falhou: {}", e.getMessage());
+    }
+  }
+
+  /* ---------------- utilitários ---------------- */
+
+  private List<Path> segments() throws IOException {
+    try (Stream<Path> s = Files.list(dir)) {
+      return s.filter(p -> {
+            final String n = p.getFileName().toString();
+            return n.startsWith(PREFIX) && n.endsWith(SUFFIX);
+          })
+          .sorted()
+          .toList();
+    }
+  }
+
+  private static MappedByteBuffer map(Path p, FileChannel.MapMode mode) throws IOException {
+    final StandardOpenOption[] opts = mode == FileChannel.MapMode.READ_ONLY
+        ? new StandardOpenOption[] { StandardOpenOption.READ }
+        : new StandardOpenOption[] { StandardOpenOption.READ, StandardOpenOption.WRITE };
+    try (FileChannel ch = FileChannel.open(p, opts)) {
+      return ch.map(mode, 0, ch.size());
+    }
+  }
+
+  /** Primeira posição livre de um segmento existente (após o último registro completo). */
+  private static int endOf(MappedByteBuffer buf) {
+    int pos = HEADER;
+    while (pos + 4 <= buf.limit()) {
+      final int len = buf.getInt(pos);
+      if (len <= 0 || pos + 4 + len > buf.limit()) break;
+      pos += 4 + len;
+    }
+    return pos;
+  }
+
+  private static AuditRecord decode(ByteBuffer b) {
+    final AuditRecord.Kind kind = AuditRecord.Kind.of(b.get());
+    if (kind == null) return null;
+    final long at = b.getLong();
+    final long latency = b.getLong();
+    final int status = b.getShort();
+    return new AuditRecord(kind, Instant.ofEpochMilli(at), latency, status, getStr(b), getStr(b), getStr(b));
+  }
+
+  private static String getStr(ByteBuffer b) {
+    final int n = b.getShort();
+    if (n == 0) return null;
+    final byte[] s = new byte[n];
+    b.get(s);
+    return new String(s, StandardCharsets.UTF_8);
+  }
+
+  private static String name(long createdMillis) {
+    return PREFIX + String.format("%016d", createdMillis) + SUFFIX;
+  }
+
+  private static long createdAt(Path p) {
+    final String n = p.getFileName().toString();
+    return Long.parseLong(n.substring(PREFIX.length(), n.length() - SUFFIX.length()));
+  }
+}
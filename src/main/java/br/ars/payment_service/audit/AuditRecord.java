@@ -0,0 +1,35 @@
+package br.ars.payment_service.audit;
+
+import java.time.Instant;
+
+/**
+ * Registro do journal de auditoria.
+ *
+ * STRIPE_CALL: target = "MÉTODO /caminho", ref = request-id da Stripe, detail = id do objeto (2xx) ou
+ * código do erro. WEBHOOK: target = tipo do evento, ref = id do evento, detail = resultado.
+ * status é o HTTP devolvido (0 = falha de conexão / sem resposta).
+ */
+public record AuditRecord(
+    Kind kind,
+    Instant at,
+    long latencyMicros,
+    int status,
+    String target,
+    String ref,
+    String detail
+) {
+  public enum Kind {
+    STRIPE_CALL(1), WEBHOOK(2);
+
+    final byte code;
+
+    Kind(int code) {
+      this.code = (byte) code;
+    }
+
+    static Kind of(byte code) {
+      for (Kind k : values()) if (k.code == code) return k;
+      return null;
+    }
+  }
+}
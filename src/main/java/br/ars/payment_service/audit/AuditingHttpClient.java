@@ -0,0 +1,79 @@
+package br.ars.payment_service.audit;
+
+import com.stripe.exception.StripeException;
+import com.stripe.net.HttpClient;
+import com.stripe.net.StripeRequest;
+import com.stripe.net.StripeResponse;
+import com.stripe.net.StripeResponseStream;
+
+/**
+ * HttpClient da Stripe que delega a outro e registra cada tentativa no {@link AuditJournal}
+ * (método/caminho, status, request-id, latência e id do objeto ou código do erro).
+ * Retentativas continuam no HttpClient base, então cada tentativa vira um registro.
+ */
+public final class AuditingHttpClient extends HttpClient {
+
+  private final HttpClient delegate;
+  private final AuditJournal journal;
+
+  public AuditingHttpClient(HttpClient delegate, AuditJournal journal) {
+    this.delegate = delegate;
+    this.journal = journal;
+  }
+
+  @Override
+  public StripeResponse request(StripeRequest request) throws StripeException {
+    final long t0 = System.nanoTime();
+    try {
+      final StripeResponse res = delegate.request(request);
+      journal.stripeCall(target(request), System.nanoTime() - t0, res.code(), res.requestId(), summary(res));
+      return res;
+    } catch (StripeException | RuntimeException e) {
+      journal.stripeCall(target(request), System.nanoTime() - t0, 0, null, e.getClass().getSimpleName());
+      throw e;
+    }
+  }
+
+  @Override
+  public StripeResponseStream requestStream(StripeRequest request) throws StripeException {
+    final long t0 = System.nanoTime();
+    try {
+      final StripeResponseStream res = delegate.requestStream(request);
+      journal.stripeCall(target(request), System.nanoTime() - t0, res.code(), res.requestId(), "stream");
+      return res;
+    } catch (StripeException | RuntimeException e) {
+      journal.stripeCall(target(request), System.nanoTime() - t0, 0, null, e.getClass().getSimpleName());
+      throw e;
+    }
+  }
+
+  private static String target(StripeRequest r) {
+    return r.method().name() + " " + r.url().getPath();
+  }
+
+  static String summary(StripeResponse res) {
+    return summary(res.code(), res.body());
+  }
+
+  /**
+   * id do objeto (2xx) ou code/type do erro, olhando só o começo do corpo (sem parse completo).
+   * Também usado pelas chamadas HTTP diretas (fora do SDK), para o registro sair igual.
+   */
+  public static String summary(int status, String body) {
+    if (body == null) return null;
+    return status / 100 == 2 ? field(body, "\"id\"") : firstNonNull(field(body, "\"code\""), field(body, "\"type\""));
+  }
+
+  private static String field(String body, String key) {
+    final int k = body.indexOf(key, 0);
+    if (k < 0 || k > 2048) return null;
+    final int q1 = body.indexOf('"', body.indexOf(':', k + key.length()) + 1);
+    if (q1 < 0) return null;
+    final int q2 = body.indexOf('"', q1 + 1);
+    return q2 > q1 && q2 - q1 <= 256 ? body.substring(q1 + 1, q2) : null;
+  }
+
+  private static String firstNonNull(String a, String b) {
+    return a != null ? a : b;
+  }
+}
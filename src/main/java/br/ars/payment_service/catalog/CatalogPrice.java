@@ -0,0 +1,34 @@
+package br.ars.payment_service.catalog;
+
+import com.stripe.model.Price;
+
+/** Price da Stripe reduzido ao que o serviço usa (valores em centavos). */
+public record CatalogPrice(
+    String id,
+    String productId,
+    boolean active,
+    String currency,
+    Long unitAmount,
+    String interval,        // day | week | month | year; null = avulso
+    long intervalCount,
+    String lookupKey,
+    String nickname
+) {
+  public boolean recurring() {
+    return interval != null;
+  }
+
+  static CatalogPrice of(Price p) {
+    final Price.Recurring r = p.getRecurring();
+    return new CatalogPrice(
+        p.getId(),
+        p.getProduct(),
+        Boolean.TRUE.equals(p.getActive()) && !Boolean.TRUE.equals(p.getDeleted()),
+        p.getCurrency(),
+        p.getUnitAmount(),
+        r != null ? r.getInterval() : null,
+        r != null && r.getIntervalCount() != null ? r.getIntervalCount() : 1,
+        p.getLookupKey(),
+        p.getNickname());
+  }
+}
@@ -0,0 +1,22 @@
+package br.ars.payment_service.catalog;
+
+import com.stripe.model.Product;
+
+import java.util.Map;
+
+public record CatalogProduct(
+    String id,
+    String name,
+    String description,
+    boolean active,
+    Map<String, String> metadata
+) {
+  static CatalogProduct of(Product p) {
+    return new CatalogProduct(
+        p.getId(),
+        p.getName(),
+        p.getDescription(),
+        Boolean.TRUE.equals(p.getActive()) && !Boolean.TRUE.equals(p.getDeleted()),
+        p.getMetadata() != null ? Map.copyOf(p.getMetadata()) : Map.of());
+  }
+}
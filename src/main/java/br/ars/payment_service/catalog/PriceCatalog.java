@@ -0,0 +1,266 @@
+package br.ars.payment_service.catalog;
+
+import com.stripe.Stripe;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Event;
+import com.stripe.model.EventDataObjectDeserializer;
+import com.stripe.model.Price;
+import com.stripe.model.Product;
+import com.stripe.model.StripeObject;
+import com.stripe.param.EventListParams;
+import com.stripe.param.PriceListParams;
+import com.stripe.param.ProductListParams;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Catálogo de Prices/Products da Stripe em memória.
+ *
+ * Leitores só fazem um get() no AtomicReference e consultam mapas imutáveis; escritores (carga
+ * inicial, webhooks price.* / product.*, sync periódico) montam um snapshot novo e trocam de uma vez.
+ * O sync periódico é incremental pela Events API (eventos de price/product desde o último visto), com
+ * recarga completa a cada app.catalog.full-reload-ms. Sem carga bem-sucedida o catálogo não bloqueia
+ * nada: a validação de priceId fica com a Stripe, como antes.
+ *
+ * Webhook e sync podem entregar eventos fora de ordem: cada objeto guarda o created do último evento
+ * aplicado (ou o início da carga completa) e evento mais antigo é ignorado. Produtos são carregados
+ * todos, inclusive arquivados; produto ausente do snapshot conta como inativo.
+ */
+@Service
+public class PriceCatalog {
+  private static final Logger log = LoggerFactory.getLogger(PriceCatalog.class);
+
+  static final List<String> EVENT_TYPES = List.of(
+      "price.created", "price.updated", "price.deleted",
+      "product.created", "product.updated", "product.deleted");
+
+  /**
+   * Snapshot imutável. plans = recorrentes ativos de produtos ativos (produto desconhecido = inativo),
+   * ordenados por produto e valor.
+   */
+  public record Snapshot(Map<String, CatalogPrice> prices, Map<String, CatalogProduct> products,
+                         List<CatalogPrice> plans, boolean loaded, Instant loadedAt) {
+    static final Snapshot EMPTY = new Snapshot(Map.of(), Map.of(), List.of(), false, Instant.EPOCH);
+
+    static Snapshot of(Map<String, CatalogPrice> prices, Map<String, CatalogProduct> products) {
+      final List<CatalogPrice> plans = new ArrayList<>();
+      for (CatalogPrice p : prices.values()) {
+        final CatalogProduct prod = products.get(p.productId());
+        if (p.active() && p.recurring() && prod != null && prod.active()) plans.add(p);
+      }
+      plans.sort(Comparator
+          .comparing((CatalogPrice p) -> Optional.ofNullable(products.get(p.productId())).map(CatalogProduct::name).orElse(""))
+          .thenComparing(p -> p.unitAmount() == null ? Long.MAX_VALUE : p.unitAmount()));
+      return new Snapshot(Map.copyOf(prices), Map.copyOf(products), List.copyOf(plans), true, Instant.now());
+    }
+  }
+
+  private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.EMPTY);
+  private final Object writeLock = new Object();
+  /** id do price/product -> created (epoch s) do último evento aplicado; sob writeLock. */
+  private final Map<String, Long> appliedAt = new HashMap<>();
+
+  /** created (epoch s) do último evento aplicado pelo sync incremental. */
+  private volatile long eventCursor;
+  private volatile long lastFullLoadMs;
+
+  @Value("${app.stripe.secret-key}")
+  private String stripeSecretKey;
+
+  @Value("${app.catalog.enabled:true}")
+  private boolean enabled;
+
+  @Value("${app.catalog.full-reload-ms:21600000}")
+  private long fullReloadMs;
+
+  public PriceCatalog(MeterRegistry meters) {
+    Gauge.builder("app.catalog.prices", snapshot, s -> s.get().prices().size()).register(meters);
+    Gauge.builder("app.catalog.age.seconds", snapshot,
+        s -> s.get().loaded() ? Duration.between(s.get().loadedAt(), Instant.now()).toSeconds() : Double.NaN).register(meters);
+  }
+
+  /* ---------------- leitura ---------------- */
+
+  public Snapshot snapshot() {
+    return snapshot.get();
+  }
+
+  public Optional<CatalogPrice> price(String priceId) {
+    return Optional.ofNullable(snapshot.get().prices().get(priceId));
+  }
+
+  public Optional<CatalogProduct> product(String productId) {
+    return Optional.ofNullable(snapshot.get().products().get(productId));
+  }
+
+  /**
+   * Price do snapshot ou, se ausente (ex.: arquivado, fora da carga de ativos), busca na Stripe e
+   * guarda no snapshot para as próximas consultas.
+   */
+  public CatalogPrice resolve(String priceId) throws StripeException {
+    final CatalogPrice cached = snapshot.get().prices().get(priceId);
+    if (cached != null) return cached;
+    Stripe.apiKey = stripeSecretKey;
+    final CatalogPrice fetched = CatalogPrice.of(Price.retrieve(priceId));
+    synchronized (writeLock) {
+      final Snapshot cur = snapshot.get();
+      if (cur.loaded() && !cur.prices().containsKey(priceId)) {
+        final Map<String, CatalogPrice> prices = new HashMap<>(cur.prices());
+        prices.put(priceId, fetched);
+        snapshot.set(Snapshot.of(prices, cur.products()));
+      }
+    }
+    return fetched;
+  }
+
+  /**
+   * Rejeita priceId desconhecido ou inativo sem ida à Stripe. Antes da primeira carga não valida
+   * (a Stripe decide, como antes do catálogo existir).
+   */
+  public void requireActive(String priceId) {
+    final Snapshot s = snapshot.get();
+    if (!s.loaded()) return;
+    final CatalogPrice p = s.prices().get(priceId);
+    if (p == null || !p.active()) throw new IllegalArgumentException("priceId desconhecido ou inativo: " + priceId);
+    final CatalogProduct prod = s.products().get(p.productId());
+    if (prod == null || !prod.active()) throw new IllegalArgumentException("produto inativo para priceId: " + priceId);
+  }
+
+  /* ---------------- escrita ---------------- */
+
+  @EventListener(ApplicationStartedEvent.class)
+  public void loadOnStartup() {
+    if (!enabled) return;
+    try {
+      fullLoad();
+    } catch (Exception e) {
+      log.warn("[CATALOG] carga inicial falhou (validação local desligada até o próximo sync): {}", e.getMessage());
+    }
+  }
+
+  /** Recarrega tudo (prices ativos + todos os produtos, arquivados inclusive). */
+  public void fullLoad() throws StripeException {
+    Stripe.apiKey = stripeSecretKey;
+    final long startedAt = Instant.now().getEpochSecond();
+    final Map<String, CatalogPrice> prices = new HashMap<>();
+    final Map<String, CatalogProduct> products = new HashMap<>();
+
+    for (Product p : Product.list(ProductListParams.builder().setLimit(100L).build()).autoPagingIterable()) {
+      products.put(p.getId(), CatalogProduct.of(p));
+    }
+    for (Price p : Price.list(PriceListParams.builder().setActive(true).setLimit(100L).build()).autoPagingIterable()) {
+      prices.put(p.getId(), CatalogPrice.of(p));
+    }
+
+    synchronized (writeLock) {
+      snapshot.set(Snapshot.of(prices, products));
+      // eventos a partir do início da carga serão reaplicados pelo sync (idempotente)
+      eventCursor = Math.max(eventCursor, startedAt - 1);
+      appliedAt.clear();
+      prices.keySet().forEach(id -> appliedAt.put(id, startedAt - 1));
+      products.keySet().forEach(id -> appliedAt.put(id, startedAt - 1));
+      lastFullLoadMs = System.currentTimeMillis();
+    }
+    log.info("[CATALOG] carregado: {} prices, {} produtos", prices.size(), products.size());
+  }
+
+  /** Sync periódico: incremental pela Events API; recarga completa quando vencida ou sem carga. */
+  @Scheduled(initialDelayString = "${app.catalog.sync-interval-ms:300000}",
+             fixedDelayString = "${app.catalog.sync-interval-ms:300000}")
+  public void sync() {
+    if (!enabled) return;
+    try {
+      if (!snapshot.get().loaded() || System.currentTimeMillis() - lastFullLoadMs > fullReloadMs) {
+        fullLoad();
+        return;
+      }
+      Stripe.apiKey = stripeSecretKey;
+      final List<Event> events = new ArrayList<>();
+      final EventListParams params = EventListParams.builder()
+          .addAllType(EVENT_TYPES)
+          .setCreated(EventListParams.Created.builder().setGte(eventCursor).build())
+          .setLimit(100L)
+          .build();
+      for (Event e : Event.list(params).autoPagingIterable()) events.add(e);
+      if (events.isEmpty()) return;
+      // a listagem vem do mais novo para o mais velho
+      events.sort(Comparator.comparing(Event::getCreated));
+      int applied = 0;
+      for (Event e : events) {
+        if (apply(e)) applied++;
+      }
+      log.info("[CATALOG] sync incremental: {} eventos aplicados", applied);
+    } catch (Exception e) {
+      log.warn("[CATALOG] sync falhou: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Aplica um evento price.* / product.* (webhook ou sync). true se o snapshot mudou; evento mais
+   * antigo que o último aplicado ao mesmo objeto é ignorado.
+   */
+  public boolean apply(Event event) {
+    if (event == null || !EVENT_TYPES.contains(event.getType())) return false;
+    final StripeObject obj = object(event);
+    if (obj == null) return false;
+    final boolean deleted = event.getType().endsWith(".deleted");
+
+    synchronized (writeLock) {
+      final Snapshot cur = snapshot.get();
+      if (!cur.loaded()) return false; // sem base para aplicar delta; a próxima carga completa traz o estado
+      final String id = obj instanceof Price p ? p.getId() : obj instanceof Product p ? p.getId() : null;
+      if (id == null) return false;
+      final long created = event.getCreated() != null ? event.getCreated() : 0;
+      final Long last = appliedAt.get(id);
+      if (last != null && created < last) {
+        log.debug("[CATALOG] {} ({}) mais antigo que o último aplicado para {}; ignorado", event.getType(), event.getId(), id);
+        return false;
+      }
+      final Map<String, CatalogPrice> prices = new HashMap<>(cur.prices());
+      final Map<String, CatalogProduct> products = new HashMap<>(cur.products());
+      if (obj instanceof Price p) {
+        if (deleted) prices.remove(p.getId());
+        else prices.put(p.getId(), CatalogPrice.of(p));
+      } else if (obj instanceof Product p) {
+        if (deleted) products.remove(p.getId());
+        else products.put(p.getId(), CatalogProduct.of(p));
+      } else {
+        return false;
+      }
+      snapshot.set(Snapshot.of(prices, products));
+      appliedAt.put(id, created); // fica também para deleted: update atrasado não ressuscita o objeto
+      if (event.getCreated() != null) eventCursor = Math.max(eventCursor, event.getCreated());
+    }
+    log.debug("[CATALOG] {} aplicado ({})", event.getType(), event.getId());
+    return true;
+  }
+
+  private static StripeObject object(Event event) {
+    final EventDataObjectDeserializer des = event.getDataObjectDeserializer();
+    final Optional<StripeObject> obj = des.getObject();
+    if (obj.isPresent()) return obj.get();
+    try {
+      return des.deserializeUnsafe(); // api_version do evento diferente da do SDK
+    } catch (Exception e) {
+      log.warn("[CATALOG] não deu para ler {} ({}): {}", event.getType(), event.getId(), e.getMessage());
+      return null;
+    }
+  }
+}
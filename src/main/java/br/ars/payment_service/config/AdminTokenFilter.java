@@ -0,0 +1,51 @@
+package br.ars.payment_service.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Protege os caminhos de admin (SecurityConfig) com um token estático (header X-Admin-Token).
+ * Sem app.admin.token configurado, os endpoints de admin respondem 404.
+ *
+ * O matcher tem de ver o caminho como o DispatcherServlet roteia (decodificado, sem matrix params):
+ * prefixo do getRequestURI cru deixa passar /api/%61dmin/..., que o Spring MVC mapeia para /api/admin/.
+ */
+public class AdminTokenFilter extends OncePerRequestFilter {
+  static final String HEADER = "X-Admin-Token";
+
+  private final byte[] token;
+  private final RequestMatcher protectedPaths;
+
+  public AdminTokenFilter(String token, RequestMatcher protectedPaths) {
+    this.token = token == null || token.isBlank() ? null : token.getBytes(StandardCharsets.UTF_8);
+    this.protectedPaths = protectedPaths;
+  }
+
+  @Override
+  protected boolean shouldNotFilter(HttpServletRequest request) {
+    return !protectedPaths.matches(request);
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest req, HttpServletResponse res, FilterChain chain)
+      throws ServletException, IOException {
+    if (token == null) {
+      res.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    final String got = req.getHeader(HEADER);
+    if (got == null || !MessageDigest.isEqual(token, got.getBytes(StandardCharsets.UTF_8))) {
+      res.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+      return;
+    }
+    chain.doFilter(req, res);
+  }
+}
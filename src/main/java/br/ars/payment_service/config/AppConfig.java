@@ -1,18 +1,23 @@
 package br.ars.payment_service.config;
 
+import br.ars.payment_service.audit.AuditJournal;
+import br.ars.payment_service.audit.AuditingHttpClient;
 import com.stripe.Stripe;
+import com.stripe.net.ApiResource;
+import com.stripe.net.HttpURLConnectionClient;
+import com.stripe.net.LiveStripeResponseGetter;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @Configuration
-@EnableConfigurationProperties(StripeProperties.class)
+@EnableConfigurationProperties({ StripeProperties.class, PixProperties.class })
 public class AppConfig implements WebMvcConfigurer {
 
   private final StripeProperties props;
 
-  public AppConfig(StripeProperties props) {
+  public AppConfig(StripeProperties props, AuditJournal audit) {
     this.props = props;
 
     // Configura a secret key global do Stripe
@@ -20,6 +25,12 @@ public class AppConfig implements WebMvcConfigurer {
 
     // Opcional: identifica sua app nos headers do Stripe
     Stripe.setAppInfo("ars-billing", "1.0.0", null);
+
+    // Toda chamada à Stripe (API estática) passa pelo journal de auditoria
+    if (audit.enabled()) {
+      ApiResource.setGlobalResponseGetter(
+          new LiveStripeResponseGetter(new AuditingHttpClient(new HttpURLConnectionClient(), audit)));
+    }
   }
 
   @Override
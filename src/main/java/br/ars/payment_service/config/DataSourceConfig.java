@@ -0,0 +1,67 @@
+package br.ars.payment_service.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+
+/**
+ * Pool do primário (spring.datasource.*) + pool opcional da réplica (app.datasource.replica.*), atrás
+ * de um roteador por transação. Sem app.datasource.replica.url tudo vai para o primário, como antes.
+ * A réplica é decidida em runtime (não via @Conditional) para valer também com AOT.
+ */
+@Configuration
+public class DataSourceConfig {
+  private static final Logger log = LoggerFactory.getLogger(DataSourceConfig.class);
+
+  private HikariDataSource replicaPool;
+
+  @Bean
+  @ConfigurationProperties("spring.datasource.hikari")
+  public HikariDataSource primaryPool(DataSourceProperties props) {
+    final HikariDataSource ds = props.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    ds.setPoolName("primary");
+    return ds;
+  }
+
+  @Bean
+  @Primary
+  public DataSource dataSource(HikariDataSource primaryPool, DataSourceProperties props, Environment env,
+                               ReplicaLagGuard guard, MeterRegistry meters) {
+    final String url = env.getProperty("app.datasource.replica.url");
+    if (StringUtils.hasText(url)) {
+      final HikariDataSource replica = new HikariDataSource();
+      replica.setPoolName("replica");
+      replica.setJdbcUrl(url);
+      replica.setUsername(env.getProperty("app.datasource.replica.username", props.determineUsername()));
+      replica.setPassword(env.getProperty("app.datasource.replica.password", props.determinePassword()));
+      replica.setReadOnly(true);
+      Binder.get(env).bind("app.datasource.replica.hikari", Bindable.ofInstance(replica));
+      // pools fora do contexto não ganham as métricas hikaricp.* automaticamente
+      replica.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meters));
+      replicaPool = replica;
+      guard.monitor(primaryPool, replica);
+      log.info("[DB] réplica de leitura configurada ({})", url);
+    }
+    return new LazyConnectionDataSourceProxy(new ReadWriteRoutingDataSource(primaryPool, replicaPool, guard, meters));
+  }
+
+  @PreDestroy
+  void close() {
+    if (replicaPool != null) replicaPool.close();
+  }
+}
@@ -0,0 +1,78 @@
+package br.ars.payment_service.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "pix")
+public class PixProperties {
+
+  /** Chave PIX do recebedor (pix.key) */
+  private String key;
+
+  /** Valor fixo da cobrança, em reais (pix.amount) */
+  private String amount;
+
+  private Merchant merchant = new Merchant();
+  private Txid txid = new Txid();
+  private Qr qr = new Qr();
+
+  // ---- nested ----
+  public static class Merchant {
+    /** pix.merchant.name (máx. 25 no BR Code) */
+    private String name;
+    /** pix.merchant.city (máx. 15 no BR Code) */
+    private String city;
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+    public String getCity() { return city; }
+    public void setCity(String city) { this.city = city; }
+  }
+
+  public static class Txid {
+    /** pix.txid.prefix */
+    private String prefix = "ARS";
+
+    public String getPrefix() { return prefix; }
+    public void setPrefix(String prefix) { this.prefix = prefix; }
+  }
+
+  public static class Qr {
+    /** pix.qr.expiration-minutes */
+    private long expirationMinutes = 60;
+    /** pix.qr.module-pixels: tamanho de cada módulo do QR em pixels */
+    private int modulePixels = 8;
+    /** pix.qr.render-threads: threads dedicadas à renderização */
+    private int renderThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+    /** pix.qr.render-queue: fila máxima de renderizações pendentes (excedente => 503) */
+    private int renderQueue = 2048;
+    /** pix.qr.cache-size: PNGs mantidos em memória */
+    private long cacheSize = 50_000;
+
+    public long getExpirationMinutes() { return expirationMinutes; }
+    public void setExpirationMinutes(long v) { this.expirationMinutes = v; }
+    public int getModulePixels() { return modulePixels; }
+    public void setModulePixels(int v) { this.modulePixels = v; }
+    public int getRenderThreads() { return renderThreads; }
+    public void setRenderThreads(int v) { this.renderThreads = v; }
+    public int getRenderQueue() { return renderQueue; }
+    public void setRenderQueue(int v) { this.renderQueue = v; }
+    public long getCacheSize() { return cacheSize; }
+    public void setCacheSize(long v) { this.cacheSize = v; }
+  }
+
+  // ---- getters/setters ----
+  public String getKey() { return key; }
+  public void setKey(String key) { this.key = key; }
+
+  public String getAmount() { return amount; }
+  public void setAmount(String amount) { this.amount = amount; }
+
+  public Merchant getMerchant() { return merchant; }
+  public void setMerchant(Merchant merchant) { this.merchant = merchant; }
+
+  public Txid getTxid() { return txid; }
+  public void setTxid(Txid txid) { this.txid = txid; }
+
+  public Qr getQr() { return qr; }
+  public void setQr(Qr qr) { this.qr = qr; }
+}
@@ -0,0 +1,60 @@
+package br.ars.payment_service.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Escolhe o pool na hora de abrir a conexão: transações @Transactional(readOnly = true) explícitas
+ * vão para a réplica (se o {@link ReplicaLagGuard} deixar); todo o resto vai para o primário.
+ *
+ * Precisa ficar atrás de um LazyConnectionDataSourceProxy: o flag readOnly só é publicado depois que
+ * o transaction manager pede a conexão. As transações implícitas dos métodos CRUD do Spring Data
+ * (SimpleJpaRepository, readOnly por default) ficam no primário: são chamadas soltas em fluxos de
+ * escrita (ex.: findById antes de um save) que não podem ler dado atrasado.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+  enum Route { PRIMARY, REPLICA }
+
+  private static final String SPRING_DATA_TX = "org.springframework.data.";
+
+  private final ReplicaLagGuard guard;
+  private final Counter toPrimary;
+  private final Counter toReplica;
+
+  public ReadWriteRoutingDataSource(DataSource primary, DataSource replica, ReplicaLagGuard guard, MeterRegistry meters) {
+    this.guard = guard;
+    this.toPrimary = Counter.builder("app.datasource.route").tag("target", "primary").register(meters);
+    this.toReplica = Counter.builder("app.datasource.route").tag("target", "replica").register(meters);
+    setTargetDataSources(replica != null
+        ? Map.of(Route.PRIMARY, primary, Route.REPLICA, replica)
+        : Map.of(Route.PRIMARY, primary));
+    setDefaultTargetDataSource(primary);
+    setLenientFallback(false);
+    afterPropertiesSet();
+  }
+
+  @Override
+  protected Object determineCurrentLookupKey() {
+    if (readOnlyTransaction() && guard.replicaAllowed()) {
+      toReplica.increment();
+      return Route.REPLICA;
+    }
+    toPrimary.increment();
+    return Route.PRIMARY;
+  }
+
+  private static boolean readOnlyTransaction() {
+    if (!TransactionSynchronizationManager.isActualTransactionActive()
+        || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+      return false;
+    }
+    final String name = TransactionSynchronizationManager.getCurrentTransactionName();
+    return name == null || !name.startsWith(SPRING_DATA_TX);
+  }
+}
@@ -0,0 +1,172 @@
+package br.ars.payment_service.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Decide se uma leitura pode ir para a réplica.
+ *
+ * Global: a cada probe o primário grava um heartbeat (replica_heartbeat, relógio do primário) e a
+ * réplica é lida em seguida; o atraso é a idade, no relógio do primário, do heartbeat que a réplica já
+ * aplicou (0 se já viu o último gravado; resolução de probe-ms). Réplica em recovery sem WAL receiver
+ * em streaming (desconectada do primário) fica inutilizável, mesmo com receive = replay. Acima de
+ * app.datasource.replica.max-lag-ms todas as leituras voltam ao primário. Por chave (usuário/assinatura): quem acabou de escrever lê do
+ * primário durante a janela read-your-writes (no mínimo o atraso medido), para não ver o estado antigo.
+ * O pin vale para a transação corrente e é limpo no fim dela.
+ *
+ * As escritas recentes ficam na memória deste nó: read-your-writes só vale se a leitura cair no mesmo
+ * pod que escreveu. Com réplica configurada, o balanceador precisa de afinidade de sessão por usuário
+ * (sticky session); sem ela, uma leitura em outro pod pode ver até max-lag-ms de atraso. Mudanças
+ * vindas de webhook (escritas em qualquer pod) têm sempre esse atraso máximo.
+ */
+@Component
+public class ReplicaLagGuard {
+  private static final Logger log = LoggerFactory.getLogger(ReplicaLagGuard.class);
+
+  /** Monotônico: vários nós gravam a mesma linha. */
+  static final String BEAT_SQL = """
+      INSERT INTO replica_heartbeat (id, beat_at) VALUES (1, clock_timestamp())
+      ON CONFLICT (id) DO UPDATE SET beat_at = GREATEST(replica_heartbeat.beat_at, EXCLUDED.beat_at)
+      RETURNING (EXTRACT(EPOCH FROM beat_at) * 1000)::bigint
+      """;
+
+  /** streaming: fora de recovery não há receiver (réplica apontando para um primário) e vale o heartbeat. */
+  static final String REPLICA_SQL = """
+      SELECT (NOT pg_is_in_recovery() OR EXISTS (SELECT 1 FROM pg_stat_wal_receiver WHERE status = 'streaming')) AS streaming,
+             (SELECT (EXTRACT(EPOCH FROM beat_at) * 1000)::bigint FROM replica_heartbeat WHERE id = 1) AS beat_ms
+      """;
+
+  private static final ThreadLocal<Boolean> PINNED = new ThreadLocal<>();
+
+  private final Cache<String, Long> recentWrites;
+  private final long readYourWritesMs;
+  private final long maxLagMs;
+
+  private volatile JdbcTemplate primary;
+  private volatile JdbcTemplate replica;
+  private volatile long lagMs;
+  /** Último heartbeat gravado por este nó (ms, relógio do primário); 0 = nenhum. */
+  private long lastBeatMs;
+  private volatile boolean replicaUp;
+
+  public ReplicaLagGuard(MeterRegistry meters,
+                         @Value("${app.datasource.replica.read-your-writes-ms:3000}") long readYourWritesMs,
+                         @Value("${app.datasource.replica.max-lag-ms:5000}") long maxLagMs) {
+    this.readYourWritesMs = readYourWritesMs;
+    this.maxLagMs = maxLagMs;
+    // guarda até max-lag: acima disso a réplica inteira já está fora
+    this.recentWrites = Caffeine.newBuilder()
+        .maximumSize(200_000)
+        .expireAfterWrite(Duration.ofMillis(Math.max(readYourWritesMs, maxLagMs)))
+        .build();
+    Gauge.builder("app.datasource.replica.lag", this, g -> g.lagMs).baseUnit("milliseconds").register(meters);
+    Gauge.builder("app.datasource.replica.usable", this, g -> g.usable() ? 1 : 0).register(meters);
+  }
+
+  /** Chamado pelo DataSourceConfig quando há réplica configurada. */
+  void monitor(DataSource primaryPool, DataSource replicaPool) {
+    this.primary = new JdbcTemplate(primaryPool);
+    this.replica = new JdbcTemplate(replicaPool);
+  }
+
+  public boolean replicaAllowed() {
+    return usable() && PINNED.get() == null;
+  }
+
+  private boolean usable() {
+    return replica != null && replicaUp && lagMs <= maxLagMs;
+  }
+
+  /** Marca escrita para as chaves; vale a partir do commit (ou já, fora de transação). */
+  public void recordWrite(String... keys) {
+    if (replica == null) return;
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          stamp(keys);
+        }
+      });
+    } else {
+      stamp(keys);
+    }
+  }
+
+  /**
+   * Se alguma chave foi escrita dentro da janela, a transação corrente (que ainda não pegou conexão)
+   * lê do primário.
+   */
+  public void pinIfRecentWrite(String... keys) {
+    if (replica == null || !TransactionSynchronizationManager.isSynchronizationActive()) return;
+    final long window = Math.max(readYourWritesMs, lagMs);
+    final long now = System.currentTimeMillis();
+    for (String k : keys) {
+      final Long at = k != null ? recentWrites.getIfPresent(k) : null;
+      if (at != null && now - at <= window) {
+        PINNED.set(Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+          @Override
+          public void afterCompletion(int status) {
+            PINNED.remove();
+          }
+        });
+        return;
+      }
+    }
+  }
+
+  private void stamp(String... keys) {
+    final long now = System.currentTimeMillis();
+    for (String k : keys) if (k != null) recentWrites.put(k, now);
+  }
+
+  @Scheduled(fixedDelayString = "${app.datasource.replica.probe-ms:1000}")
+  public void probe() {
+    final JdbcTemplate r = replica;
+    if (r == null) return;
+    try {
+      // lê a réplica antes de gravar o próximo: se ela já tem o heartbeat anterior, está em dia
+      final Lag seen = r.queryForObject(REPLICA_SQL, (rs, i) -> new Lag(rs.getBoolean("streaming"), (Long) rs.getObject("beat_ms")));
+      final Long beat = primary.queryForObject(BEAT_SQL, Long.class);
+      if (seen == null || !seen.streaming()) {
+        if (replicaUp) log.warn("[DB][REPLICA] réplica sem WAL receiver em streaming; leituras no primário");
+        replicaUp = false;
+      } else if (seen.beatMs() == null || beat == null) {
+        // primeiro heartbeat ainda não replicado
+        replicaUp = false;
+      } else {
+        // sem heartbeat próprio anterior (início), mede contra o que acabou de gravar
+        lagMs = lastBeatMs != 0 && seen.beatMs() >= lastBeatMs ? 0 : Math.max(0, beat - seen.beatMs());
+        if (!replicaUp) log.info("[DB][REPLICA] réplica disponível (lag {} ms)", lagMs);
+        replicaUp = true;
+      }
+      if (beat != null) lastBeatMs = beat;
+    } catch (Exception e) {
+      if (replicaUp) log.warn("[DB][REPLICA] probe falhou; leituras no primário: {}", e.getMessage());
+      replicaUp = false;
+    }
+  }
+
+  private record Lag(boolean streaming, Long beatMs) {}
+
+  public static String userKey(Object userId) {
+    return userId != null ? "u:" + userId : null;
+  }
+
+  public static String subscriptionKey(String subscriptionId) {
+    return subscriptionId != null ? "s:" + subscriptionId : null;
+  }
+}
@@ -2,17 +2,23 @@
 package br.ars.payment_service.config;
 
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.access.intercept.AuthorizationFilter;
+import org.springframework.security.web.servlet.util.matcher.MvcRequestMatcher;
+import org.springframework.security.web.util.matcher.OrRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.handler.HandlerMappingIntrospector;
 
 import java.util.List;
 import java.util.Optional;
@@ -38,6 +44,9 @@ public class SecurityConfig {
     cfg.setAllowedHeaders(Optional.ofNullable(props.allowedHeaders())
         .orElse(List.of("*")));
 
+    // clientes web precisam ler o ETag para mandar If-None-Match no status
+    cfg.setExposedHeaders(List.of("ETag"));
+
     cfg.setAllowCredentials(Boolean.TRUE.equals(props.allowCredentials())); // default false
     cfg.setMaxAge(Optional.ofNullable(props.maxAge()).orElse(3600L));
 
@@ -96,14 +105,23 @@ public class SecurityConfig {
     };
   }
 
-  /** Filtro de segurança com CORS habilitado. */
+  /** Caminhos que exigem X-Admin-Token, casados como o Spring MVC roteia (não pelo URI cru). */
+  static RequestMatcher adminPaths(HandlerMappingIntrospector introspector) {
+    final MvcRequestMatcher.Builder mvc = new MvcRequestMatcher.Builder(introspector);
+    return new OrRequestMatcher(mvc.pattern("/api/admin/**"), mvc.pattern("/actuator/jfr/**"));
+  }
+
+  /** Filtro de segurança com CORS habilitado; /api/admin/** e /actuator/jfr exigem X-Admin-Token. */
   @Bean
   public SecurityFilterChain securityFilterChain(
       HttpSecurity http,
-      @Qualifier("corsConfigurationSource") CorsConfigurationSource corsSource) throws Exception {
+      @Qualifier("corsConfigurationSource") CorsConfigurationSource corsSource,
+      HandlerMappingIntrospector introspector,
+      @Value("${app.admin.token:}") String adminToken) throws Exception {
 
     http
       .csrf(csrf -> csrf.disable())
+      .addFilterBefore(new AdminTokenFilter(adminToken, adminPaths(introspector)), AuthorizationFilter.class)
       .cors(c -> c.configurationSource(corsSource))
       .authorizeHttpRequests(auth -> auth
         .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll()      // preflight
@@ -0,0 +1,107 @@
+package br.ars.payment_service.controller;
+
+import br.ars.payment_service.audit.AuditJournal;
+import br.ars.payment_service.audit.AuditRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/** Busca e exportação do journal de auditoria (admin). */
+@RestController
+@RequestMapping(path = "/api/admin/audit", produces = MediaType.APPLICATION_JSON_VALUE)
+public class AuditController {
+  private static final Logger log = LoggerFactory.getLogger(AuditController.class);
+  private static final int MAX_LIMIT = 5000;
+
+  private final AuditJournal journal;
+  private final ObjectMapper json;
+
+  public AuditController(AuditJournal journal, ObjectMapper json) {
+    this.journal = journal;
+    this.json = json;
+  }
+
+  /** Filtra por intervalo, tipo e texto (em target/ref/detail, ex.: evt_..., sub_..., req_...). */
+  @GetMapping
+  public List<AuditRecord> search(
+      @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+      @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+      @RequestParam(name = "kind", required = false) AuditRecord.Kind kind,
+      @RequestParam(name = "q", required = false) String q,
+      @RequestParam(name = "limit", defaultValue = "200") int limit) throws IOException {
+    final int max = Math.max(1, Math.min(limit, MAX_LIMIT));
+    final Predicate<AuditRecord> match = filter(kind, q);
+    final List<AuditRecord> out = new ArrayList<>();
+    journal.scan(from, to, r -> {
+      if (match.test(r)) out.add(r);
+      return out.size() < max;
+    });
+    return out;
+  }
+
+  /** Exporta como JSONL em streaming (sem limite de registros). */
+  @GetMapping(path = "/export", produces = "application/x-ndjson")
+  public ResponseEntity<StreamingResponseBody> export(
+      @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+      @RequestParam(name = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+      @RequestParam(name = "kind", required = false) AuditRecord.Kind kind,
+      @RequestParam(name = "q", required = false) String q) {
+    final Predicate<AuditRecord> match = filter(kind, q);
+    final StreamingResponseBody body = os -> {
+      final Writer w = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), 64 * 1024);
+      try {
+        journal.scan(from, to, r -> {
+          if (!match.test(r)) return true;
+          try {
+            w.write(json.writeValueAsString(r));
+            w.write('\n');
+            return true;
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+      w.flush();
+    };
+    return ResponseEntity.ok()
+        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=audit.jsonl")
+        .body(body);
+  }
+
+  private static Predicate<AuditRecord> filter(AuditRecord.Kind kind, String q) {
+    final boolean hasQ = StringUtils.hasText(q);
+    return r -> (kind == null || r.kind() == kind)
+        && (!hasQ || contains(r.target(), q) || contains(r.ref(), q) || contains(r.detail(), q));
+  }
+
+  private static boolean contains(String s, String q) {
+    return s != null && s.contains(q);
+  }
+
+  @ExceptionHandler(IOException.class)
+  public ResponseEntity<BillingController.ErrorBody> onIo(IOException ex) {
+    log.error("[AUDIT][500] {}", ex.getMessage(), ex);
+    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new BillingController.ErrorBody("audit read failed"));
+  }
+}
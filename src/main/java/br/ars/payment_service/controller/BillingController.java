@@ -1,11 +1,25 @@
 package br.ars.payment_service.controller;
 
+import br.ars.payment_service.catalog.PriceCatalog;
 import br.ars.payment_service.dto.ChangePlanRequest;
 import br.ars.payment_service.dto.ConfirmPaymentRequest;
+import br.ars.payment_service.dto.EphemeralKeyRequest;
+import br.ars.payment_service.dto.EphemeralKeyResponse;
+import br.ars.payment_service.dto.PlanResponse;
+import br.ars.payment_service.dto.ProrationPreviewResponse;
 import br.ars.payment_service.dto.SubscribeRequest;
 import br.ars.payment_service.dto.SubscribeResponse;
 import br.ars.payment_service.dto.SubscriptionStatusResponse;
 import br.ars.payment_service.service.BillingService;
+import br.ars.payment_service.service.CatalogNotLoadedException;
+import br.ars.payment_service.service.IdempotencyConflictException;
+import br.ars.payment_service.service.ProrationPreviewService;
+import br.ars.payment_service.service.ProrationUnavailableException;
+import br.ars.payment_service.service.SubscribeIdempotencyService;
+import br.ars.payment_service.service.SubscriptionNotFoundException;
+import br.ars.payment_service.service.SubscriptionStateException;
+import br.ars.payment_service.service.SubscriptionStatusCache;
+import br.ars.payment_service.service.SubscriptionStatusStream;
 import com.stripe.exception.StripeException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,24 +27,55 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping(path = "/api/billing", produces = MediaType.APPLICATION_JSON_VALUE)
 public class BillingController {
   private static final Logger log = LoggerFactory.getLogger(BillingController.class);
   private final BillingService billingService;
+  private final SubscribeIdempotencyService idempotency;
+  private final SubscriptionStatusStream statusStream;
+  private final PriceCatalog catalog;
+  private final ProrationPreviewService prorations;
+  private final SubscriptionStatusCache statusCache;
 
-  public BillingController(BillingService billingService) {
+  public BillingController(BillingService billingService,
+                           SubscribeIdempotencyService idempotency,
+                           SubscriptionStatusStream statusStream,
+                           PriceCatalog catalog,
+                           ProrationPreviewService prorations,
+                           SubscriptionStatusCache statusCache) {
     this.billingService = billingService;
+    this.idempotency = idempotency;
+    this.statusStream = statusStream;
+    this.catalog = catalog;
+    this.prorations = prorations;
+    this.statusCache = statusCache;
   }
 
-  /** Cria assinatura DEFAULT_INCOMPLETE e devolve dados para a PaymentSheet (PI ou SI). */
+  /**
+   * Cria assinatura DEFAULT_INCOMPLETE e devolve dados para a PaymentSheet (PI ou SI).
+   * Repetições com o mesmo Idempotency-Key (ou userId+priceId na mesma janela) recebem a mesma resposta.
+   */
   @PostMapping(path = "/subscribe", consumes = MediaType.APPLICATION_JSON_VALUE)
-  public ResponseEntity<SubscribeResponse> subscribe(@RequestBody SubscribeRequest request) throws StripeException {
-    SubscribeResponse res = billingService.startSubscription(request);
+  public ResponseEntity<SubscribeResponse> subscribe(
+      @RequestHeader(name = "Idempotency-Key", required = false) String idempotencyKey,
+      @RequestBody SubscribeRequest request) throws StripeException {
+    final String key = idempotency.resolveKey(request, idempotencyKey);
+    SubscribeResponse res = idempotency.execute(key, request, k -> billingService.startSubscription(request, k));
     return ResponseEntity.ok(res);
   }
 
+  /** EphemeralKey (cacheada por customer+versão) sem criar assinatura. */
+  @PostMapping(path = "/ephemeral-key", consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<EphemeralKeyResponse> ephemeralKey(@RequestBody EphemeralKeyRequest req) throws StripeException {
+    return ResponseEntity.ok(billingService.ephemeralKey(req));
+  }
+
   /** Confirma manualmente o PaymentIntent inicial (opcional; não usado para SetupIntent). */
   @PostMapping(path = "/confirm", consumes = MediaType.APPLICATION_JSON_VALUE)
   public ResponseEntity<Void> confirm(@RequestBody ConfirmPaymentRequest req) throws StripeException {
@@ -38,17 +83,56 @@ public class BillingController {
     return ResponseEntity.noContent().build();
   }
 
-  /** Consulta status direto no Stripe. */
+  /**
+   * Status gravado (atualizado pelos webhooks) com ETag + Cache-Control: max-age. Com If-None-Match igual
+   * o Spring responde 304 antes de serializar, então não há corpo nem gzip. Sem registro local, consulta
+   * direto na Stripe (sem ETag).
+   */
   @GetMapping("/subscriptions/{id}")
   public ResponseEntity<SubscriptionStatusResponse> getStatus(@PathVariable("id") String subscriptionId) throws StripeException {
+    final SubscriptionStatusCache.Entry cached = statusCache.get(subscriptionId).orElse(null);
+    if (cached != null) {
+      return ResponseEntity.ok().eTag(cached.etag()).cacheControl(statusCache.cacheControl()).body(cached.body());
+    }
     SubscriptionStatusResponse res = billingService.getStatusAndUpsert(subscriptionId);
     return ResponseEntity.ok(res);
   }
 
+  /**
+   * Stream SSE do status da assinatura: estado atual gravado e, em seguida, cada transição
+   * assim que o webhook for processado (evento "status"; comentários periódicos de heartbeat).
+   */
+  @GetMapping(path = "/subscriptions/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter statusEvents(@PathVariable("id") String subscriptionId) {
+    return statusStream.subscribe(subscriptionId);
+  }
+
+  /** Planos disponíveis (do catálogo em memória, sem ida à Stripe). */
+  @GetMapping("/plans")
+  public ResponseEntity<List<PlanResponse>> plans() {
+    final PriceCatalog.Snapshot s = catalog.snapshot();
+    if (!s.loaded()) return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+    return ResponseEntity.ok(s.plans().stream()
+        .map(p -> PlanResponse.of(p, s.products().get(p.productId())))
+        .toList());
+  }
+
+  /**
+   * Estimativa de troca de plano calculada localmente ("você paga X hoje"), sem upcoming invoice na Stripe.
+   * Repasse o prorationDate devolvido no change-plan para a cobrança usar a mesma data; vale a fatura da Stripe.
+   */
+  @GetMapping("/subscriptions/{id}/proration-preview")
+  public ProrationPreviewResponse prorationPreview(@PathVariable("id") String subscriptionId,
+                                                   @RequestParam(name = "newPriceId") String newPriceId,
+                                                   @RequestParam(name = "prorationBehavior", required = false) String prorationBehavior,
+                                                   @RequestParam(name = "prorationDate", required = false) Long prorationDate) throws StripeException {
+    return prorations.preview(subscriptionId, newPriceId, prorationBehavior, prorationDate);
+  }
+
   /** Troca de plano. */
   @PostMapping(path = "/change-plan", consumes = MediaType.APPLICATION_JSON_VALUE)
   public ResponseEntity<Void> changePlan(@RequestBody ChangePlanRequest req) throws StripeException {
-    billingService.changePlan(req.subscriptionId(), req.newPriceId(), req.prorationBehavior());
+    billingService.changePlan(req.subscriptionId(), req.newPriceId(), req.prorationBehavior(), req.prorationDate());
     return ResponseEntity.noContent().build();
   }
 
@@ -60,6 +144,42 @@ public class BillingController {
     return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ErrorBody(ex.getMessage()));
   }
 
+  @ExceptionHandler(IdempotencyConflictException.class)
+  public ResponseEntity<ErrorBody> onConflict(IdempotencyConflictException ex) {
+    log.warn("[BILL][409] {}", ex.getMessage());
+    return ResponseEntity.status(HttpStatus.CONFLICT).body(new ErrorBody(ex.getMessage()));
+  }
+
+  @ExceptionHandler(SubscriptionNotFoundException.class)
+  public ResponseEntity<ErrorBody> onNotFound(SubscriptionNotFoundException ex) {
+    log.warn("[BILL][404] {}", ex.getMessage());
+    return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ErrorBody(ex.getMessage()));
+  }
+
+  @ExceptionHandler(SubscriptionStateException.class)
+  public ResponseEntity<ErrorBody> onState(SubscriptionStateException ex) {
+    log.warn("[BILL][409] {}", ex.getMessage());
+    return ResponseEntity.status(HttpStatus.CONFLICT).body(new ErrorBody(ex.getMessage()));
+  }
+
+  @ExceptionHandler(ProrationUnavailableException.class)
+  public ResponseEntity<ErrorBody> onUnprocessable(ProrationUnavailableException ex) {
+    log.warn("[BILL][422] {}", ex.getMessage());
+    return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(new ErrorBody(ex.getMessage()));
+  }
+
+  @ExceptionHandler(CatalogNotLoadedException.class)
+  public ResponseEntity<ErrorBody> onCatalogNotLoaded(CatalogNotLoadedException ex) {
+    log.warn("[BILL][503] {}", ex.getMessage());
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(new ErrorBody(ex.getMessage()));
+  }
+
+  @ExceptionHandler(RejectedExecutionException.class)
+  public ResponseEntity<ErrorBody> onBusy(RejectedExecutionException ex) {
+    log.warn("[BILL][503] {}", ex.getMessage());
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(new ErrorBody(ex.getMessage()));
+  }
+
   @ExceptionHandler(StripeException.class)
   public ResponseEntity<ErrorBody> onStripe(StripeException ex) {
     log.error("[BILL][Stripe] {}", ex.getMessage(), ex);
@@ -0,0 +1,31 @@
+package br.ars.payment_service.controller;
+
+import br.ars.payment_service.dto.ChangeFeedResponse;
+import br.ars.payment_service.service.ChangeFeedService;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+
+/** Change feed de assinaturas para outros serviços (admin: X-Admin-Token). */
+@RestController
+@RequestMapping(path = "/api/admin/changes", produces = MediaType.APPLICATION_JSON_VALUE)
+public class ChangeFeedController {
+
+  private final ChangeFeedService changeFeed;
+
+  public ChangeFeedController(ChangeFeedService changeFeed) {
+    this.changeFeed = changeFeed;
+  }
+
+  /**
+   * Devolve mudanças com seq > after, esperando até waitMs (long-poll) quando não houver nenhuma.
+   * Use nextCursor como próximo after.
+   */
+  @GetMapping
+  public DeferredResult<ChangeFeedResponse> changes(
+      @RequestParam(name = "after", defaultValue = "0") long after,
+      @RequestParam(name = "limit", defaultValue = "500") int limit,
+      @RequestParam(name = "waitMs", defaultValue = "25000") long waitMs) {
+    return changeFeed.poll(after, limit, waitMs);
+  }
+}
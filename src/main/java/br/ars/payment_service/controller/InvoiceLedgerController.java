@@ -0,0 +1,85 @@
+package br.ars.payment_service.controller;
+
+import br.ars.payment_service.ledger.InvoiceLedger;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+
+/** Export do ledger de invoices (admin); lê só do banco, nunca da Stripe. */
+@RestController
+@RequestMapping(path = "/api/admin/ledger/invoices", produces = MediaType.APPLICATION_JSON_VALUE)
+public class InvoiceLedgerController {
+  private static final Logger log = LoggerFactory.getLogger(InvoiceLedgerController.class);
+
+  private final InvoiceLedger ledger;
+  private final ObjectMapper json;
+
+  public InvoiceLedgerController(InvoiceLedger ledger, ObjectMapper json) {
+    this.ledger = ledger;
+    this.json = json;
+  }
+
+  /**
+   * JSONL em streaming de [from, to), em ordem de occurred_at. A última linha é {"summary":{"rows":N,...}};
+   * sem ela o export foi cortado (erro ou spring.mvc.async.request-timeout) e deve ser refeito.
+   */
+  @GetMapping(path = "/export", produces = "application/x-ndjson")
+  public ResponseEntity<StreamingResponseBody> export(
+      @RequestParam(name = "from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+      @RequestParam(name = "to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to) {
+    InvoiceLedger.checkRange(from, to);
+    final StreamingResponseBody body = os -> {
+      final Writer w = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), 64 * 1024);
+      try {
+        final long n = ledger.export(from, to, e -> {
+          try {
+            w.write(json.writeValueAsString(e));
+            w.write('\n');
+          } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+          }
+        });
+        w.write(json.writeValueAsString(Map.of("summary", new ExportSummary(n, from, to))));
+        w.write('\n');
+        log.info("[LEDGER] export {} .. {}: {} linhas", from, to, n);
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+      w.flush();
+    };
+    return ResponseEntity.ok()
+        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=invoices.jsonl")
+        .body(body);
+  }
+
+  /** Linha final do export: total de linhas de dados e o intervalo pedido. */
+  public record ExportSummary(long rows, Instant from, Instant to) {}
+
+  @ExceptionHandler(IllegalArgumentException.class)
+  public ResponseEntity<BillingController.ErrorBody> onBadRequest(IllegalArgumentException ex) {
+    log.warn("[LEDGER][400] {}", ex.getMessage());
+    return ResponseEntity.badRequest().body(new BillingController.ErrorBody(ex.getMessage()));
+  }
+
+  @ExceptionHandler(IOException.class)
+  public ResponseEntity<BillingController.ErrorBody> onIo(IOException ex) {
+    log.error("[LEDGER][500] {}", ex.getMessage(), ex);
+    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new BillingController.ErrorBody("ledger export failed"));
+  }
+}
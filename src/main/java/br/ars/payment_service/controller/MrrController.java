@@ -0,0 +1,39 @@
+package br.ars.payment_service.controller;
+
+import br.ars.payment_service.dto.MrrResponse;
+import br.ars.payment_service.revenue.MrrAggregator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/** MRR / assinantes por plano / churn (admin), servidos da memória. */
+@RestController
+@RequestMapping(path = "/api/admin/mrr", produces = MediaType.APPLICATION_JSON_VALUE)
+public class MrrController {
+  private static final Logger log = LoggerFactory.getLogger(MrrController.class);
+
+  private final MrrAggregator mrr;
+
+  public MrrController(MrrAggregator mrr) {
+    this.mrr = mrr;
+  }
+
+  @GetMapping
+  public ResponseEntity<?> get() {
+    if (!mrr.loaded()) {
+      return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+          .body(new BillingController.ErrorBody("mrr rollup not loaded"));
+    }
+    return ResponseEntity.ok(mrr.snapshot());
+  }
+
+  /** Recalcula as contagens a partir de subscription_record (varre as assinaturas vivas). */
+  @PostMapping("/rebuild")
+  public MrrResponse rebuild() {
+    log.info("[MRR] rebuild solicitado");
+    return mrr.rebuild();
+  }
+}
@@ -0,0 +1,81 @@
+package br.ars.payment_service.controller;
+
+import br.ars.payment_service.dto.PixChargeRequest;
+import br.ars.payment_service.dto.PixChargeResponse;
+import br.ars.payment_service.pix.PixService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+@RestController
+@RequestMapping(path = "/api/pix")
+public class PixController {
+  private static final Logger log = LoggerFactory.getLogger(PixController.class);
+  private final PixService pixService;
+
+  public PixController(PixService pixService) {
+    this.pixService = pixService;
+  }
+
+  /** Emite cobrança PIX (valor fixo) e devolve o "copia e cola". */
+  @PostMapping(path = "/charges", produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<PixChargeResponse> create(@RequestBody(required = false) PixChargeRequest req) {
+    PixChargeResponse res = pixService.createCharge(req != null ? req.userId() : null);
+    return ResponseEntity.status(HttpStatus.CREATED).body(res);
+  }
+
+  /** PNG do QR; bytes do cache vão direto para a resposta (sem re-encode nem compressão). */
+  @GetMapping(path = "/charges/{txid}/qr.png", produces = MediaType.IMAGE_PNG_VALUE)
+  public CompletableFuture<ResponseEntity<byte[]>> qr(@PathVariable("txid") String txid) {
+    return pixService.qrPng(txid).thenApply(png -> ResponseEntity.ok()
+        .contentType(MediaType.IMAGE_PNG)
+        .contentLength(png.length)
+        .cacheControl(CacheControl.empty().cachePrivate().noTransform())
+        .body(png));
+  }
+
+  /* ---- Handlers uniformes ---- */
+
+  @ExceptionHandler(CompletionException.class)
+  public ResponseEntity<BillingController.ErrorBody> onAsync(CompletionException ex) {
+    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+    if (cause instanceof NoSuchElementException e) return onNotFound(e);
+    if (cause instanceof IllegalStateException e) return onState(e);
+    if (cause instanceof RejectedExecutionException e) return onBusy(e);
+    if (cause instanceof IllegalArgumentException e) return onBadRequest(e);
+    log.error("[PIX][500] {}", cause.getMessage(), cause);
+    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new BillingController.ErrorBody("Internal error"));
+  }
+
+  @ExceptionHandler(NoSuchElementException.class)
+  public ResponseEntity<BillingController.ErrorBody> onNotFound(NoSuchElementException ex) {
+    return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new BillingController.ErrorBody(ex.getMessage()));
+  }
+
+  @ExceptionHandler(IllegalStateException.class)
+  public ResponseEntity<BillingController.ErrorBody> onState(IllegalStateException ex) {
+    log.warn("[PIX][409] {}", ex.getMessage());
+    return ResponseEntity.status(HttpStatus.CONFLICT).body(new BillingController.ErrorBody(ex.getMessage()));
+  }
+
+  @ExceptionHandler(RejectedExecutionException.class)
+  public ResponseEntity<BillingController.ErrorBody> onBusy(RejectedExecutionException ex) {
+    log.warn("[PIX][503] fila de renderização cheia");
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(new BillingController.ErrorBody("busy"));
+  }
+
+  @ExceptionHandler(IllegalArgumentException.class)
+  public ResponseEntity<BillingController.ErrorBody> onBadRequest(IllegalArgumentException ex) {
+    log.warn("[PIX][400] {}", ex.getMessage());
+    return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new BillingController.ErrorBody(ex.getMessage()));
+  }
+}
@@ -0,0 +1,58 @@
+package br.ars.payment_service.controller;
+
+import br.ars.payment_service.migration.PlanMigrationService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.UUID;
+
+/** Migração em massa de plano (admin). dryRun=true só conta e estima, sem tocar na Stripe. */
+@RestController
+@RequestMapping(path = "/api/admin/migrations", produces = MediaType.APPLICATION_JSON_VALUE)
+public class PlanMigrationController {
+  private static final Logger log = LoggerFactory.getLogger(PlanMigrationController.class);
+
+  private final PlanMigrationService migrations;
+
+  public PlanMigrationController(PlanMigrationService migrations) {
+    this.migrations = migrations;
+  }
+
+  @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<?> start(@RequestBody PlanMigrationService.Request req,
+                                 @RequestParam(name = "dryRun", defaultValue = "false") boolean dryRun) {
+    if (dryRun) return ResponseEntity.ok(migrations.dryRun(req));
+    return ResponseEntity.status(HttpStatus.ACCEPTED).body(migrations.start(req));
+  }
+
+  @GetMapping("/{id}")
+  public ResponseEntity<PlanMigrationService.Migration> get(@PathVariable("id") UUID id) {
+    return migrations.get(id).map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
+  }
+
+  @PostMapping("/{id}/pause")
+  public PlanMigrationService.Migration pause(@PathVariable("id") UUID id) {
+    return migrations.pause(id);
+  }
+
+  @PostMapping("/{id}/resume")
+  public PlanMigrationService.Migration resume(@PathVariable("id") UUID id) {
+    return migrations.resume(id);
+  }
+
+  @ExceptionHandler(IllegalArgumentException.class)
+  public ResponseEntity<BillingController.ErrorBody> onBadRequest(IllegalArgumentException ex) {
+    log.warn("[MIGRATION][400] {}", ex.getMessage());
+    return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new BillingController.ErrorBody(ex.getMessage()));
+  }
+
+  @ExceptionHandler(IllegalStateException.class)
+  public ResponseEntity<BillingController.ErrorBody> onConflict(IllegalStateException ex) {
+    log.warn("[MIGRATION][409] {}", ex.getMessage());
+    return ResponseEntity.status(HttpStatus.CONFLICT).body(new BillingController.ErrorBody(ex.getMessage()));
+  }
+}
@@ -0,0 +1,38 @@
+package br.ars.payment_service.controller;
+
+import br.ars.payment_service.replay.StripeEventReplayer;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+/** Replay de export JSONL de eventos Stripe (admin). O corpo é lido em streaming (JSONL ou gzip). */
+@RestController
+@RequestMapping(path = "/api/admin/replay", produces = MediaType.APPLICATION_JSON_VALUE)
+public class ReplayController {
+  private static final Logger log = LoggerFactory.getLogger(ReplayController.class);
+
+  private final StripeEventReplayer replayer;
+
+  public ReplayController(StripeEventReplayer replayer) {
+    this.replayer = replayer;
+  }
+
+  @PostMapping
+  public StripeEventReplayer.ReplayReport replay(HttpServletRequest request,
+                                                 @RequestParam(name = "dryRun", defaultValue = "false") boolean dryRun)
+      throws IOException {
+    return replayer.replay(request.getInputStream(), dryRun);
+  }
+
+  @ExceptionHandler({ IOException.class, IllegalStateException.class })
+  public ResponseEntity<BillingController.ErrorBody> onFailure(Exception ex) {
+    log.error("[REPLAY][500] {}", ex.getMessage(), ex);
+    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new BillingController.ErrorBody(ex.getMessage()));
+  }
+}
@@ -1,5 +1,10 @@
 package br.ars.payment_service.controller;
 
+import br.ars.payment_service.audit.AuditJournal;
+import br.ars.payment_service.catalog.PriceCatalog;
+import br.ars.payment_service.jfr.WebhookEvent;
+import br.ars.payment_service.ledger.InvoiceLedger;
+import br.ars.payment_service.ledger.InvoiceLedgerEntry;
 import br.ars.payment_service.service.BillingService;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -10,7 +15,9 @@ import com.stripe.exception.StripeException;
 import com.stripe.model.Event;
 import com.stripe.model.EventDataObjectDeserializer;
 import com.stripe.model.Invoice;
+import com.stripe.model.StripeObject;
 import com.stripe.model.Subscription;
+import com.stripe.net.ApiResource;
 import com.stripe.net.Webhook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,6 +38,9 @@ public class StripeWebhookController {
   private static final Logger log = LoggerFactory.getLogger(StripeWebhookController.class);
 
   private final BillingService billingService;
+  private final AuditJournal audit;
+  private final PriceCatalog catalog;
+  private final InvoiceLedger ledger;
 
   @Value("${app.stripe.webhook-secret:${app.stripe.webhook.secret:}}")
   private String webhookSecret;
@@ -39,8 +49,12 @@ public class StripeWebhookController {
   @Value("${app.stripe.secret-key:}")
   private String stripeSecretKey;
 
-  public StripeWebhookController(BillingService billingService) {
+  public StripeWebhookController(BillingService billingService, AuditJournal audit, PriceCatalog catalog,
+                                 InvoiceLedger ledger) {
     this.billingService = billingService;
+    this.audit = audit;
+    this.catalog = catalog;
+    this.ledger = ledger;
   }
 
   @PostMapping(value = "/webhook", consumes = MediaType.APPLICATION_JSON_VALUE)
@@ -48,25 +62,66 @@ public class StripeWebhookController {
       @RequestHeader(name = "Stripe-Signature", required = false) String signature,
       @RequestBody String payload
   ) {
+    final WebhookEvent jfr = new WebhookEvent();
+    jfr.begin();
+    jfr.payloadLength = payload != null ? payload.length() : 0;
+    try {
+      final ResponseEntity<String> res = handle(signature, payload, jfr);
+      jfr.status = res.getStatusCode().value();
+      jfr.outcome = res.getBody();
+      return res;
+    } catch (RuntimeException e) {
+      jfr.outcome = e.getClass().getSimpleName();
+      throw e;
+    } finally {
+      jfr.commit();
+    }
+  }
+
+  private ResponseEntity<String> handle(String signature, String payload, WebhookEvent jfr) {
+    final long t0 = System.nanoTime();
     // Se o secret não estiver configurado, não derruba a aplicação no deploy;
     // apenas rejeita a chamada e loga.
     if (webhookSecret == null || webhookSecret.isBlank()) {
       log.error("[STRIPE][WEBHOOK] webhook secret ausente (app.stripe.webhook-secret). Configure a env STRIPE_WEBHOOK_SECRET.");
+      audit.webhook(null, null, System.nanoTime() - t0, 400, "no_secret");
       return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("webhook secret not configured");
     }
     if (signature == null || signature.isBlank()) {
       log.warn("[STRIPE][WEBHOOK] Stripe-Signature ausente");
+      audit.webhook(null, null, System.nanoTime() - t0, 400, "missing_signature");
       return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("missing signature");
     }
 
-    final Event event;
+    // mesmos passos do Webhook.constructEvent (verifica + desserializa), separados para medir cada um;
+    // a assinatura vem antes, então payload não assinado nem chega ao parser
+    long mark = System.nanoTime();
     try {
-      event = Webhook.constructEvent(payload, signature, webhookSecret);
+      Webhook.Signature.verifyHeader(payload, signature, webhookSecret, Webhook.DEFAULT_TOLERANCE);
     } catch (SignatureVerificationException e) {
+      jfr.verify = System.nanoTime() - mark;
       log.warn("[STRIPE][WEBHOOK] assinatura inválida: {}", e.getMessage());
+      audit.webhook(null, null, System.nanoTime() - t0, 400, "invalid_signature");
       return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("invalid signature");
     }
+    jfr.verify = System.nanoTime() - mark;
+
+    mark = System.nanoTime();
+    final Event event = StripeObject.deserializeStripeObject(payload, Event.class, ApiResource.getGlobalResponseGetter());
+    jfr.parse = System.nanoTime() - mark;
+    jfr.eventId = event.getId();
+    jfr.eventType = event.getType();
+
+    mark = System.nanoTime();
+    final ResponseEntity<String> res = dispatch(event, payload);
+    jfr.dispatch = System.nanoTime() - mark;
+    audit.webhook(event.getType(), event.getId(), System.nanoTime() - t0,
+        res.getStatusCode().value(), res.getBody());
+    return res;
+  }
 
+  private ResponseEntity<String> dispatch(Event event, String payload) {
+    boolean handled = true;
     try {
       final String type = event.getType();
       final EventDataObjectDeserializer des = event.getDataObjectDeserializer();
@@ -77,6 +132,7 @@ public class StripeWebhookController {
           // SDK 29.x pode não expor getSubscription() diretamente em Invoice -> usa JSON cru
           String subscriptionId = null;
           String invoiceId = null;
+          InvoiceLedgerEntry entry = null;
 
           try {
             JsonObject root = JsonParser.parseString(payload).getAsJsonObject();
@@ -96,10 +152,17 @@ public class StripeWebhookController {
                 subscriptionId = subEl.getAsJsonObject().get("id").getAsString();
               }
             }
+
+            entry = InvoiceLedgerEntry.fromWebhook(event.getId(), type, event.getCreated(), obj);
           } catch (Throwable t) {
             log.warn("[STRIPE][WEBHOOK] falha ao parsear payload JSON: {}", t.getMessage());
           }
 
+          // grava antes do resto: se algo abaixo falhar, a retentativa da Stripe cai no ON CONFLICT do ledger
+          if (entry != null) {
+            ledger.record(entry);
+          }
+
           // Opcional: recuperar via API para enriquecer o update
           Subscription sub = null;
           Invoice inv = null;
@@ -138,9 +201,20 @@ public class StripeWebhookController {
           break;
         }
 
+        case "price.created":
+        case "price.updated":
+        case "price.deleted":
+        case "product.created":
+        case "product.updated":
+        case "product.deleted": {
+          handled = catalog.apply(event);
+          break;
+        }
+
         default:
           // outros eventos podem ser ignorados por enquanto
           log.debug("[STRIPE][WEBHOOK] evento ignorado: {}", type);
+          handled = false;
           break;
       }
     } catch (Exception e) {
@@ -149,6 +223,6 @@ public class StripeWebhookController {
       return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("error");
     }
 
-    return ResponseEntity.ok("ok");
+    return ResponseEntity.ok(handled ? "ok" : "ignored");
   }
 }
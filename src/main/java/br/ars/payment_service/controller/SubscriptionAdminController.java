@@ -0,0 +1,43 @@
+package br.ars.payment_service.controller;
+
+import br.ars.payment_service.domain.SubscriptionsStatus;
+import br.ars.payment_service.dto.SubscriptionSummary;
+import br.ars.payment_service.service.SubscriptionQueryService;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Duration;
+import java.util.List;
+
+/** Listagens de assinaturas gravadas (admin): por usuário, por status e com período terminando. */
+@RestController
+@RequestMapping(path = "/api/admin", produces = MediaType.APPLICATION_JSON_VALUE)
+public class SubscriptionAdminController {
+
+  private final SubscriptionQueryService queries;
+
+  public SubscriptionAdminController(SubscriptionQueryService queries) {
+    this.queries = queries;
+  }
+
+  /** Assinaturas gravadas do usuário (live=true: só ACTIVE/TRIALING/PAST_DUE). */
+  @GetMapping("/users/{userId}/subscriptions")
+  public List<SubscriptionSummary> byUser(@PathVariable("userId") String userId,
+                                          @RequestParam(name = "live", defaultValue = "false") boolean live) {
+    return queries.byUser(userId, live);
+  }
+
+  /** Assinaturas gravadas num status, mais antigas primeiro. */
+  @GetMapping("/subscriptions")
+  public List<SubscriptionSummary> byStatus(@RequestParam("status") SubscriptionsStatus status,
+                                            @RequestParam(name = "limit", defaultValue = "100") int limit) {
+    return queries.byStatus(status, limit);
+  }
+
+  /** Assinaturas vivas cujo período termina nos próximos withinHours. */
+  @GetMapping("/subscriptions/ending")
+  public List<SubscriptionSummary> ending(@RequestParam(name = "withinHours", defaultValue = "72") long withinHours,
+                                          @RequestParam(name = "limit", defaultValue = "100") int limit) {
+    return queries.endingWithin(Duration.ofHours(withinHours), limit);
+  }
+}
@@ -0,0 +1,29 @@
+package br.ars.payment_service.domain;
+
+import jakarta.persistence.*;
+import lombok.*;
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name="pix_charge", uniqueConstraints = {
+  @UniqueConstraint(name="uk_pix_txid", columnNames={"txid"})
+})
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class PixCharge {
+  @Id @GeneratedValue private UUID id;
+
+  @Column(name="txid", nullable=false, length=25) private String txid;
+  @Column(name="user_id") private UUID userId;
+  @Column(name="amount", nullable=false, precision=12, scale=2) private BigDecimal amount;
+  @Column(name="payload", nullable=false, length=512) private String payload;
+  @Enumerated(EnumType.STRING) @Column(nullable=false) private PixChargeStatus status;
+
+  @Column(name="expires_at", nullable=false) private OffsetDateTime expiresAt;
+  @Column(name="created_at", nullable=false) private OffsetDateTime createdAt;
+  @Column(name="updated_at", nullable=false) private OffsetDateTime updatedAt;
+
+  @PrePersist void pre() { createdAt = updatedAt = OffsetDateTime.now(); }
+  @PreUpdate  void upd()  { updatedAt = OffsetDateTime.now(); }
+}
@@ -0,0 +1,5 @@
+package br.ars.payment_service.domain;
+
+public enum PixChargeStatus {
+    PENDING, PAID, EXPIRED
+}
@@ -8,6 +8,8 @@ import java.util.UUID;
 @Entity
 @Table(name="subscription_record", uniqueConstraints = {
   @UniqueConstraint(name="uk_sub_stripe", columnNames={"stripe_subscription_id"})
+}, indexes = {
+  @Index(name="ix_sub_customer_price_status", columnList="billing_customer_id, price_id, status, created_at")
 })
 @Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
 public class SubscriptionRecord {
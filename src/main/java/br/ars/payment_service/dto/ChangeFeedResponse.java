@@ -0,0 +1,8 @@
+package br.ars.payment_service.dto;
+
+import java.util.List;
+
+public record ChangeFeedResponse(
+    List<SubscriptionChange> changes,
+    long nextCursor   // passar como ?after= na próxima chamada
+) {}
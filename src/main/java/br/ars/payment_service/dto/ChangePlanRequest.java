@@ -3,5 +3,6 @@ package br.ars.payment_service.dto;
 public record ChangePlanRequest(
     String subscriptionId,
     String newPriceId,
-    String prorationBehavior // "create_prorations" | "none" | "always_invoice"
+    String prorationBehavior, // "create_prorations" | "none" | "always_invoice"
+    Long prorationDate        // opcional (epoch s): o da prévia, para a cobrança bater com ela
 ) {}
@@ -0,0 +1,7 @@
+package br.ars.payment_service.dto;
+
+public record EphemeralKeyRequest(
+    String userId,
+    String email,        // opcional; usado só se o customer ainda não existir
+    String stripeVersion // opcional; default app.stripe.mobile-api-version
+) {}
@@ -0,0 +1,8 @@
+package br.ars.payment_service.dto;
+
+public record EphemeralKeyResponse(
+    String publishableKey,
+    String customerId,
+    String ephemeralKeySecret,
+    String expiresAt // ISO-8601 (UTC)
+) {}
@@ -0,0 +1,39 @@
+package br.ars.payment_service.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * MRR e contagens por plano (valores em centavos). paying = ACTIVE + PAST_DUE; started/churned contam
+ * entradas em / saídas de paying nos últimos churnWindowDays dias. mrr null = price fora do catálogo.
+ */
+public record MrrResponse(
+    Instant asOf,
+    int churnWindowDays,
+    List<Plan> plans,
+    List<Total> totals
+) {
+  public record Plan(
+      String priceId,
+      String productId,
+      String nickname,
+      String currency,
+      Double monthlyAmount,
+      long paying,
+      long trialing,
+      Long mrr,
+      long started,
+      long churned
+  ) {}
+
+  /** churnRate = churned / assinantes pagantes no início da janela (paying − started + churned). */
+  public record Total(
+      String currency,
+      long mrr,
+      long paying,
+      long trialing,
+      long started,
+      long churned,
+      Double churnRate
+  ) {}
+}
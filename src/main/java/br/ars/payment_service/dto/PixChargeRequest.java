@@ -0,0 +1,5 @@
+package br.ars.payment_service.dto;
+
+public record PixChargeRequest(
+    String userId // opcional
+) {}
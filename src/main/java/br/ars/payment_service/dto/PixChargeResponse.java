@@ -0,0 +1,9 @@
+package br.ars.payment_service.dto;
+
+public record PixChargeResponse(
+    String txid,
+    String copiaECola,
+    String amount,
+    String expiresAt,   // ISO-8601 (UTC)
+    String qrCodeUrl
+) {}
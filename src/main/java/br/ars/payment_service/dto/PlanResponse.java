@@ -0,0 +1,34 @@
+package br.ars.payment_service.dto;
+
+import br.ars.payment_service.catalog.CatalogPrice;
+import br.ars.payment_service.catalog.CatalogProduct;
+
+import java.util.Map;
+
+/** Plano exibível no app: price recorrente ativo + dados do produto. */
+public record PlanResponse(
+    String priceId,
+    String productId,
+    String name,
+    String description,
+    String currency,
+    Long unitAmount,
+    String interval,
+    long intervalCount,
+    String lookupKey,
+    Map<String, String> metadata
+) {
+  public static PlanResponse of(CatalogPrice price, CatalogProduct product) {
+    return new PlanResponse(
+        price.id(),
+        price.productId(),
+        product != null ? product.name() : price.nickname(),
+        product != null ? product.description() : null,
+        price.currency(),
+        price.unitAmount(),
+        price.interval(),
+        price.intervalCount(),
+        price.lookupKey(),
+        product != null ? product.metadata() : Map.of());
+  }
+}
@@ -0,0 +1,26 @@
+package br.ars.payment_service.dto;
+
+import java.util.List;
+
+/**
+ * Prévia local (estimativa) de troca de plano (valores em centavos, datas ISO-8601). prorationDate deve
+ * ser repassado ao change-plan para a cobrança usar a mesma data; o valor cobrado é o da fatura da Stripe.
+ */
+public record ProrationPreviewResponse(
+    String subscriptionId,
+    String currentPriceId,
+    String newPriceId,
+    String prorationBehavior,
+    long prorationDate,
+    String currency,
+    List<Line> lines,
+    long prorationTotal,
+    Long invoicedNow,
+    long amountDueNow,
+    long nextInvoiceAmount,
+    String nextInvoiceAt,
+    boolean billingCycleReset,
+    long creditBalance
+) {
+  public record Line(String priceId, long amount, boolean proration, String periodStart, String periodEnd) {}
+}
@@ -0,0 +1,13 @@
+package br.ars.payment_service.dto;
+
+public record SubscriptionChange(
+    long seq,
+    String subscriptionId,
+    String customerId,
+    String oldStatus,          // null = registro novo
+    String newStatus,
+    String priceId,
+    String currentPeriodEnd,   // ISO-8601 (UTC) ou null
+    boolean cancelAtPeriodEnd,
+    String changedAt           // ISO-8601 (UTC)
+) {}
@@ -0,0 +1,16 @@
+package br.ars.payment_service.dto;
+
+import br.ars.payment_service.domain.SubscriptionsStatus;
+
+import java.time.OffsetDateTime;
+
+/** Projeção de leitura de subscription_record + customer (um SELECT, sem entidades gerenciadas). */
+public record SubscriptionSummary(
+    String subscriptionId,
+    String customerId,
+    SubscriptionsStatus status,
+    String priceId,
+    OffsetDateTime currentPeriodEnd,
+    boolean cancelAtPeriodEnd,
+    OffsetDateTime createdAt
+) {}
@@ -0,0 +1,43 @@
+package br.ars.payment_service.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/** Resolução do Customer de um usuário (BillingCustomerService): caminho, cache e esperas. */
+@Name("br.ars.payment.CustomerResolve")
+@Label("Customer Resolve")
+@Category({"Payment Service", "Billing"})
+@StackTrace(false)
+public class CustomerResolveEvent extends Event {
+
+  @Label("User Id")
+  public String userId;
+
+  @Label("Customer Id")
+  public String customerId;
+
+  @Label("Path")
+  @Description("cache, db, waited (linha de outro nó), stripe")
+  public String path;
+
+  @Label("Cache Hit")
+  public boolean cacheHit;
+
+  @Label("Lock Wait")
+  @Description("Espera pelo monitor local do usuário")
+  @Timespan(Timespan.NANOSECONDS)
+  public long lockWait;
+
+  @Label("Peer Wait")
+  @Description("Espera pela linha do nó que tem o claim")
+  @Timespan(Timespan.NANOSECONDS)
+  public long peerWait;
+
+  @Label("Outcome")
+  public String outcome;
+}
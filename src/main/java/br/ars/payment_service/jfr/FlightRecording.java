@@ -0,0 +1,121 @@
+package br.ars.payment_service.jfr;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.management.jfr.FlightRecorderMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Gravação JFR contínua do processo: perfil "default" do JDK (feito para produção, ~1% de overhead)
+ * mais os eventos do serviço (Stripe, webhook, customer, subscribe), em disco com janela
+ * app.jfr.max-age / app.jfr.max-size-mb. {@link #dump(Duration)} recorta os últimos minutos.
+ */
+@Component
+public class FlightRecording {
+  private static final Logger log = LoggerFactory.getLogger(FlightRecording.class);
+
+  private final boolean enabled;
+  private final String settings;
+  private final Duration maxAge;
+  private final long maxSizeBytes;
+
+  private volatile Recording recording;
+
+  public FlightRecording(@Value("${app.jfr.enabled:true}") boolean enabled,
+                         @Value("${app.jfr.settings:default}") String settings,
+                         @Value("${app.jfr.max-age:30m}") Duration maxAge,
+                         @Value("${app.jfr.max-size-mb:256}") long maxSizeMb) {
+    this.enabled = enabled;
+    this.settings = settings;
+    this.maxAge = maxAge;
+    this.maxSizeBytes = maxSizeMb * 1024 * 1024;
+  }
+
+  @PostConstruct
+  void start() {
+    if (!enabled) return;
+    try {
+      final Recording r = new Recording(Configuration.getConfiguration(settings));
+      r.setName("payment-service");
+      r.setToDisk(true);
+      r.setMaxAge(maxAge);
+      r.setMaxSize(maxSizeBytes);
+      r.enable(StripeCallEvent.class);
+      r.enable(SubscribeEvent.class);
+      r.enable(CustomerResolveEvent.class);
+      r.enable(WebhookEvent.class);
+      r.start();
+      recording = r;
+      log.info("[JFR] gravação contínua iniciada settings={} maxAge={} maxSize={}MB",
+          settings, maxAge, maxSizeBytes / (1024 * 1024));
+    } catch (IOException | ParseException | IllegalStateException | SecurityException e) {
+      // sem JFR o serviço segue normal; só o dump fica indisponível
+      log.warn("[JFR] gravação contínua não iniciada: {}", e.toString());
+    }
+  }
+
+  @PreDestroy
+  void stop() {
+    final Recording r = recording;
+    recording = null;
+    if (r != null) r.close();
+  }
+
+  public boolean running() {
+    final Recording r = recording;
+    return r != null && r.getState() == RecordingState.RUNNING;
+  }
+
+  public Duration maxAge() {
+    return maxAge;
+  }
+
+  /**
+   * Copia para um arquivo temporário os dados dos últimos {@code window} (o chamador apaga o arquivo).
+   * O recorte é por chunk do JFR, então o arquivo pode começar um pouco antes do pedido.
+   */
+  public Path dump(Duration window) throws IOException {
+    final Recording r = recording;
+    if (r == null || r.getState() != RecordingState.RUNNING) {
+      throw new IllegalStateException("gravação JFR não está ativa");
+    }
+    final Instant end = Instant.now();
+    final Instant start = end.minus(window.compareTo(maxAge) > 0 ? maxAge : window);
+    final FlightRecorderMXBean bean = ManagementFactory.getPlatformMXBean(FlightRecorderMXBean.class);
+    final Path file = Files.createTempFile("payment-service-", ".jfr");
+    // só gravação parada pode ser lida: copy(true) fecha o chunk atual e devolve uma cópia parada
+    try (Recording snapshot = r.copy(true)) {
+      final long stream = bean.openStream(snapshot.getId(), Map.of(
+          "startTime", start.toString(),
+          "endTime", end.toString(),
+          "blockSize", "1048576"));
+      try (OutputStream out = Files.newOutputStream(file)) {
+        byte[] block;
+        while ((block = bean.readStream(stream)) != null) out.write(block);
+      } finally {
+        bean.closeStream(stream);
+      }
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(file);
+      throw e;
+    }
+    log.info("[JFR] dump de {} ({} bytes)", window, Files.size(file));
+    return file;
+  }
+}
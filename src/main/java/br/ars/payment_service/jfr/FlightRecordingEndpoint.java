@@ -0,0 +1,63 @@
+package br.ars.payment_service.jfr;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * GET /actuator/jfr?minutes=N (obrigatório): baixa os últimos N minutos da gravação contínua (.jfr, abrir no JMC
+ * ou com `jfr print`). Protegido pelo X-Admin-Token como /api/admin/**.
+ */
+@Component
+@Endpoint(id = "jfr")
+public class FlightRecordingEndpoint {
+  private final FlightRecording recording;
+
+  public FlightRecordingEndpoint(FlightRecording recording) {
+    this.recording = recording;
+  }
+
+  @ReadOperation(produces = "application/octet-stream")
+  public WebEndpointResponse<Resource> dump(int minutes) throws IOException {
+    if (minutes < 1) return new WebEndpointResponse<>(WebEndpointResponse.STATUS_BAD_REQUEST);
+    if (!recording.running()) return new WebEndpointResponse<>(WebEndpointResponse.STATUS_SERVICE_UNAVAILABLE);
+    return new WebEndpointResponse<>(new TemporaryFile(recording.dump(Duration.ofMinutes(minutes))));
+  }
+
+  /** Arquivo apagado quando a resposta termina de ser escrita. */
+  private static final class TemporaryFile extends FileSystemResource {
+    TemporaryFile(Path file) {
+      super(file);
+    }
+
+    @Override
+    public boolean isFile() {
+      // força a cópia via getInputStream (sem isso o conversor pode ler o arquivo por outro caminho)
+      return false;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+      return new FilterInputStream(super.getInputStream()) {
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          } finally {
+            Files.deleteIfExists(getFile().toPath());
+          }
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package br.ars.payment_service.jfr;
+
+import com.stripe.exception.StripeException;
+import com.stripe.model.HasId;
+import com.stripe.model.StripeObjectInterface;
+import com.stripe.net.StripeResponse;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.net.http.HttpResponse;
+
+/**
+ * Uma chamada à Stripe (SDK ou fallback HTTP direto), com o id do objeto, o status HTTP e o
+ * Request-Id da Stripe. A thread do evento liga a chamada ao {@link SubscribeEvent} que a contém.
+ */
+@Name("br.ars.payment.StripeCall")
+@Label("Stripe Call")
+@Category({"Payment Service", "Stripe"})
+@StackTrace(false)
+public class StripeCallEvent extends Event {
+
+  @FunctionalInterface
+  public interface Call<T, E extends Exception> {
+    T run() throws E;
+  }
+
+  @Label("Operation")
+  public String operation;
+
+  @Label("Fallback")
+  @Description("Ramo de fallback (expansão não veio, reflexão, HTTP direto)")
+  public boolean fallback;
+
+  @Label("Object Id")
+  public String objectId;
+
+  @Label("HTTP Status")
+  public int status;
+
+  @Label("Stripe Request Id")
+  public String requestId;
+
+  @Label("Outcome")
+  @Description("ok, empty (sem resultado) ou a classe da exceção")
+  public String outcome;
+
+  /** Executa a chamada dentro do evento; objectId pode ser null (preenchido com o id do resultado). */
+  public static <T, E extends Exception> T record(String operation, boolean fallback, String objectId,
+                                                  Call<T, E> call) throws E {
+    final StripeCallEvent e = new StripeCallEvent();
+    if (!e.isEnabled()) return call.run();
+    e.operation = operation;
+    e.fallback = fallback;
+    e.objectId = objectId;
+    e.begin();
+    try {
+      final T r = call.run();
+      e.outcome = r == null ? "empty" : "ok";
+      if (r instanceof HasId h && e.objectId == null) e.objectId = h.getId();
+      if (r instanceof StripeObjectInterface o && o.getLastResponse() != null) {
+        final StripeResponse res = o.getLastResponse();
+        e.status = res.code();
+        e.requestId = res.requestId();
+      } else if (r instanceof HttpResponse<?> h) {
+        e.status = h.statusCode();
+        e.requestId = h.headers().firstValue("Request-Id").orElse(null);
+      }
+      return r;
+    } catch (Exception ex) {
+      e.outcome = ex.getClass().getSimpleName();
+      if (ex instanceof StripeException se) {
+        e.status = se.getStatusCode() != null ? se.getStatusCode() : 0;
+        e.requestId = se.getRequestId();
+      }
+      throw ex;
+    } finally {
+      e.commit();
+    }
+  }
+}
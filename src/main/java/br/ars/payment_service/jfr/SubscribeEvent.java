@@ -0,0 +1,33 @@
+package br.ars.payment_service.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** Um /subscribe inteiro; os eventos de Stripe e de customer da mesma thread caem dentro dele. */
+@Name("br.ars.payment.Subscribe")
+@Label("Subscribe")
+@Category({"Payment Service", "Billing"})
+@StackTrace(false)
+public class SubscribeEvent extends Event {
+
+  @Label("User Id")
+  public String userId;
+
+  @Label("Price Id")
+  public String priceId;
+
+  @Label("Customer Id")
+  public String customerId;
+
+  @Label("Subscription Id")
+  public String subscriptionId;
+
+  @Label("Path")
+  public String path;
+
+  @Label("Outcome")
+  public String outcome;
+}
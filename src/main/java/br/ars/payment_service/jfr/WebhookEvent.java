@@ -0,0 +1,43 @@
+package br.ars.payment_service.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/** Um webhook da Stripe: verificação da assinatura, parse do evento e dispatch, com o resultado HTTP. */
+@Name("br.ars.payment.Webhook")
+@Label("Stripe Webhook")
+@Category({"Payment Service", "Stripe"})
+@StackTrace(false)
+public class WebhookEvent extends Event {
+
+  @Label("Event Id")
+  public String eventId;
+
+  @Label("Event Type")
+  public String eventType;
+
+  @Label("Payload Bytes")
+  public int payloadLength;
+
+  @Label("Verify")
+  @Timespan(Timespan.NANOSECONDS)
+  public long verify;
+
+  @Label("Parse")
+  @Timespan(Timespan.NANOSECONDS)
+  public long parse;
+
+  @Label("Dispatch")
+  @Timespan(Timespan.NANOSECONDS)
+  public long dispatch;
+
+  @Label("HTTP Status")
+  public int status;
+
+  @Label("Outcome")
+  public String outcome;
+}
@@ -0,0 +1,245 @@
+package br.ars.payment_service.jobs;
+
+import br.ars.payment_service.domain.SubscriptionsStatus;
+import br.ars.payment_service.service.BillingService;
+import br.ars.payment_service.service.SubscriptionChangedEvent;
+import com.stripe.Stripe;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Subscription;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Expira assinaturas DEFAULT_INCOMPLETE abandonadas.
+ *
+ * Cada lote é um único UPDATE ... RETURNING sobre linhas travadas com FOR UPDATE SKIP LOCKED
+ * (nenhuma entidade é carregada); os ids retornados são cancelados na Stripe em paralelo, com
+ * concorrência e taxa limitadas. O espaço de chaves é dividido em shards pelo
+ * {@link ShardedJobRunner}, então várias réplicas dividem o trabalho. A mudança vai para o
+ * change feed no mesmo statement.
+ *
+ * O mesmo statement grava um marcador em expire_cancel_retry; ele só sai depois que a Stripe
+ * confirmar (cancelada ou ressincronizada). Cancelamento que falha (ou nó que cai no meio) fica com o
+ * marcador e é re-tentado nas execuções seguintes, com espera crescente.
+ */
+@Component
+public class ExpirePaymentsJob {
+  private static final Logger log = LoggerFactory.getLogger(ExpirePaymentsJob.class);
+
+  static final String EXPIRE_SQL = """
+      WITH batch AS (
+        SELECT id FROM subscription_record
+         WHERE status = 'INCOMPLETE' AND created_at < ?
+           AND """ + ShardedJobRunner.shardPredicate("stripe_subscription_id") + """
+         ORDER BY created_at
+         LIMIT ?
+         FOR UPDATE SKIP LOCKED
+      ), expired AS (
+        UPDATE subscription_record s
+           SET status = 'INCOMPLETE_EXPIRED', updated_at = now(), version = s.version + 1
+          FROM batch
+         WHERE s.id = batch.id
+        RETURNING s.stripe_subscription_id, s.billing_customer_id, s.price_id, s.current_period_end, s.cancel_at_period_end
+      ), logged AS (
+        INSERT INTO subscription_change_log(stripe_subscription_id, stripe_customer_id, old_status, new_status,
+                                            price_id, current_period_end, cancel_at_period_end)
+        SELECT e.stripe_subscription_id, c.stripe_customer_id, 'INCOMPLETE', 'INCOMPLETE_EXPIRED',
+               e.price_id, e.current_period_end, e.cancel_at_period_end
+          FROM expired e LEFT JOIN billing_customer c ON c.id = e.billing_customer_id
+        RETURNING stripe_subscription_id, stripe_customer_id, price_id, current_period_end, cancel_at_period_end
+      ), pending AS (
+        INSERT INTO expire_cancel_retry(stripe_subscription_id, next_attempt_at)
+        SELECT stripe_subscription_id, now() + (? * interval '1 millisecond') FROM expired
+        ON CONFLICT (stripe_subscription_id) DO NOTHING
+      )
+      SELECT * FROM logged
+      """;
+
+  /** Marcadores vencidos do shard; a próxima tentativa já fica agendada (crash no meio = nova tentativa depois). */
+  static final String CLAIM_RETRY_SQL = """
+      UPDATE expire_cancel_retry r
+         SET attempts = r.attempts + 1,
+             next_attempt_at = now() + (? * interval '1 millisecond') * least(r.attempts + 1, 12)
+       WHERE r.stripe_subscription_id IN (
+         SELECT stripe_subscription_id FROM expire_cancel_retry
+          WHERE next_attempt_at <= now()
+            AND """ + ShardedJobRunner.shardPredicate("stripe_subscription_id") + """
+          ORDER BY next_attempt_at
+          LIMIT ?
+          FOR UPDATE SKIP LOCKED)
+      RETURNING r.stripe_subscription_id
+      """;
+
+  private enum Outcome { CANCELED, RESYNCED, FAILED }
+
+  private final JdbcTemplate jdbc;
+  private final TransactionTemplate tx;
+  private final BillingService billingService;
+  private final ShardedJobRunner runner;
+  private final ApplicationEventPublisher events;
+
+  @Value("${app.stripe.secret-key}")
+  private String stripeSecretKey;
+
+  @Value("${app.grace-period-hours:2}")
+  private long gracePeriodHours;
+
+  @Value("${app.jobs.expire-payments.chunk-size:500}")
+  private int chunkSize;
+
+  @Value("${app.jobs.expire-payments.shards:16}")
+  private int shards;
+
+  /** Espera antes da 1ª re-tentativa de cancelamento; cresce linearmente até 12×. */
+  @Value("${app.jobs.expire-payments.retry-backoff-ms:300000}")
+  private long retryBackoffMs;
+
+  private final ExecutorService stripePool;
+  private final Throttle throttle;
+
+  public ExpirePaymentsJob(JdbcTemplate jdbc,
+                           PlatformTransactionManager txManager,
+                           BillingService billingService,
+                           ShardedJobRunner runner,
+                           ApplicationEventPublisher events,
+                           @Value("${app.jobs.expire-payments.stripe-concurrency:8}") int stripeConcurrency,
+                           @Value("${app.jobs.expire-payments.stripe-rate-per-second:20}") double stripeRate) {
+    this.jdbc = jdbc;
+    this.tx = new TransactionTemplate(txManager);
+    this.billingService = billingService;
+    this.runner = runner;
+    this.events = events;
+    this.stripePool = Executors.newFixedThreadPool(stripeConcurrency, r -> {
+      Thread t = new Thread(r, "expire-stripe");
+      t.setDaemon(true);
+      return t;
+    });
+    this.throttle = new Throttle(stripeRate);
+  }
+
+  @Scheduled(cron = "${app.jobs.expire-payments.cron}")
+  public void run() {
+    final Instant cutoff = Instant.now().minus(Duration.ofHours(gracePeriodHours));
+    final long t0 = System.nanoTime();
+    final long expired = runner.runSharded("expire-payments", shards, (shard, count) -> runShard(cutoff, shard, count));
+    if (expired > 0) {
+      log.info("[JOB][EXPIRE] expired={} cutoff={} tookMs={}", expired, cutoff, (System.nanoTime() - t0) / 1_000_000);
+    }
+  }
+
+  private long runShard(Instant cutoff, int shard, int shardCount) {
+    final int retried = retryPendingCancels(shard, shardCount);
+    long expired = 0;
+    int canceled = 0;
+    while (true) {
+      final List<SubscriptionChangedEvent> changes = expireChunk(cutoff, shard, shardCount);
+      if (changes.isEmpty()) break;
+      changes.forEach(events::publishEvent);
+      expired += changes.size();
+      canceled += cancelOnStripe(changes.stream().map(SubscriptionChangedEvent::subscriptionId).toList());
+      if (changes.size() < chunkSize) break;
+    }
+    if (expired > 0 || retried > 0) {
+      log.debug("[JOB][EXPIRE] shard={} expired={} canceledOnStripe={} retriedCancels={}", shard, expired, canceled, retried);
+    }
+    return expired;
+  }
+
+  /** Re-tenta cancelamentos que ficaram pendentes em execuções anteriores; devolve quantos resolveu. */
+  private int retryPendingCancels(int shard, int shardCount) {
+    int settled = 0;
+    while (true) {
+      final List<String> ids = tx.execute(s -> jdbc.queryForList(CLAIM_RETRY_SQL, String.class,
+          retryBackoffMs, shardCount, shard, chunkSize));
+      if (ids == null || ids.isEmpty()) break;
+      settled += settleOnStripe(ids).size();
+      if (ids.size() < chunkSize) break;
+    }
+    return settled;
+  }
+
+  /** Um lote = uma transação curta; as travas são liberadas antes de falar com a Stripe. */
+  private List<SubscriptionChangedEvent> expireChunk(Instant cutoff, int shard, int shardCount) {
+    final List<SubscriptionChangedEvent> rows = tx.execute(s ->
+        jdbc.query(EXPIRE_SQL, (rs, i) -> new SubscriptionChangedEvent(
+                rs.getString(1), rs.getString(2),
+                SubscriptionsStatus.INCOMPLETE, SubscriptionsStatus.INCOMPLETE_EXPIRED,
+                rs.getString(3), rs.getString(3),
+                rs.getObject(4, OffsetDateTime.class), rs.getBoolean(5)),
+            Timestamp.from(cutoff), shardCount, shard, chunkSize, retryBackoffMs));
+    return rows != null ? rows : List.of();
+  }
+
+  private int cancelOnStripe(List<String> ids) {
+    return (int) settleOnStripe(ids).values().stream().filter(o -> o == Outcome.CANCELED).count();
+  }
+
+  /**
+   * Cancela (ou ressincroniza) na Stripe em paralelo e tira o marcador de quem foi resolvido; as
+   * falhas mantêm o marcador para a próxima execução. Devolve só os resolvidos.
+   */
+  private Map<String, Outcome> settleOnStripe(List<String> ids) {
+    Stripe.apiKey = stripeSecretKey;
+    final Map<String, Outcome> settled = new ConcurrentHashMap<>();
+    final CompletableFuture<?>[] fs = ids.stream()
+        .map(id -> CompletableFuture.runAsync(() -> {
+          throttle.acquire();
+          final Outcome o = cancelIfStillIncomplete(id);
+          if (o != Outcome.FAILED) settled.put(id, o);
+        }, stripePool))
+        .toArray(CompletableFuture[]::new);
+    CompletableFuture.allOf(fs).join();
+    if (!settled.isEmpty()) {
+      jdbc.update("DELETE FROM expire_cancel_retry WHERE stripe_subscription_id = ANY(?)",
+          (Object) settled.keySet().toArray(String[]::new));
+    }
+    return settled;
+  }
+
+  /**
+   * Só cancela se a Stripe ainda reportar "incomplete"; caso contrário (webhook perdido, por ex.)
+   * devolve ao registro local o status real.
+   */
+  private Outcome cancelIfStillIncomplete(String subscriptionId) {
+    try {
+      final Subscription sub = Subscription.retrieve(subscriptionId);
+      if (!"incomplete".equals(sub.getStatus())) {
+        log.warn("[JOB][EXPIRE] subscriptionId={} está {} na Stripe; ressincronizando", subscriptionId, sub.getStatus());
+        billingService.applyWebhookUpdate(sub, null);
+        return Outcome.RESYNCED;
+      }
+      throttle.acquire();
+      sub.cancel();
+      return Outcome.CANCELED;
+    } catch (StripeException | RuntimeException e) {
+      // RuntimeException: falha ao ressincronizar o registro local; não derruba o lote
+      log.warn("[JOB][EXPIRE] cancel err subscriptionId={} (fica para re-tentativa): {}", subscriptionId, e.getMessage());
+      return Outcome.FAILED;
+    }
+  }
+
+  @PreDestroy
+  void shutdown() {
+    stripePool.shutdownNow();
+  }
+}
@@ -0,0 +1,209 @@
+package br.ars.payment_service.jobs;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executa jobs agendados divididos em shards entre as réplicas vivas.
+ *
+ * Cada nó publica heartbeat em job_node; os shards de um job são distribuídos por
+ * (shard % nósVivos == índiceDoNó) e só executam com lease válido em job_lease. Um nó que
+ * morre deixa o lease expirar e, no próximo ciclo, os demais reassumem seus shards.
+ *
+ * O heartbeat (que também renova os leases) roda numa thread própria, fora do pool do @Scheduled:
+ * runSharded bloqueia o agendamento que o chamou, e com o pool ocupado por jobs longos os leases
+ * venceriam no meio da execução.
+ */
+@Component
+public class ShardedJobRunner {
+  private static final Logger log = LoggerFactory.getLogger(ShardedJobRunner.class);
+
+  /**
+   * Predicado SQL para filtrar a chave de um shard: bind (shardCount, shard). Começa com espaço: o
+   * text block antes dele ("AND """") perde o espaço final.
+   */
+  public static String shardPredicate(String keyColumn) {
+    return " mod(hashtext(" + keyColumn + ") & 2147483647, ?) = ?";
+  }
+
+  /** Trabalho de um shard; devolve quantos itens processou. */
+  @FunctionalInterface
+  public interface ShardTask {
+    long run(int shard, int shardCount) throws Exception;
+  }
+
+  private final JdbcTemplate jdbc;
+  private final MeterRegistry meters;
+  private final String nodeId;
+  private final long leaseTtlMs;
+  private final long heartbeatMs;
+  private final ExecutorService pool;
+  private final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread t = new Thread(r, "job-heartbeat");
+    t.setDaemon(true);
+    return t;
+  });
+
+  private final Map<String, AtomicLong> lastSuccess = new ConcurrentHashMap<>();
+
+  public ShardedJobRunner(JdbcTemplate jdbc,
+                          MeterRegistry meters,
+                          @Value("${app.jobs.runner.lease-ttl-ms:30000}") long leaseTtlMs,
+                          @Value("${app.jobs.runner.heartbeat-ms:5000}") long heartbeatMs,
+                          @Value("${app.jobs.runner.threads:4}") int threads) {
+    this.jdbc = jdbc;
+    this.meters = meters;
+    this.leaseTtlMs = leaseTtlMs;
+    this.heartbeatMs = heartbeatMs;
+    this.nodeId = resolveNodeId();
+    this.pool = Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, "job-shard");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  public String nodeId() { return nodeId; }
+
+  @PostConstruct
+  void start() {
+    heartbeats.scheduleWithFixedDelay(this::heartbeat, 0, heartbeatMs, TimeUnit.MILLISECONDS);
+  }
+
+  /** Heartbeat do nó + renovação dos leases em posse (mantém shards longos vivos). */
+  public void heartbeat() {
+    try {
+      jdbc.update("""
+          INSERT INTO job_node(node_id, heartbeat_at) VALUES (?, now())
+          ON CONFLICT (node_id) DO UPDATE SET heartbeat_at = now()
+          """, nodeId);
+      jdbc.update("UPDATE job_lease SET lease_until = now() + (? * interval '1 millisecond') WHERE owner = ?",
+          leaseTtlMs, nodeId);
+      jdbc.update("DELETE FROM job_node WHERE heartbeat_at < now() - (? * interval '1 millisecond')", leaseTtlMs * 4);
+    } catch (Exception e) {
+      log.warn("[JOB][RUNNER] heartbeat falhou node={}: {}", nodeId, e.getMessage());
+    }
+  }
+
+  /**
+   * Executa, em paralelo, os shards do job atribuídos a este nó. Bloqueia até terminarem.
+   * @return total de itens processados neste nó
+   */
+  public long runSharded(String jobName, int shardCount, ShardTask task) {
+    heartbeat();
+    final List<String> live = jdbc.queryForList(
+        "SELECT node_id FROM job_node WHERE heartbeat_at > now() - (? * interval '1 millisecond') ORDER BY node_id",
+        String.class, leaseTtlMs);
+    final int nodes = Math.max(1, live.size());
+    final int me = Math.max(0, live.indexOf(nodeId));
+
+    final List<Integer> mine = new ArrayList<>();
+    for (int shard = 0; shard < shardCount; shard++) {
+      if (shard % nodes != me) continue;
+      if (tryAcquire(jobName, shard)) mine.add(shard);
+    }
+    releaseForeign(jobName, shardCount, nodes, me);
+
+    final List<CompletableFuture<Long>> fs = new ArrayList<>(mine.size());
+    for (int shard : mine) {
+      fs.add(CompletableFuture.supplyAsync(() -> runShard(jobName, shard, shardCount, task), pool));
+    }
+    return fs.stream().mapToLong(CompletableFuture::join).sum();
+  }
+
+  private long runShard(String jobName, int shard, int shardCount, ShardTask task) {
+    final String shardTag = Integer.toString(shard);
+    final Timer.Sample sample = Timer.start(meters);
+    try {
+      final long items = task.run(shard, shardCount);
+      Counter.builder("app.jobs.shard.items").tag("job", jobName).tag("shard", shardTag)
+          .register(meters).increment(items);
+      lastSuccessGauge(jobName, shardTag).set(System.currentTimeMillis());
+      jdbc.update("UPDATE job_lease SET last_run_at = now(), last_items = ? WHERE job_name = ? AND shard = ? AND owner = ?",
+          items, jobName, shard, nodeId);
+      return items;
+    } catch (Exception e) {
+      Counter.builder("app.jobs.shard.failures").tag("job", jobName).tag("shard", shardTag)
+          .register(meters).increment();
+      log.error("[JOB][RUNNER] job={} shard={} falhou: {}", jobName, shard, e.getMessage(), e);
+      return 0;
+    } finally {
+      sample.stop(Timer.builder("app.jobs.shard.duration").tag("job", jobName).tag("shard", shardTag)
+          .register(meters));
+    }
+  }
+
+  /** Pega o lease se estiver livre, expirado ou já for nosso. */
+  private boolean tryAcquire(String jobName, int shard) {
+    final List<Integer> got = jdbc.queryForList("""
+        INSERT INTO job_lease(job_name, shard, owner, lease_until)
+        VALUES (?, ?, ?, now() + (? * interval '1 millisecond'))
+        ON CONFLICT (job_name, shard) DO UPDATE
+           SET owner = excluded.owner, lease_until = excluded.lease_until
+         WHERE job_lease.owner = excluded.owner OR job_lease.lease_until < now()
+        RETURNING shard
+        """, Integer.class, jobName, shard, nodeId, leaseTtlMs);
+    return !got.isEmpty();
+  }
+
+  /** Após um rebalanceamento, devolve shards que não são mais deste nó. */
+  private void releaseForeign(String jobName, int shardCount, int nodes, int me) {
+    jdbc.update("DELETE FROM job_lease WHERE job_name = ? AND owner = ? AND (shard >= ? OR mod(shard, ?) <> ?)",
+        jobName, nodeId, shardCount, nodes, me);
+  }
+
+  private AtomicLong lastSuccessGauge(String jobName, String shard) {
+    return lastSuccess.computeIfAbsent(jobName + "#" + shard, k -> {
+      AtomicLong v = new AtomicLong();
+      Gauge.builder("app.jobs.shard.last.success", v, AtomicLong::get)
+          .tag("job", jobName).tag("shard", shard)
+          .baseUnit("milliseconds")
+          .register(meters);
+      return v;
+    });
+  }
+
+  @PreDestroy
+  void shutdown() {
+    heartbeats.shutdownNow();
+    pool.shutdownNow();
+    try {
+      jdbc.update("DELETE FROM job_lease WHERE owner = ?", nodeId);
+      jdbc.update("DELETE FROM job_node WHERE node_id = ?", nodeId);
+    } catch (Exception e) {
+      log.debug("[JOB][RUNNER] cleanup no shutdown falhou: {}", e.getMessage());
+    }
+  }
+
+  private static String resolveNodeId() {
+    String host;
+    try {
+      host = InetAddress.getLocalHost().getHostName();
+    } catch (Exception e) {
+      host = "node";
+    }
+    return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+  }
+}
@@ -0,0 +1,84 @@
+package br.ars.payment_service.jobs;
+
+import br.ars.payment_service.service.BillingService;
+import br.ars.payment_service.service.SubscribeOutbox;
+import com.stripe.Stripe;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Subscription;
+import com.stripe.model.SubscriptionSearchResult;
+import com.stripe.param.SubscriptionSearchParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Reconcilia linhas PENDING do subscribe_outbox (nó caiu entre o Subscription.create e o registro local).
+ * Busca a assinatura na Stripe pelo metadata outbox_id: achou => registra e fecha; não achou => ABANDONED.
+ */
+@Component
+public class SubscribeOutboxRecoveryJob {
+  private static final Logger log = LoggerFactory.getLogger(SubscribeOutboxRecoveryJob.class);
+
+  private final SubscribeOutbox outbox;
+  private final BillingService billingService;
+  private final ShardedJobRunner runner;
+  private final TransactionTemplate tx;
+
+  @Value("${app.stripe.secret-key}")
+  private String stripeSecretKey;
+
+  /** A busca da Stripe é eventualmente consistente (~1 min); só olha linhas mais velhas que isso. */
+  @Value("${app.jobs.subscribe-outbox.min-age-seconds:600}")
+  private long minAgeSeconds;
+
+  @Value("${app.jobs.subscribe-outbox.shards:4}")
+  private int shards;
+
+  public SubscribeOutboxRecoveryJob(SubscribeOutbox outbox,
+                                    BillingService billingService,
+                                    ShardedJobRunner runner,
+                                    PlatformTransactionManager txManager) {
+    this.outbox = outbox;
+    this.billingService = billingService;
+    this.runner = runner;
+    this.tx = new TransactionTemplate(txManager);
+  }
+
+  @Scheduled(cron = "${app.jobs.subscribe-outbox.cron:0 */10 * * * *}")
+  public void run() {
+    final long n = runner.runSharded("subscribe-outbox", shards, this::runShard);
+    if (n > 0) log.info("[JOB][OUTBOX] reconciliadas={}", n);
+  }
+
+  private long runShard(int shard, int shardCount) {
+    Stripe.apiKey = stripeSecretKey;
+    final List<SubscribeOutbox.Pending> rows = outbox.stalePending(minAgeSeconds, shard, shardCount, 200);
+    for (SubscribeOutbox.Pending p : rows) {
+      try {
+        final SubscriptionSearchResult res = Subscription.search(SubscriptionSearchParams.builder()
+            .setQuery("metadata['" + SubscribeOutbox.METADATA_KEY + "']:'" + p.id() + "'")
+            .build());
+        final Subscription sub = (res == null || res.getData().isEmpty()) ? null : res.getData().get(0);
+        if (sub == null) {
+          outbox.abandon(p.id());
+          log.info("[JOB][OUTBOX] outbox={} sem assinatura na Stripe; ABANDONED", p.id());
+          continue;
+        }
+        tx.executeWithoutResult(s -> {
+          billingService.recordSubscription(p.userId(), p.email(), p.customerId(), sub, p.priceId());
+          outbox.complete(p.id(), sub.getId());
+        });
+        log.info("[JOB][OUTBOX] outbox={} recuperada subId={} status={}", p.id(), sub.getId(), sub.getStatus());
+      } catch (StripeException e) {
+        log.warn("[JOB][OUTBOX] busca falhou outbox={}: {}", p.id(), e.getMessage());
+      }
+    }
+    return rows.size();
+  }
+}
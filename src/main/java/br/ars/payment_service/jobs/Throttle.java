@@ -0,0 +1,33 @@
+package br.ars.payment_service.jobs;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Limitador simples de taxa (intervalo fixo entre permissões), seguro para várias threads.
+ * Usado para não estourar o rate limit da Stripe em rotinas em lote.
+ */
+public final class Throttle {
+  private final long intervalNanos;
+  private final AtomicLong next = new AtomicLong(System.nanoTime());
+
+  public Throttle(double permitsPerSecond) {
+    if (permitsPerSecond <= 0) throw new IllegalArgumentException("permitsPerSecond deve ser > 0");
+    this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+  }
+
+  /** Bloqueia até a próxima permissão disponível. */
+  public void acquire() {
+    while (true) {
+      final long now = System.nanoTime();
+      final long slot = next.get();
+      final long start = Math.max(slot, now);
+      if (next.compareAndSet(slot, start + intervalNanos)) {
+        final long wait = start - now;
+        if (wait > 0) LockSupport.parkNanos(wait);
+        return;
+      }
+    }
+  }
+}
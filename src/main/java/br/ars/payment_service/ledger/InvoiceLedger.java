@@ -0,0 +1,334 @@
+package br.ars.payment_service.ledger;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Ledger append-only das invoices recebidas por webhook (tabela invoice_ledger, particionada por mês).
+ *
+ * Escrita: o webhook enfileira e espera o commit; uma thread única drena a fila em lotes (um
+ * batchUpdate + um commit por lote), então sob carga vários webhooks dividem o mesmo commit e ninguém
+ * espera um lote "encher". A PK (event_id, occurred_at) deduplica retentativas da Stripe.
+ * Leitura: export por intervalo, mês a mês, com cursor do servidor (fetch size) numa transação
+ * readOnly — vai para a réplica quando houver e nunca materializa o intervalo na memória.
+ */
+@Service
+public class InvoiceLedger {
+  private static final Logger log = LoggerFactory.getLogger(InvoiceLedger.class);
+
+  static final String INSERT_SQL = """
+      INSERT INTO invoice_ledger (event_id, event_type, occurred_at, invoice_id, stripe_customer_id,
+                                  stripe_subscription_id, status, currency, amount_due, amount_paid,
+                                  amount_remaining, total, billing_reason, period_start, period_end,
+                                  invoice_created_at)
+      VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+      ON CONFLICT DO NOTHING
+      """;
+
+  static final String EXPORT_SQL = """
+      SELECT event_id, event_type, occurred_at, invoice_id, stripe_customer_id, stripe_subscription_id,
+             status, currency, amount_due, amount_paid, amount_remaining, total, billing_reason,
+             period_start, period_end, invoice_created_at, recorded_at
+        FROM invoice_ledger
+       WHERE occurred_at >= ? AND occurred_at < ?
+       ORDER BY occurred_at, event_id
+      """;
+
+  private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+  private record Pending(InvoiceLedgerEntry entry, CompletableFuture<Void> done) {}
+
+  private final JdbcTemplate jdbc;
+  private final JdbcTemplate cursor;
+  private final TransactionTemplate writeTx;
+  private final TransactionTemplate readTx;
+  private final BlockingQueue<Pending> queue;
+
+  private final Counter appended;
+  private final Counter duplicates;
+  private final Counter failed;
+  private final Counter rejected;
+  private final Counter exported;
+  private final DistributionSummary batchSizes;
+  private final Timer flushTimer;
+  private final AtomicLong partitions = new AtomicLong();
+
+  @Value("${app.ledger.enabled:true}")
+  private boolean enabled;
+
+  @Value("${app.ledger.batch-size:500}")
+  private int batchSize;
+
+  @Value("${app.ledger.commit-timeout-ms:5000}")
+  private long commitTimeoutMs;
+
+  @Value("${app.ledger.months-ahead:2}")
+  private int monthsAhead;
+
+  @Value("${app.replay.file:}")
+  private String replayFile;
+
+  private volatile boolean running;
+  private Thread writer;
+
+  public InvoiceLedger(JdbcTemplate jdbc,
+                       PlatformTransactionManager txManager,
+                       MeterRegistry meters,
+                       @Value("${app.ledger.queue-capacity:10000}") int queueCapacity,
+                       @Value("${app.ledger.fetch-size:1000}") int fetchSize) {
+    this.jdbc = jdbc;
+    this.cursor = new JdbcTemplate(jdbc.getDataSource());
+    this.cursor.setFetchSize(fetchSize);
+    this.writeTx = new TransactionTemplate(txManager);
+    this.readTx = new TransactionTemplate(txManager);
+    this.readTx.setReadOnly(true);
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+    this.appended = Counter.builder("app.ledger.appended").description("Linhas novas no invoice_ledger").register(meters);
+    this.duplicates = Counter.builder("app.ledger.duplicates").description("Eventos já gravados (retentativa)").register(meters);
+    this.failed = Counter.builder("app.ledger.failed").description("Linhas cujo lote falhou").register(meters);
+    this.rejected = Counter.builder("app.ledger.rejected").description("Recusadas com a fila cheia").register(meters);
+    this.exported = Counter.builder("app.ledger.exported").description("Linhas exportadas").register(meters);
+    this.batchSizes = DistributionSummary.builder("app.ledger.batch.size").register(meters);
+    this.flushTimer = Timer.builder("app.ledger.flush").publishPercentileHistogram().register(meters);
+    Gauge.builder("app.ledger.queue", queue, BlockingQueue::size).register(meters);
+    Gauge.builder("app.ledger.partitions", partitions, AtomicLong::get).register(meters);
+  }
+
+  @PostConstruct
+  void start() {
+    if (!enabled) return;
+    // antes do Tomcat aceitar webhooks: o mês corrente não pode começar a encher o default
+    ensurePartitions();
+    running = true;
+    writer = new Thread(this::runWriter, "ledger-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  @PreDestroy
+  void stop() throws InterruptedException {
+    running = false;
+    if (writer != null) writer.join(TimeUnit.SECONDS.toMillis(5));
+  }
+
+  /**
+   * Grava a entrada e só retorna depois do commit do lote em que ela entrou. Falha (fila cheia, erro
+   * no banco, timeout) sobe como exceção: o webhook responde 500 e a Stripe re-tenta.
+   */
+  public void record(InvoiceLedgerEntry entry) {
+    if (!enabled) return;
+    final Pending p = new Pending(entry, new CompletableFuture<>());
+    if (!queue.offer(p)) {
+      rejected.increment();
+      throw new RejectedExecutionException("invoice ledger saturado");
+    }
+    try {
+      p.done().get(commitTimeoutMs, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrompido aguardando o ledger", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("falha ao gravar no ledger: " + e.getCause().getMessage(), e.getCause());
+    } catch (TimeoutException e) {
+      // o lote pode ainda commitar; a retentativa da Stripe cai no ON CONFLICT
+      throw new IllegalStateException("timeout aguardando o ledger", e);
+    }
+  }
+
+  /* ---------------- escrita (thread única) ---------------- */
+
+  private void runWriter() {
+    final List<Pending> batch = new ArrayList<>(batchSize);
+    while (running || !queue.isEmpty()) {
+      try {
+        final Pending first = queue.poll(200, TimeUnit.MILLISECONDS);
+        if (first == null) continue;
+        batch.add(first);
+        // o que chegou durante o flush anterior vai junto neste commit
+        queue.drainTo(batch, batchSize - 1);
+        flush(batch);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      } finally {
+        batch.clear();
+      }
+    }
+    Pending p;
+    while ((p = queue.poll()) != null) p.done().completeExceptionally(new IllegalStateException("ledger parado"));
+  }
+
+  private void flush(List<Pending> batch) {
+    final long t0 = System.nanoTime();
+    try {
+      final int[][] res = writeTx.execute(s ->
+          jdbc.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, p) -> bind(ps, p.entry())));
+      int dup = 0;
+      if (res != null) {
+        for (int[] chunk : res) for (int n : chunk) if (n == 0) dup++;
+      }
+      appended.increment(batch.size() - dup);
+      duplicates.increment(dup);
+      batchSizes.record(batch.size());
+      for (Pending p : batch) p.done().complete(null);
+    } catch (Exception e) {
+      failed.increment(batch.size());
+      log.warn("[LEDGER] falha ao gravar lote de {}: {}", batch.size(), e.getMessage());
+      for (Pending p : batch) p.done().completeExceptionally(e);
+    } finally {
+      flushTimer.record(System.nanoTime() - t0, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private static void bind(PreparedStatement ps, InvoiceLedgerEntry e) throws SQLException {
+    ps.setString(1, e.eventId());
+    ps.setString(2, e.eventType());
+    ps.setTimestamp(3, Timestamp.from(e.occurredAt()));
+    ps.setString(4, e.invoiceId());
+    ps.setString(5, e.customerId());
+    ps.setString(6, e.subscriptionId());
+    ps.setString(7, e.status());
+    ps.setString(8, e.currency());
+    setLong(ps, 9, e.amountDue());
+    setLong(ps, 10, e.amountPaid());
+    setLong(ps, 11, e.amountRemaining());
+    setLong(ps, 12, e.total());
+    ps.setString(13, e.billingReason());
+    setTs(ps, 14, e.periodStart());
+    setTs(ps, 15, e.periodEnd());
+    setTs(ps, 16, e.invoiceCreatedAt());
+  }
+
+  private static void setLong(PreparedStatement ps, int i, Long v) throws SQLException {
+    if (v != null) ps.setLong(i, v); else ps.setNull(i, Types.BIGINT);
+  }
+
+  private static void setTs(PreparedStatement ps, int i, Instant v) throws SQLException {
+    if (v != null) ps.setTimestamp(i, Timestamp.from(v)); else ps.setNull(i, Types.TIMESTAMP_WITH_TIMEZONE);
+  }
+
+  /* ---------------- partições ---------------- */
+
+  /**
+   * Garante as partições do mês anterior até months-ahead meses à frente. O que cair fora delas vai
+   * para invoice_ledger_default; um mês que já tenha linhas no default não pode mais ganhar partição
+   * própria (o Postgres recusa) e fica registrado no log.
+   */
+  @Scheduled(cron = "${app.ledger.partition-cron:0 17 3 * * *}", zone = "UTC")
+  public void ensurePartitions() {
+    if (!enabled || StringUtils.hasText(replayFile)) return;
+    final YearMonth now = YearMonth.now(ZoneOffset.UTC);
+    for (int i = -1; i <= monthsAhead; i++) {
+      final YearMonth m = now.plusMonths(i);
+      final String name = "invoice_ledger_" + m.format(PARTITION_SUFFIX);
+      try {
+        jdbc.execute("CREATE TABLE IF NOT EXISTS " + name + " PARTITION OF invoice_ledger FOR VALUES FROM ('"
+            + m.atDay(1) + " 00:00:00+00') TO ('" + m.plusMonths(1).atDay(1) + " 00:00:00+00')");
+      } catch (Exception e) {
+        log.warn("[LEDGER] partição {} não criada: {}", name, e.getMessage());
+      }
+    }
+    try {
+      final Long n = jdbc.queryForObject(
+          "SELECT count(*) FROM pg_inherits WHERE inhparent = 'invoice_ledger'::regclass", Long.class);
+      partitions.set(n != null ? n : 0);
+    } catch (Exception e) {
+      log.debug("[LEDGER] contagem de partições falhou: {}", e.getMessage());
+    }
+  }
+
+  /* ---------------- export ---------------- */
+
+  /** Valida o intervalo antes de a resposta começar a sair. */
+  public static void checkRange(Instant from, Instant to) {
+    if (from == null || to == null) throw new IllegalArgumentException("from e to são obrigatórios");
+    if (!from.isBefore(to)) throw new IllegalArgumentException("from deve ser anterior a to");
+  }
+
+  /**
+   * Entrega as linhas de [from, to) em ordem de occurred_at. Uma consulta por mês (cada uma cai numa
+   * partição e só ordena aquele mês); as linhas vêm do cursor em páginas de fetch-size.
+   */
+  public long export(Instant from, Instant to, Consumer<InvoiceLedgerEntry> sink) {
+    checkRange(from, to);
+    final long[] count = {0};
+    readTx.executeWithoutResult(s -> {
+      Instant sliceFrom = from;
+      while (sliceFrom.isBefore(to)) {
+        final Instant next = YearMonth.from(sliceFrom.atZone(ZoneOffset.UTC)).plusMonths(1)
+            .atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+        final Instant sliceTo = next.isBefore(to) ? next : to;
+        cursor.query(EXPORT_SQL, (RowCallbackHandler) rs -> {
+          sink.accept(map(rs));
+          count[0]++;
+        }, Timestamp.from(sliceFrom), Timestamp.from(sliceTo));
+        sliceFrom = sliceTo;
+      }
+    });
+    exported.increment(count[0]);
+    return count[0];
+  }
+
+  private static InvoiceLedgerEntry map(ResultSet rs) throws SQLException {
+    return new InvoiceLedgerEntry(
+        rs.getString("event_id"),
+        rs.getString("event_type"),
+        instant(rs, "occurred_at"),
+        rs.getString("invoice_id"),
+        rs.getString("stripe_customer_id"),
+        rs.getString("stripe_subscription_id"),
+        rs.getString("status"),
+        rs.getString("currency"),
+        rs.getObject("amount_due", Long.class),
+        rs.getObject("amount_paid", Long.class),
+        rs.getObject("amount_remaining", Long.class),
+        rs.getObject("total", Long.class),
+        rs.getString("billing_reason"),
+        instant(rs, "period_start"),
+        instant(rs, "period_end"),
+        instant(rs, "invoice_created_at"),
+        instant(rs, "recorded_at"));
+  }
+
+  private static Instant instant(ResultSet rs, String col) throws SQLException {
+    final Timestamp t = rs.getTimestamp(col);
+    return t != null ? t.toInstant() : null;
+  }
+}
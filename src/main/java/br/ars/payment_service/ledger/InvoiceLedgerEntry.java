@@ -0,0 +1,86 @@
+package br.ars.payment_service.ledger;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.time.Instant;
+
+/**
+ * Uma linha do invoice_ledger: o estado da invoice como veio no evento (valores em centavos).
+ * occurredAt = created do evento (chave de partição); recordedAt só existe na leitura.
+ */
+public record InvoiceLedgerEntry(
+    String eventId,
+    String eventType,
+    Instant occurredAt,
+    String invoiceId,
+    String customerId,
+    String subscriptionId,
+    String status,
+    String currency,
+    Long amountDue,
+    Long amountPaid,
+    Long amountRemaining,
+    Long total,
+    String billingReason,
+    Instant periodStart,
+    Instant periodEnd,
+    Instant invoiceCreatedAt,
+    Instant recordedAt
+) {
+
+  /** Monta a partir do data.object cru do webhook (SDK 29.x não expõe todos os campos em Invoice). */
+  public static InvoiceLedgerEntry fromWebhook(String eventId, String eventType, long eventCreated, JsonObject inv) {
+    return new InvoiceLedgerEntry(
+        eventId,
+        eventType,
+        Instant.ofEpochSecond(eventCreated),
+        str(inv, "id"),
+        id(inv.get("customer")),
+        subscriptionId(inv),
+        str(inv, "status"),
+        str(inv, "currency"),
+        lng(inv, "amount_due"),
+        lng(inv, "amount_paid"),
+        lng(inv, "amount_remaining"),
+        lng(inv, "total"),
+        str(inv, "billing_reason"),
+        ts(inv, "period_start"),
+        ts(inv, "period_end"),
+        ts(inv, "created"),
+        null);
+  }
+
+  /** invoice.subscription (string ou objeto) ou, em API nova, parent.subscription_details.subscription. */
+  static String subscriptionId(JsonObject inv) {
+    final String direct = id(inv.get("subscription"));
+    if (direct != null) return direct;
+    final JsonElement parent = inv.get("parent");
+    if (parent == null || !parent.isJsonObject()) return null;
+    final JsonElement details = parent.getAsJsonObject().get("subscription_details");
+    if (details == null || !details.isJsonObject()) return null;
+    return id(details.getAsJsonObject().get("subscription"));
+  }
+
+  private static String id(JsonElement el) {
+    if (el == null || el.isJsonNull()) return null;
+    if (el.isJsonPrimitive()) return el.getAsString();
+    if (el.isJsonObject()) return str(el.getAsJsonObject(), "id");
+    return null;
+  }
+
+  private static String str(JsonObject o, String k) {
+    final JsonElement el = o.get(k);
+    return el != null && el.isJsonPrimitive() ? el.getAsString() : null;
+  }
+
+  private static Long lng(JsonObject o, String k) {
+    final JsonElement el = o.get(k);
+    return el != null && el.isJsonPrimitive() ? el.getAsLong() : null;
+  }
+
+  private static Instant ts(JsonObject o, String k) {
+    final Long s = lng(o, k);
+    return s != null ? Instant.ofEpochSecond(s) : null;
+  }
+}
@@ -0,0 +1,457 @@
+package br.ars.payment_service.migration;
+
+import br.ars.payment_service.catalog.PriceCatalog;
+import br.ars.payment_service.jobs.ShardedJobRunner;
+import br.ars.payment_service.jobs.Throttle;
+import br.ars.payment_service.service.BillingService;
+import br.ars.payment_service.service.ProrationCalculator;
+import com.stripe.Stripe;
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.RateLimitException;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Subscription;
+import com.stripe.model.SubscriptionItem;
+import com.stripe.net.RequestOptions;
+import com.stripe.param.SubscriptionUpdateParams;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Migração em massa de assinaturas de um price para outro (admin).
+ *
+ * Percorre subscription_record por keyset (price_id de origem, id crescente) em páginas; cada página
+ * vai para um pool de workers com taxa limitada ({@link Throttle}) e, quando a página inteira termina,
+ * o cursor e os contadores são gravados numa única UPDATE (checkpoint). Um crash no meio da página faz
+ * o próximo dono repetir só aquela página: o update na Stripe leva chave de idempotência por
+ * (migração, assinatura) e assinaturas já no price de destino são puladas. O dono é um lease em
+ * plan_migration renovado a cada checkpoint; leases vencidos são retomados por qualquer réplica.
+ */
+@Service
+public class PlanMigrationService {
+  private static final Logger log = LoggerFactory.getLogger(PlanMigrationService.class);
+
+  static final UUID START = new UUID(0, 0);
+
+  static final String PAGE_SQL = """
+      SELECT id, stripe_subscription_id FROM subscription_record
+       WHERE price_id = ? AND status IN ('ACTIVE', 'TRIALING', 'PAST_DUE') AND id > ?
+       ORDER BY id
+       LIMIT ?
+      """;
+
+  static final String COUNT_SQL = """
+      SELECT count(*) FROM subscription_record
+       WHERE price_id = ? AND status IN ('ACTIVE', 'TRIALING', 'PAST_DUE')
+      """;
+
+  private static final String COLUMNS = """
+      id, source_price_id, target_price_id, proration_behavior, status, cursor_id,
+      total, migrated, skipped, failed, owner, created_at, updated_at
+      """;
+
+  public record Request(String sourcePriceId, String targetPriceId, String prorationBehavior) {}
+
+  public record Migration(UUID id, String sourcePriceId, String targetPriceId, String prorationBehavior,
+                          String status, UUID cursorId, long total, long migrated, long skipped, long failed,
+                          String owner, OffsetDateTime createdAt, OffsetDateTime updatedAt,
+                          Double throughputPerSecond, Long etaSeconds) {
+    long processed() {
+      return migrated + skipped + failed;
+    }
+  }
+
+  /** Dry-run: quantas assinaturas seriam migradas e quanto tempo levaria na taxa configurada. */
+  public record DryRunReport(String sourcePriceId, String targetPriceId, String prorationBehavior,
+                             long candidates, long estimatedSeconds) {}
+
+  enum Outcome { MIGRATED, SKIPPED, FAILED }
+
+  /** Progresso da migração que roda neste nó (uma por vez; alimenta as métricas). */
+  private record Progress(UUID id, long total, long processed, double throughput) {}
+
+  private static final RowMapper<Migration> MAPPER = (rs, i) -> new Migration(
+      rs.getObject("id", UUID.class),
+      rs.getString("source_price_id"),
+      rs.getString("target_price_id"),
+      rs.getString("proration_behavior"),
+      rs.getString("status"),
+      rs.getObject("cursor_id", UUID.class),
+      rs.getLong("total"),
+      rs.getLong("migrated"),
+      rs.getLong("skipped"),
+      rs.getLong("failed"),
+      rs.getString("owner"),
+      rs.getObject("created_at", OffsetDateTime.class),
+      rs.getObject("updated_at", OffsetDateTime.class),
+      null, null);
+
+  private final JdbcTemplate jdbc;
+  private final BillingService billingService;
+  private final PriceCatalog catalog;
+  private final String nodeId;
+  private final ExecutorService coordinator;
+  private final ExecutorService workers;
+  private final Throttle throttle;
+  private final double ratePerSecond;
+  private final Set<UUID> local = ConcurrentHashMap.newKeySet();
+  private final AtomicReference<Progress> current = new AtomicReference<>();
+  private final Counter migratedCounter;
+  private final Counter skippedCounter;
+  private final Counter failedCounter;
+
+  @Value("${app.stripe.secret-key}")
+  private String stripeSecretKey;
+
+  @Value("${app.migration.page-size:200}")
+  private int pageSize;
+
+  @Value("${app.migration.lease-ttl-ms:120000}")
+  private long leaseTtlMs;
+
+  @Value("${app.migration.max-attempts:3}")
+  private int maxAttempts;
+
+  @Value("${app.replay.file:}")
+  private String replayFile;
+
+  public PlanMigrationService(JdbcTemplate jdbc,
+                              BillingService billingService,
+                              PriceCatalog catalog,
+                              ShardedJobRunner runner,
+                              MeterRegistry meters,
+                              @Value("${app.migration.concurrency:8}") int concurrency,
+                              @Value("${app.migration.rate-per-second:20}") double ratePerSecond) {
+    this.jdbc = jdbc;
+    this.billingService = billingService;
+    this.catalog = catalog;
+    this.nodeId = runner.nodeId();
+    this.ratePerSecond = ratePerSecond;
+    this.throttle = new Throttle(ratePerSecond);
+    this.coordinator = Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, "plan-migration");
+      t.setDaemon(true);
+      return t;
+    });
+    this.workers = Executors.newFixedThreadPool(concurrency, r -> {
+      Thread t = new Thread(r, "plan-migration-stripe");
+      t.setDaemon(true);
+      return t;
+    });
+    this.migratedCounter = Counter.builder("app.migration.subscriptions").tag("outcome", "migrated").register(meters);
+    this.skippedCounter = Counter.builder("app.migration.subscriptions").tag("outcome", "skipped").register(meters);
+    this.failedCounter = Counter.builder("app.migration.subscriptions").tag("outcome", "failed").register(meters);
+    Gauge.builder("app.migration.throughput", current, c -> c.get() != null ? c.get().throughput() : 0)
+        .description("Assinaturas/s da migração em andamento neste nó").register(meters);
+    Gauge.builder("app.migration.remaining", current, c -> c.get() != null ? Math.max(0, c.get().total() - c.get().processed()) : 0)
+        .register(meters);
+    Gauge.builder("app.migration.eta.seconds", current, c -> c.get() != null ? eta(c.get()) : 0)
+        .baseUnit("seconds").register(meters);
+  }
+
+  /* ---------------- API ---------------- */
+
+  /** Só estima: quantas assinaturas estão no price de origem e o tempo na taxa configurada. */
+  public DryRunReport dryRun(Request req) {
+    final Validated v = validate(req);
+    final long total = count(v.source());
+    // retrieve + update por assinatura, ambos pelo throttle
+    return new DryRunReport(v.source(), v.target(), v.behavior(), total, (long) Math.ceil(total * 2 / ratePerSecond));
+  }
+
+  /** Cria a migração e a inicia neste nó. */
+  public Migration start(Request req) {
+    final Validated v = validate(req);
+    final long total = count(v.source());
+    final UUID id = UUID.randomUUID();
+    try {
+      jdbc.update("""
+          INSERT INTO plan_migration(id, source_price_id, target_price_id, proration_behavior, status, total)
+          VALUES (?, ?, ?, ?, 'RUNNING', ?)
+          """, id, v.source(), v.target(), v.behavior(), total);
+    } catch (DuplicateKeyException e) {
+      throw new IllegalStateException("já existe migração ativa para " + v.source());
+    }
+    log.info("[MIGRATION] criada id={} {} -> {} ({}) total={}", id, v.source(), v.target(), v.behavior(), total);
+    submit(id);
+    return get(id).orElseThrow();
+  }
+
+  private record Validated(String source, String target, String behavior) {}
+
+  private Validated validate(Request req) {
+    final String source = require(req.sourcePriceId(), "sourcePriceId");
+    final String target = require(req.targetPriceId(), "targetPriceId");
+    if (source.equals(target)) throw new IllegalArgumentException("price de origem e destino iguais");
+    catalog.requireActive(target);
+    return new Validated(source, target, ProrationCalculator.Mode.parse(req.prorationBehavior()).name().toLowerCase(Locale.ROOT));
+  }
+
+  private long count(String source) {
+    final Long n = jdbc.queryForObject(COUNT_SQL, Long.class, source);
+    return n != null ? n : 0;
+  }
+
+  public Optional<Migration> get(UUID id) {
+    final List<Migration> rows = jdbc.query("SELECT " + COLUMNS + " FROM plan_migration WHERE id = ?", MAPPER, id);
+    if (rows.isEmpty()) return Optional.empty();
+    final Migration m = rows.get(0);
+    final Progress p = current.get();
+    if (p == null || !p.id().equals(id)) return Optional.of(m);
+    return Optional.of(new Migration(m.id(), m.sourcePriceId(), m.targetPriceId(), m.prorationBehavior(), m.status(),
+        m.cursorId(), m.total(), m.migrated(), m.skipped(), m.failed(), m.owner(), m.createdAt(), m.updatedAt(),
+        p.throughput(), eta(p)));
+  }
+
+  /** Pausa no próximo checkpoint (a página em andamento termina). */
+  public Migration pause(UUID id) {
+    if (jdbc.update("UPDATE plan_migration SET status = 'PAUSED', updated_at = now() WHERE id = ? AND status = 'RUNNING'", id) == 0) {
+      throw new IllegalStateException("migração não está em andamento: " + id);
+    }
+    return get(id).orElseThrow();
+  }
+
+  /** Retoma do último checkpoint, neste nó. */
+  public Migration resume(UUID id) {
+    if (jdbc.update("""
+        UPDATE plan_migration SET status = 'RUNNING', owner = NULL, lease_until = NULL, updated_at = now()
+         WHERE id = ? AND status = 'PAUSED'
+        """, id) == 0) {
+      throw new IllegalStateException("migração não está pausada: " + id);
+    }
+    submit(id);
+    return get(id).orElseThrow();
+  }
+
+  /* ---------------- retomada após crash ---------------- */
+
+  @EventListener(ApplicationReadyEvent.class)
+  @Scheduled(initialDelayString = "${app.migration.recover-ms:30000}", fixedDelayString = "${app.migration.recover-ms:30000}")
+  public void recoverOrphans() {
+    if (StringUtils.hasText(replayFile)) return; // modo offline
+    try {
+      final List<UUID> orphans = jdbc.queryForList("""
+          SELECT id FROM plan_migration
+           WHERE status = 'RUNNING' AND (owner IS NULL OR lease_until < now())
+          """, UUID.class);
+      for (UUID id : orphans) {
+        log.info("[MIGRATION] retomando id={} (lease vencido)", id);
+        submit(id);
+      }
+    } catch (Exception e) {
+      log.warn("[MIGRATION] varredura de órfãs falhou: {}", e.getMessage());
+    }
+  }
+
+  /* ---------------- execução ---------------- */
+
+  private void submit(UUID id) {
+    if (!local.add(id)) return; // já enfileirada/rodando neste nó
+    coordinator.execute(() -> {
+      try {
+        run(id);
+      } catch (Exception e) {
+        log.error("[MIGRATION] id={} interrompida: {}", id, e.getMessage(), e);
+      } finally {
+        current.set(null);
+        local.remove(id);
+      }
+    });
+  }
+
+  private void run(UUID id) {
+    Migration m = claim(id);
+    if (m == null) return; // outro nó é dono, ou pausada/concluída
+    Stripe.apiKey = stripeSecretKey;
+    final SubscriptionUpdateParams.ProrationBehavior behavior =
+        SubscriptionUpdateParams.ProrationBehavior.valueOf(ProrationCalculator.Mode.parse(m.prorationBehavior()).name());
+    UUID cursor = m.cursorId() != null ? m.cursorId() : START;
+    long processed = m.processed();
+    double throughput = 0;
+    current.set(new Progress(id, m.total(), processed, 0));
+    log.info("[MIGRATION] id={} executando em {} a partir de {} ({} já processadas)", id, nodeId, cursor, processed);
+
+    while (true) {
+      final List<String[]> page = jdbc.query(PAGE_SQL,
+          (rs, i) -> new String[] { rs.getString(1), rs.getString(2) }, m.sourcePriceId(), cursor, pageSize);
+      if (page.isEmpty()) {
+        jdbc.update("UPDATE plan_migration SET status = 'DONE', owner = NULL, lease_until = NULL, updated_at = now() WHERE id = ? AND owner = ?",
+            id, nodeId);
+        final Migration done = get(id).orElse(m);
+        log.info("[MIGRATION] id={} concluída migrated={} skipped={} failed={}", id, done.migrated(), done.skipped(), done.failed());
+        return;
+      }
+
+      final long t0 = System.nanoTime();
+      final UUID migrationId = id;
+      final Migration spec = m;
+      final List<CompletableFuture<Outcome>> fs = page.stream()
+          .map(row -> CompletableFuture.supplyAsync(() -> migrateOne(migrationId, spec, row[1], behavior), workers))
+          .toList();
+      long migrated = 0, skipped = 0, failed = 0;
+      for (CompletableFuture<Outcome> f : fs) {
+        switch (f.join()) {
+          case MIGRATED -> migrated++;
+          case SKIPPED -> skipped++;
+          case FAILED -> failed++;
+        }
+      }
+      cursor = UUID.fromString(page.get(page.size() - 1)[0]);
+
+      // checkpoint: cursor + contadores + lease numa UPDATE; só vale se ainda formos o dono e estiver RUNNING
+      final int updated = jdbc.update("""
+          UPDATE plan_migration
+             SET cursor_id = ?, migrated = migrated + ?, skipped = skipped + ?, failed = failed + ?,
+                 lease_until = now() + (? * interval '1 millisecond'), updated_at = now()
+           WHERE id = ? AND owner = ?
+          """, cursor, migrated, skipped, failed, leaseTtlMs, id, nodeId);
+      processed += page.size();
+      final double pageRate = page.size() / Math.max(1e-9, (System.nanoTime() - t0) / 1e9);
+      throughput = throughput == 0 ? pageRate : 0.7 * throughput + 0.3 * pageRate;
+      current.set(new Progress(id, m.total(), processed, throughput));
+      log.debug("[MIGRATION] id={} checkpoint cursor={} processed={}/{} {}/s", id, cursor, processed, m.total(), (long) throughput);
+
+      if (updated == 0) {
+        log.warn("[MIGRATION] id={} perdeu o lease; parando", id);
+        return;
+      }
+      m = stillRunning(id);
+      if (m == null) {
+        log.info("[MIGRATION] id={} pausada em cursor={}", id, cursor);
+        return;
+      }
+    }
+  }
+
+  private Outcome migrateOne(UUID migrationId, Migration m, String subscriptionId,
+                             SubscriptionUpdateParams.ProrationBehavior behavior) {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        final Outcome o = migrateOnStripe(migrationId, m, subscriptionId, behavior);
+        (o == Outcome.MIGRATED ? migratedCounter : skippedCounter).increment();
+        return o;
+      } catch (RateLimitException | ApiConnectionException e) {
+        if (attempt < maxAttempts) {
+          sleep(250L << attempt);
+          continue;
+        }
+        return fail(migrationId, subscriptionId, e);
+      } catch (Exception e) {
+        return fail(migrationId, subscriptionId, e);
+      }
+    }
+  }
+
+  private Outcome migrateOnStripe(UUID migrationId, Migration m, String subscriptionId,
+                                  SubscriptionUpdateParams.ProrationBehavior behavior) throws StripeException {
+    throttle.acquire();
+    final Subscription sub = Subscription.retrieve(subscriptionId);
+    final SubscriptionItem item = sub.getItems() != null && !sub.getItems().getData().isEmpty()
+        ? sub.getItems().getData().get(0) : null;
+    final String currentPrice = item != null && item.getPrice() != null ? item.getPrice().getId() : null;
+    if (!m.sourcePriceId().equals(currentPrice)) {
+      // já migrada (repetição da página) ou mudou por fora: só alinha o registro local
+      billingService.applyWebhookUpdate(sub, null);
+      return Outcome.SKIPPED;
+    }
+
+    final SubscriptionUpdateParams params = SubscriptionUpdateParams.builder()
+        .setProrationBehavior(behavior)
+        .addItem(SubscriptionUpdateParams.Item.builder().setId(item.getId()).setPrice(m.targetPriceId()).build())
+        .putMetadata("plan_migration_id", migrationId.toString())
+        .build();
+    final RequestOptions opts = RequestOptions.builder()
+        .setIdempotencyKey("plan-migration-" + migrationId + "-" + subscriptionId)
+        .build();
+    throttle.acquire();
+    final Subscription updated = sub.update(params, opts);
+    billingService.applyWebhookUpdate(updated, null);
+    return Outcome.MIGRATED;
+  }
+
+  private Outcome fail(UUID migrationId, String subscriptionId, Exception e) {
+    failedCounter.increment();
+    log.warn("[MIGRATION] id={} subscriptionId={} falhou: {}", migrationId, subscriptionId, e.getMessage());
+    final String msg = e.getMessage() != null && e.getMessage().length() > 512 ? e.getMessage().substring(0, 512) : e.getMessage();
+    try {
+      jdbc.update("""
+          INSERT INTO plan_migration_failure(migration_id, stripe_subscription_id, error) VALUES (?, ?, ?)
+          ON CONFLICT (migration_id, stripe_subscription_id) DO UPDATE SET error = excluded.error, failed_at = now()
+          """, migrationId, subscriptionId, msg);
+    } catch (Exception ex) {
+      log.debug("[MIGRATION] não gravou falha: {}", ex.getMessage());
+    }
+    return Outcome.FAILED;
+  }
+
+  /** Assume a migração se estiver RUNNING e sem dono vivo (ou já for nossa). */
+  private Migration claim(UUID id) {
+    final List<Migration> rows = jdbc.query("""
+        UPDATE plan_migration
+           SET owner = ?, lease_until = now() + (? * interval '1 millisecond'), updated_at = now()
+         WHERE id = ? AND status = 'RUNNING' AND (owner IS NULL OR owner = ? OR lease_until < now())
+        RETURNING """ + COLUMNS, MAPPER, nodeId, leaseTtlMs, id, nodeId);
+    return rows.isEmpty() ? null : rows.get(0);
+  }
+
+  private Migration stillRunning(UUID id) {
+    final List<Migration> rows = jdbc.query("SELECT " + COLUMNS + " FROM plan_migration WHERE id = ? AND status = 'RUNNING' AND owner = ?",
+        MAPPER, id, nodeId);
+    return rows.isEmpty() ? null : rows.get(0);
+  }
+
+  private static long eta(Progress p) {
+    if (p.throughput() <= 0) return -1;
+    return (long) Math.ceil(Math.max(0, p.total() - p.processed()) / p.throughput());
+  }
+
+  private static String require(String v, String field) {
+    if (!StringUtils.hasText(v)) throw new IllegalArgumentException(field + " é obrigatório");
+    return v;
+  }
+
+  private static void sleep(long ms) {
+    try {
+      TimeUnit.MILLISECONDS.sleep(ms);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @PreDestroy
+  void shutdown() {
+    coordinator.shutdownNow();
+    workers.shutdownNow();
+    try {
+      // devolve o lease para outra réplica retomar já, sem esperar vencer
+      jdbc.update("UPDATE plan_migration SET owner = NULL, lease_until = NULL WHERE owner = ? AND status = 'RUNNING'", nodeId);
+    } catch (Exception e) {
+      log.debug("[MIGRATION] liberação do lease no shutdown falhou: {}", e.getMessage());
+    }
+  }
+}
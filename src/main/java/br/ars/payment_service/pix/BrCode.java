@@ -0,0 +1,84 @@
+package br.ars.payment_service.pix;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+
+/**
+ * Gerador do BR Code PIX ("copia e cola", EMV MPM).
+ *
+ * Tudo que não depende da cobrança (chave, valor fixo, nome, cidade) é serializado uma única vez,
+ * junto com o estado do CRC16 após esses bytes; cada payload só processa o txid e o sufixo "6304".
+ */
+public final class BrCode {
+
+  private static final int[] CRC_TABLE = new int[256];
+  static {
+    for (int i = 0; i < 256; i++) {
+      int c = i << 8;
+      for (int b = 0; b < 8; b++) {
+        c = ((c & 0x8000) != 0) ? (c << 1) ^ 0x1021 : (c << 1);
+      }
+      CRC_TABLE[i] = c & 0xFFFF;
+    }
+  }
+
+  private static final String CRC_TAG = "6304";
+
+  private final String prefix;
+  private final int prefixCrc;
+
+  public BrCode(String key, String merchantName, String merchantCity, BigDecimal amount) {
+    if (key == null || key.isBlank()) throw new IllegalArgumentException("pix.key obrigatória");
+    final StringBuilder sb = new StringBuilder(128)
+        .append(field("00", "01"))
+        .append(field("26", field("00", "br.gov.bcb.pix") + field("01", key.trim())))
+        .append(field("52", "0000"))
+        .append(field("53", "986"));
+    if (amount != null && amount.signum() > 0) {
+      sb.append(field("54", amount.setScale(2, RoundingMode.HALF_UP).toPlainString()));
+    }
+    sb.append(field("58", "BR"))
+      .append(field("59", sanitize(merchantName, 25)))
+      .append(field("60", sanitize(merchantCity, 15)));
+    this.prefix = sb.toString();
+    this.prefixCrc = crc16(0xFFFF, prefix);
+  }
+
+  /** Payload completo para um txid (alfanumérico, até 25 caracteres). */
+  public String payload(String txid) {
+    final String tail = field("62", field("05", txid)) + CRC_TAG;
+    final int crc = crc16(prefixCrc, tail);
+    final StringBuilder sb = new StringBuilder(prefix.length() + tail.length() + 4)
+        .append(prefix).append(tail);
+    final String hex = Integer.toHexString(crc).toUpperCase();
+    for (int i = hex.length(); i < 4; i++) sb.append('0');
+    return sb.append(hex).toString();
+  }
+
+  /** CRC16/CCITT-FALSE (poly 0x1021), continuando a partir de {@code crc}. */
+  static int crc16(int crc, String ascii) {
+    final byte[] bytes = ascii.getBytes(StandardCharsets.US_ASCII);
+    for (byte b : bytes) {
+      crc = ((crc << 8) ^ CRC_TABLE[((crc >>> 8) ^ b) & 0xFF]) & 0xFFFF;
+    }
+    return crc;
+  }
+
+  static String field(String id, String value) {
+    final int len = value.length();
+    if (len > 99) throw new IllegalArgumentException("campo EMV " + id + " excede 99 caracteres");
+    return id + (len < 10 ? "0" : "") + len + value;
+  }
+
+  /** Remove acentos/caracteres fora de ASCII imprimível e limita o tamanho. */
+  static String sanitize(String s, int max) {
+    if (s == null) return "";
+    final String ascii = Normalizer.normalize(s, Normalizer.Form.NFD)
+        .replaceAll("\\p{M}", "")
+        .replaceAll("[^\\x20-\\x7E]", "")
+        .trim();
+    return ascii.length() > max ? ascii.substring(0, max) : ascii;
+  }
+}
@@ -0,0 +1,130 @@
+package br.ars.payment_service.pix;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Expira cobranças PIX pendentes (pix.qr.expiration-minutes) numa timing wheel em memória.
+ *
+ * A wheel é reconstruída do banco no startup; a cada tick os txids vencidos são gravados em lote
+ * (um UPDATE por lote) e os listeners liberam cache de QR e índices no mesmo momento.
+ */
+@Service
+public class PixExpirationService {
+  private static final Logger log = LoggerFactory.getLogger(PixExpirationService.class);
+
+  private static final String EXPIRE_SQL =
+      "UPDATE pix_charge SET status = 'EXPIRED', updated_at = now() WHERE status = 'PENDING' AND txid = ANY(?)";
+
+  private final JdbcTemplate jdbc;
+  private final TimingWheel wheel;
+  private final long tickMs;
+  private final int batchSize;
+  private final List<Consumer<List<String>>> listeners = new CopyOnWriteArrayList<>();
+  private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread t = new Thread(r, "pix-expire-tick");
+    t.setDaemon(true);
+    return t;
+  });
+
+  public PixExpirationService(JdbcTemplate jdbc,
+                              MeterRegistry meters,
+                              @Value("${pix.expiration.tick-ms:1000}") long tickMs,
+                              @Value("${pix.expiration.batch-size:500}") int batchSize) {
+    this.jdbc = jdbc;
+    this.tickMs = tickMs;
+    this.batchSize = batchSize;
+    this.wheel = new TimingWheel(tickMs, 64, System.currentTimeMillis());
+    Gauge.builder("app.pix.charges.pending", wheel, TimingWheel::size).register(meters);
+  }
+
+  /** Chamado com os txids expirados em cada lote (depois de persistidos). */
+  public void onExpire(Consumer<List<String>> listener) {
+    listeners.add(listener);
+  }
+
+  public void track(String txid, OffsetDateTime expiresAt) {
+    wheel.schedule(txid, expiresAt.toInstant().toEpochMilli());
+  }
+
+  public boolean isTracked(String txid) {
+    return wheel.contains(txid);
+  }
+
+  /** Para cobranças pagas/canceladas antes do vencimento. */
+  public void untrack(String txid) {
+    wheel.cancel(txid);
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    final long t0 = System.nanoTime();
+    final int[] n = {0};
+    jdbc.query("SELECT txid, expires_at FROM pix_charge WHERE status = 'PENDING'", rs -> {
+      track(rs.getString(1), rs.getObject(2, OffsetDateTime.class));
+      n[0]++;
+    });
+    log.info("[PIX][EXPIRE] wheel reconstruída: pendentes={} tookMs={}", n[0], (System.nanoTime() - t0) / 1_000_000);
+    ticker.scheduleWithFixedDelay(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+  }
+
+  private void tick() {
+    try {
+      final List<String> expired = new ArrayList<>();
+      wheel.advanceTo(System.currentTimeMillis(), expired::add);
+      for (int i = 0; i < expired.size(); i += batchSize) {
+        flush(expired.subList(i, Math.min(expired.size(), i + batchSize)));
+      }
+    } catch (Exception e) {
+      log.error("[PIX][EXPIRE] tick falhou: {}", e.getMessage(), e);
+    }
+  }
+
+  private void flush(List<String> txids) {
+    final Integer updated;
+    try {
+      updated = jdbc.execute((ConnectionCallback<Integer>) c -> {
+        final Array arr = c.createArrayOf("varchar", txids.toArray());
+        try (PreparedStatement ps = c.prepareStatement(EXPIRE_SQL)) {
+          ps.setArray(1, arr);
+          return ps.executeUpdate();
+        } finally {
+          arr.free();
+        }
+      });
+    } catch (Exception e) {
+      // devolve à wheel para nova tentativa em alguns ticks
+      final long retryAt = System.currentTimeMillis() + tickMs * 5;
+      txids.forEach(t -> wheel.schedule(t, retryAt));
+      log.warn("[PIX][EXPIRE] falha ao persistir lote ({}), reagendado: {}", txids.size(), e.getMessage());
+      return;
+    }
+    for (Consumer<List<String>> l : listeners) l.accept(txids);
+    log.info("[PIX][EXPIRE] expiradas={} (lote={})", updated, txids.size());
+  }
+
+  @PreDestroy
+  void shutdown() {
+    ticker.shutdownNow();
+  }
+}
@@ -0,0 +1,118 @@
+package br.ars.payment_service.pix;
+
+import br.ars.payment_service.config.PixProperties;
+import br.ars.payment_service.domain.PixCharge;
+import br.ars.payment_service.domain.PixChargeStatus;
+import br.ars.payment_service.dto.PixChargeResponse;
+import br.ars.payment_service.repo.PixChargeRepository;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+@Service
+public class PixService {
+  private static final Logger log = LoggerFactory.getLogger(PixService.class);
+
+  private final PixProperties props;
+  private final PixChargeRepository repo;
+  private final TxidGenerator txids;
+  private final QrRenderer renderer;
+  private final BigDecimal amount;
+  private final BrCode brCode; // null quando PIX não está configurado
+  private final PixExpirationService expirations;
+
+  /** PNG por txid; o valor é o future da renderização, então pedidos simultâneos compartilham o trabalho. */
+  private final AsyncCache<String, byte[]> qrCache;
+
+  public PixService(PixProperties props, PixChargeRepository repo, PixExpirationService expirations) {
+    this.props = props;
+    this.repo = repo;
+    this.expirations = expirations;
+    this.txids = new TxidGenerator(props.getTxid().getPrefix());
+    this.renderer = new QrRenderer(props.getQr().getModulePixels(),
+        props.getQr().getRenderThreads(), props.getQr().getRenderQueue());
+    this.qrCache = Caffeine.newBuilder()
+        .maximumSize(props.getQr().getCacheSize())
+        .expireAfterWrite(Duration.ofMinutes(props.getQr().getExpirationMinutes()))
+        .buildAsync();
+
+    this.amount = parseAmount(props.getAmount());
+    this.brCode = configured(props.getKey())
+        ? new BrCode(props.getKey(), props.getMerchant().getName(), props.getMerchant().getCity(), amount)
+        : null;
+    if (brCode == null) log.warn("[PIX] pix.key não configurada; cobranças PIX desabilitadas");
+
+    // cobrança expirada => PNG sai da memória junto
+    expirations.onExpire(txids -> qrCache.synchronous().invalidateAll(txids));
+  }
+
+  /** Emite uma cobrança no valor fixo (pix.amount). */
+  public PixChargeResponse createCharge(String userId) {
+    if (brCode == null || amount == null) throw new IllegalStateException("PIX não configurado");
+
+    final String txid = txids.next();
+    final String payload = brCode.payload(txid);
+    final OffsetDateTime expiresAt = OffsetDateTime.now(ZoneOffset.UTC)
+        .plusMinutes(props.getQr().getExpirationMinutes());
+
+    repo.save(PixCharge.builder()
+        .txid(txid)
+        .userId(StringUtils.hasText(userId) ? UUID.fromString(userId) : null)
+        .amount(amount)
+        .payload(payload)
+        .status(PixChargeStatus.PENDING)
+        .expiresAt(expiresAt)
+        .build());
+    expirations.track(txid, expiresAt);
+
+    log.info("[PIX][CHARGE] txid={} userId={} expiresAt={}", txid, userId, expiresAt);
+    return new PixChargeResponse(txid, payload, amount.toPlainString(), expiresAt.toString(),
+        "/api/pix/charges/" + txid + "/qr.png");
+  }
+
+  /** PNG do QR (renderizado uma vez por txid e servido do cache depois). */
+  public CompletableFuture<byte[]> qrPng(String txid) {
+    return qrCache.get(txid, (k, executor) -> {
+      final PixCharge charge = repo.findByTxid(k)
+          .orElseThrow(() -> new NoSuchElementException("cobrança PIX não encontrada: " + k));
+      if (charge.getStatus() != PixChargeStatus.PENDING || !charge.getExpiresAt().isAfter(OffsetDateTime.now())) {
+        throw new IllegalStateException("cobrança PIX " + k + " não está mais pendente");
+      }
+      // cobrança emitida por outra réplica: passa a ser vigiada aqui para liberar o cache no vencimento
+      if (!expirations.isTracked(k)) expirations.track(k, charge.getExpiresAt());
+      return renderer.renderAsync(charge.getPayload());
+    });
+  }
+
+  private static boolean configured(String v) {
+    return StringUtils.hasText(v) && !v.startsWith("${");
+  }
+
+  private static BigDecimal parseAmount(String v) {
+    if (!configured(v)) return null;
+    try {
+      return new BigDecimal(v.trim().replace(',', '.')).setScale(2, RoundingMode.HALF_UP);
+    } catch (NumberFormatException e) {
+      log.warn("[PIX] pix.amount inválido: {}", v);
+      return null;
+    }
+  }
+
+  @PreDestroy
+  void shutdown() {
+    renderer.close();
+  }
+}
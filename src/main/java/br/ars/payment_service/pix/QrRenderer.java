@@ -0,0 +1,134 @@
+package br.ars.payment_service.pix;
+
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+import com.google.zxing.qrcode.encoder.Encoder;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Renderiza o BR Code em PNG num pool limitado.
+ *
+ * A matriz vem do encoder do ZXing; o PNG é escrito direto em 1 bit/pixel (sem BufferedImage/ImageIO),
+ * o que deixa cada imagem com poucos KB e poucos microssegundos de CPU.
+ */
+public final class QrRenderer implements AutoCloseable {
+  private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+  private static final int QUIET_ZONE = 4;
+  private static final Map<EncodeHintType, Object> HINTS = Map.of(EncodeHintType.CHARACTER_SET, "UTF-8");
+
+  private static final ThreadLocal<Deflater> DEFLATER =
+      ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+
+  private final int modulePixels;
+  private final ThreadPoolExecutor pool;
+
+  public QrRenderer(int modulePixels, int threads, int queueSize) {
+    this.modulePixels = Math.max(1, modulePixels);
+    final AtomicInteger seq = new AtomicInteger();
+    this.pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueSize),
+        r -> {
+          Thread t = new Thread(r, "pix-qr-" + seq.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        },
+        new ThreadPoolExecutor.AbortPolicy());
+  }
+
+  /** Enfileira a renderização; fila cheia => RejectedExecutionException. */
+  public CompletableFuture<byte[]> renderAsync(String payload) {
+    return CompletableFuture.supplyAsync(() -> render(payload), pool);
+  }
+
+  public byte[] render(String payload) {
+    final ByteMatrix m;
+    try {
+      m = Encoder.encode(payload, ErrorCorrectionLevel.M, HINTS).getMatrix();
+    } catch (WriterException e) {
+      throw new IllegalArgumentException("payload PIX inválido para QR: " + e.getMessage(), e);
+    }
+    return toPng(m);
+  }
+
+  private byte[] toPng(ByteMatrix m) {
+    final int modules = m.getWidth() + 2 * QUIET_ZONE;
+    final int size = modules * modulePixels;
+    final int rowBytes = (size + 7) / 8;
+
+    // Linhas cruas (filtro 0 + bits; 1 = branco). Cada linha de módulos se repete modulePixels vezes.
+    final byte[] raw = new byte[(rowBytes + 1) * size];
+    final byte[] row = new byte[rowBytes];
+    int off = 0;
+    for (int my = 0; my < modules; my++) {
+      Arrays.fill(row, (byte) 0xFF);
+      final int y = my - QUIET_ZONE;
+      if (y >= 0 && y < m.getHeight()) {
+        for (int mx = 0; mx < m.getWidth(); mx++) {
+          if (m.get(mx, y) != 1) continue;
+          final int px0 = (mx + QUIET_ZONE) * modulePixels;
+          for (int px = px0; px < px0 + modulePixels; px++) {
+            row[px >>> 3] &= (byte) ~(0x80 >>> (px & 7));
+          }
+        }
+      }
+      for (int r = 0; r < modulePixels; r++) {
+        raw[off++] = 0;
+        System.arraycopy(row, 0, raw, off, rowBytes);
+        off += rowBytes;
+      }
+    }
+
+    final Deflater d = DEFLATER.get();
+    d.reset();
+    d.setInput(raw);
+    d.finish();
+    final ByteArrayOutputStream idat = new ByteArrayOutputStream(raw.length / 8 + 64);
+    final byte[] buf = new byte[8192];
+    while (!d.finished()) {
+      final int n = d.deflate(buf);
+      idat.write(buf, 0, n);
+    }
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream(idat.size() + 64);
+    out.writeBytes(PNG_SIGNATURE);
+    final ByteBuffer ihdr = ByteBuffer.allocate(13)
+        .putInt(size).putInt(size)
+        .put((byte) 1)   // bit depth
+        .put((byte) 0)   // grayscale
+        .put((byte) 0).put((byte) 0).put((byte) 0);
+    chunk(out, "IHDR", ihdr.array());
+    chunk(out, "IDAT", idat.toByteArray());
+    chunk(out, "IEND", new byte[0]);
+    return out.toByteArray();
+  }
+
+  private static void chunk(ByteArrayOutputStream out, String type, byte[] data) {
+    final byte[] t = type.getBytes(StandardCharsets.US_ASCII);
+    final CRC32 crc = new CRC32();
+    crc.update(t);
+    crc.update(data);
+    out.writeBytes(ByteBuffer.allocate(4).putInt(data.length).array());
+    out.writeBytes(t);
+    out.writeBytes(data);
+    out.writeBytes(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array());
+  }
+
+  @Override
+  public void close() {
+    pool.shutdownNow();
+  }
+}
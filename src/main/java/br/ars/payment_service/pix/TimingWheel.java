@@ -0,0 +1,124 @@
+package br.ars.payment_service.pix;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Timing wheel hierárquica (3 níveis de {@code wheelSize} buckets) para expirar chaves.
+ *
+ * schedule/cancel podem ser chamados de qualquer thread (fila lock-free + índice concorrente);
+ * {@link #advanceTo(long)} deve ser chamado por uma única thread de tick. Cada tick custa O(1)
+ * mais o número de itens que vencem ou descem de nível naquele bucket.
+ */
+final class TimingWheel {
+
+  static final class Entry {
+    final String key;
+    final long deadlineTick;
+    volatile boolean cancelled;
+    Entry next;
+
+    Entry(String key, long deadlineTick) {
+      this.key = key;
+      this.deadlineTick = deadlineTick;
+    }
+  }
+
+  private static final int LEVELS = 3;
+
+  private final long tickMs;
+  private final int wheelSize;
+  private final long[] span;        // ticks cobertos por bucket em cada nível
+  private final Entry[][] buckets;  // listas encadeadas simples
+  private final Queue<Entry> incoming = new ConcurrentLinkedQueue<>();
+  private final Map<String, Entry> index = new ConcurrentHashMap<>();
+
+  private long currentTick;
+
+  TimingWheel(long tickMs, int wheelSize, long startMs) {
+    this.tickMs = tickMs;
+    this.wheelSize = wheelSize;
+    this.span = new long[LEVELS];
+    long s = 1;
+    for (int l = 0; l < LEVELS; l++) {
+      span[l] = s;
+      s *= wheelSize;
+    }
+    this.buckets = new Entry[LEVELS][wheelSize];
+    this.currentTick = startMs / tickMs;
+  }
+
+  /** Agenda (ou re-agenda) a chave para expirar em {@code deadlineMs}. */
+  void schedule(String key, long deadlineMs) {
+    final Entry e = new Entry(key, Math.floorDiv(deadlineMs + tickMs - 1, tickMs));
+    final Entry prev = index.put(key, e);
+    if (prev != null) prev.cancelled = true;
+    incoming.add(e);
+  }
+
+  void cancel(String key) {
+    final Entry e = index.remove(key);
+    if (e != null) e.cancelled = true;
+  }
+
+  boolean contains(String key) {
+    return index.containsKey(key);
+  }
+
+  int size() {
+    return index.size();
+  }
+
+  /** Avança até {@code nowMs}, entregando as chaves vencidas em {@code expired}. */
+  void advanceTo(long nowMs, Consumer<String> expired) {
+    drainIncoming(expired);
+    final long target = nowMs / tickMs;
+    while (currentTick < target) {
+      currentTick++;
+      // desce os níveis superiores nas fronteiras (do mais alto para o mais baixo)
+      for (int l = LEVELS - 1; l >= 1; l--) {
+        if (currentTick % span[l] == 0) {
+          final int slot = (int) ((currentTick / span[l]) % wheelSize);
+          final Entry head = buckets[l][slot];
+          buckets[l][slot] = null;
+          for (Entry e = head, n; e != null; e = n) {
+            n = e.next;
+            place(e, expired);
+          }
+        }
+      }
+      final int slot = (int) (currentTick % wheelSize);
+      final Entry head = buckets[0][slot];
+      buckets[0][slot] = null;
+      for (Entry e = head, n; e != null; e = n) {
+        n = e.next;
+        place(e, expired);
+      }
+    }
+  }
+
+  private void drainIncoming(Consumer<String> expired) {
+    Entry e;
+    while ((e = incoming.poll()) != null) place(e, expired);
+  }
+
+  private void place(Entry e, Consumer<String> expired) {
+    e.next = null;
+    if (e.cancelled) return;
+    final long delta = e.deadlineTick - currentTick;
+    if (delta <= 0) {
+      if (index.remove(e.key, e)) expired.accept(e.key);
+      return;
+    }
+    int level = 0;
+    while (level < LEVELS - 1 && delta >= span[level + 1]) level++;
+    // além do horizonte: estaciona no bucket mais distante do último nível e volta a descer depois
+    final long at = Math.min(e.deadlineTick, currentTick + span[LEVELS - 1] * (wheelSize - 1));
+    final int slot = (int) ((at / span[level]) % wheelSize);
+    e.next = buckets[level][slot];
+    buckets[level][slot] = e;
+  }
+}
@@ -0,0 +1,35 @@
+package br.ars.payment_service.pix;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gera txids únicos sem consultar o banco: prefixo + id do nó + contador monotônico.
+ *
+ * O contador parte de (epochMillis << 12) e nunca retrocede, então o mesmo nó não repete
+ * valores nem após reinício; o id aleatório do nó separa réplicas. A unicidade final é garantida
+ * pela constraint uk_pix_txid.
+ */
+public final class TxidGenerator {
+  /** Limite do campo 62-05 no BR Code. */
+  static final int MAX_LEN = 25;
+
+  private final String prefix;
+  private final AtomicLong last = new AtomicLong();
+
+  public TxidGenerator(String prefix) {
+    final String p = prefix == null ? "" : prefix.replaceAll("[^A-Za-z0-9]", "");
+    final String node = Long.toString(new SecureRandom().nextLong() & Long.MAX_VALUE, 36);
+    final String nodePart = (node + "0000").substring(0, 4);
+    this.prefix = (p + nodePart).toUpperCase();
+    if (this.prefix.length() + 13 > MAX_LEN) {
+      throw new IllegalArgumentException("pix.txid.prefix muito longo (máx. " + (MAX_LEN - 17) + ")");
+    }
+  }
+
+  public String next() {
+    final long base = System.currentTimeMillis() << 12;
+    final long v = last.accumulateAndGet(base, (prev, b) -> Math.max(prev + 1, b));
+    return prefix + Long.toString(v, 36).toUpperCase();
+  }
+}
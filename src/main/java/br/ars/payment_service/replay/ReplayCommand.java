@@ -0,0 +1,53 @@
+package br.ars.payment_service.replay;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Modo offline: {@code java -jar app.jar --app.replay.file=events.jsonl[.gz] --spring.main.web-application-type=none}
+ * executa o replay e encerra (exit 0 em sucesso). {@code --app.replay.dry-run=true} só conta.
+ * Sem app.replay.file não faz nada (checado em runtime para funcionar também com AOT).
+ */
+@Component
+public class ReplayCommand implements ApplicationRunner {
+  private static final Logger log = LoggerFactory.getLogger(ReplayCommand.class);
+
+  private final StripeEventReplayer replayer;
+  private final ApplicationContext ctx;
+
+  @Value("${app.replay.file:}")
+  private String file;
+
+  @Value("${app.replay.dry-run:false}")
+  private boolean dryRun;
+
+  public ReplayCommand(StripeEventReplayer replayer, ApplicationContext ctx) {
+    this.replayer = replayer;
+    this.ctx = ctx;
+  }
+
+  @Override
+  public void run(ApplicationArguments args) {
+    if (!StringUtils.hasText(file)) return;
+    int code = 0;
+    try (InputStream in = Files.newInputStream(Paths.get(file))) {
+      replayer.replay(in, dryRun);
+    } catch (Exception e) {
+      log.error("[REPLAY] falhou: {}", e.getMessage(), e);
+      code = 1;
+    }
+    final int exit = code;
+    System.exit(SpringApplication.exit(ctx, () -> exit));
+  }
+}
@@ -0,0 +1,368 @@
+package br.ars.payment_service.replay;
+
+import br.ars.payment_service.domain.SubscriptionsStatus;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reconstrói subscription_record / billing_customer a partir de um export JSONL de eventos da Stripe
+ * (um Event por linha, em qualquer ordem).
+ *
+ * A leitura é sequencial em blocos de linhas; o parse roda em paralelo com no máximo
+ * {@code 2 × threads} blocos em voo. Cada evento relevante é reduzido na hora ao estado final por
+ * objeto (último por created, empate pela posição no arquivo), então a memória cresce com o número
+ * de assinaturas/customers, não de eventos, e a ordem por assinatura vem da própria redução.
+ * Evento repetido (mesmo id) nunca substitui a si mesmo. No fim, upserts em lote (ON CONFLICT).
+ *
+ * Assinatura replayada fica com updated_at = created do evento aplicado, e o upsert só sobrescreve linha
+ * com updated_at anterior: export antigo (ou repetido) não regride o que webhooks/replays mais novos
+ * já gravaram.
+ */
+@Service
+public class StripeEventReplayer {
+  private static final Logger log = LoggerFactory.getLogger(StripeEventReplayer.class);
+  private static final String MD_USER_ID = "userId";
+
+  /** Estado final reduzido de uma assinatura. */
+  record SubState(String eventId, long created, long line,
+                  String subscriptionId, String customerId, SubscriptionsStatus status,
+                  String priceId, String productId, String latestInvoiceId, String defaultPaymentMethod,
+                  Long periodStart, Long periodEnd, Long cancelAt, boolean cancelAtPeriodEnd, Long subCreated) {}
+
+  /** Estado final reduzido de um customer (só os que carregam metadata.userId). */
+  record CustomerState(String eventId, long created, long line, String customerId, String userId, String email) {}
+
+  public record ReplayReport(long lines, long malformed, long relevant, long duplicates,
+                             int subscriptions, int customers,
+                             int upsertedCustomers, int upsertedSubscriptions, int orphanSubscriptions,
+                             int staleSubscriptions, boolean dryRun, long millis) {}
+
+  private final JdbcTemplate jdbc;
+  private final ObjectMapper json = new ObjectMapper();
+
+  @Value("${app.replay.threads:0}")
+  private int threadsProp;
+
+  @Value("${app.replay.chunk-lines:4096}")
+  private int chunkLines;
+
+  @Value("${app.replay.batch-size:1000}")
+  private int batchSize;
+
+  public StripeEventReplayer(JdbcTemplate jdbc) {
+    this.jdbc = jdbc;
+  }
+
+  /** Aceita JSONL puro ou gzip (detectado pelos magic bytes). */
+  public ReplayReport replay(InputStream raw, boolean dryRun) throws IOException {
+    final BufferedInputStream in = new BufferedInputStream(raw, 1 << 16);
+    in.mark(2);
+    final boolean gzip = in.read() == 0x1f && in.read() == 0x8b;
+    in.reset();
+    return replayPlain(gzip ? new GZIPInputStream(in, 1 << 16) : in, dryRun);
+  }
+
+  private ReplayReport replayPlain(InputStream in, boolean dryRun) throws IOException {
+    final long t0 = System.currentTimeMillis();
+    final int threads = threadsProp > 0 ? threadsProp : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    final Map<String, SubState> subs = new ConcurrentHashMap<>();
+    final Map<String, CustomerState> customers = new ConcurrentHashMap<>();
+    final LongAdder malformed = new LongAdder();
+    final LongAdder relevant = new LongAdder();
+    final LongAdder duplicates = new LongAdder();
+
+    final AtomicInteger seq = new AtomicInteger();
+    final ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+      final Thread t = new Thread(r, "replay-parse-" + seq.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+    final Semaphore inFlight = new Semaphore(threads * 2);
+    final List<Future<?>> futures = new ArrayList<>();
+    long lines = 0;
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 20)) {
+      List<String> chunk = new ArrayList<>(chunkLines);
+      long chunkStart = 0;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines++;
+        chunk.add(line);
+        if (chunk.size() == chunkLines) {
+          futures.add(submit(pool, inFlight, chunk, chunkStart, subs, customers, malformed, relevant, duplicates));
+          reapDone(futures);
+          chunk = new ArrayList<>(chunkLines);
+          chunkStart = lines;
+        }
+      }
+      if (!chunk.isEmpty()) {
+        futures.add(submit(pool, inFlight, chunk, chunkStart, subs, customers, malformed, relevant, duplicates));
+      }
+      for (Future<?> f : futures) f.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("replay interrompido");
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("falha no parse: " + e.getCause().getMessage(), e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+
+    log.info("[REPLAY] {} linhas lidas; {} assinaturas, {} customers (malformadas={}, duplicadas={})",
+        lines, subs.size(), customers.size(), malformed.sum(), duplicates.sum());
+
+    int upCustomers = 0;
+    int upSubs = 0;
+    int orphans = 0;
+    if (!dryRun) {
+      upCustomers = upsertCustomers(customers.values());
+      orphans = countOrphans(subs.values());
+      upSubs = upsertSubscriptions(subs.values());
+    }
+    final ReplayReport report = new ReplayReport(lines, malformed.sum(), relevant.sum(), duplicates.sum(),
+        subs.size(), customers.size(), upCustomers, upSubs, orphans, dryRun ? 0 : subs.size() - upSubs - orphans,
+        dryRun, System.currentTimeMillis() - t0);
+    log.info("[REPLAY] {}", report);
+    return report;
+  }
+
+  /** Propaga falhas cedo e mantém a lista do tamanho dos blocos em voo. */
+  private static void reapDone(List<Future<?>> futures) throws InterruptedException, ExecutionException {
+    for (Iterator<Future<?>> it = futures.iterator(); it.hasNext(); ) {
+      final Future<?> f = it.next();
+      if (f.isDone()) {
+        f.get();
+        it.remove();
+      }
+    }
+  }
+
+  private Future<?> submit(ExecutorService pool, Semaphore inFlight, List<String> chunk, long firstLine,
+                           Map<String, SubState> subs, Map<String, CustomerState> customers,
+                           LongAdder malformed, LongAdder relevant, LongAdder duplicates) throws InterruptedException {
+    inFlight.acquire(); // backpressure: leitura espera se o parse ficar para trás
+    return pool.submit(() -> {
+      try {
+        for (int i = 0; i < chunk.size(); i++) {
+          final String raw = chunk.get(i);
+          if (raw.isBlank()) continue;
+          final JsonNode ev;
+          try {
+            ev = json.readTree(raw);
+          } catch (IOException e) {
+            malformed.increment();
+            continue;
+          }
+          final long line = firstLine + i;
+          final String type = ev.path("type").asText("");
+          final JsonNode obj = ev.path("data").path("object");
+          if (type.startsWith("customer.subscription.")) {
+            final SubState s = toSub(ev, obj, line);
+            if (s == null) { malformed.increment(); continue; }
+            relevant.increment();
+            subs.merge(s.subscriptionId(), s, (a, b) -> newer(a.eventId(), a.created(), a.line(), b.eventId(), b.created(), b.line(), duplicates) ? b : a);
+          } else if (type.equals("customer.created") || type.equals("customer.updated")) {
+            final CustomerState c = toCustomer(ev, obj, line);
+            if (c == null) continue;
+            relevant.increment();
+            customers.merge(c.customerId(), c, (a, b) -> newer(a.eventId(), a.created(), a.line(), b.eventId(), b.created(), b.line(), duplicates) ? b : a);
+          }
+        }
+      } finally {
+        inFlight.release();
+      }
+    });
+  }
+
+  /** true se b deve substituir a. */
+  private static boolean newer(String aId, long aCreated, long aLine, String bId, long bCreated, long bLine, LongAdder duplicates) {
+    if (aId != null && aId.equals(bId)) {
+      duplicates.increment();
+      return false;
+    }
+    return bCreated != aCreated ? bCreated > aCreated : bLine > aLine;
+  }
+
+  private static SubState toSub(JsonNode ev, JsonNode o, long line) {
+    final String id = text(o, "id");
+    final SubscriptionsStatus status = status(text(o, "status"));
+    if (id == null || status == null) return null;
+    final JsonNode item = o.path("items").path("data").path(0);
+    final JsonNode price = item.path("price").isObject() ? item.path("price") : item.path("plan");
+    final JsonNode product = price.path("product");
+    // basil: período no item; versões antigas: na assinatura
+    final Long start = longOr(item, "current_period_start", longOr(o, "current_period_start", null));
+    final Long end = longOr(item, "current_period_end", longOr(o, "current_period_end", null));
+    return new SubState(text(ev, "id"), ev.path("created").asLong(0), line,
+        id, idOf(o.path("customer")), status,
+        text(price, "id"), product.isObject() ? text(product, "id") : (product.isTextual() ? product.asText() : null),
+        idOf(o.path("latest_invoice")), idOf(o.path("default_payment_method")),
+        start, end, longOr(o, "cancel_at", null), o.path("cancel_at_period_end").asBoolean(false),
+        longOr(o, "created", null));
+  }
+
+  private static CustomerState toCustomer(JsonNode ev, JsonNode o, long line) {
+    final String id = text(o, "id");
+    final String userId = text(o.path("metadata"), MD_USER_ID);
+    final String email = text(o, "email");
+    if (id == null || userId == null || email == null) return null;
+    try {
+      UUID.fromString(userId);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+    return new CustomerState(text(ev, "id"), ev.path("created").asLong(0), line, id, userId, email);
+  }
+
+  /* ---------------- carga ---------------- */
+
+  private int upsertCustomers(Collection<CustomerState> all) {
+    // um customer por usuário (uk_customer_user): fica o mais recente
+    final Map<String, CustomerState> byUser = new HashMap<>();
+    for (CustomerState c : all) {
+      byUser.merge(c.userId(), c, (a, b) -> b.created() > a.created() ? b : a);
+    }
+    final List<Object[]> args = new ArrayList<>(batchSize);
+    int done = 0;
+    for (CustomerState c : byUser.values()) {
+      args.add(new Object[] { c.userId(), c.email(), c.customerId(), c.userId(), c.customerId() });
+      if (args.size() == batchSize) done += flush(UPSERT_CUSTOMER, args);
+    }
+    done += flush(UPSERT_CUSTOMER, args);
+    return done;
+  }
+
+  private int upsertSubscriptions(Collection<SubState> all) {
+    final List<Object[]> args = new ArrayList<>(batchSize);
+    int done = 0;
+    for (SubState s : all) {
+      args.add(new Object[] {
+          s.subscriptionId(), s.status().name(), s.productId(), s.priceId(), s.latestInvoiceId(),
+          s.defaultPaymentMethod(), ts(s.periodStart()), ts(s.periodEnd()), ts(s.cancelAt()), s.cancelAtPeriodEnd(),
+          ts(s.subCreated() != null ? s.subCreated() : s.created()), ts(s.created()), s.customerId() });
+      if (args.size() == batchSize) done += flush(UPSERT_SUBSCRIPTION, args);
+    }
+    done += flush(UPSERT_SUBSCRIPTION, args);
+    return done;
+  }
+
+  /** Assinaturas sem customer local (o upsert não grava); o resto não gravado é evento mais antigo que a linha. */
+  private int countOrphans(Collection<SubState> all) {
+    final List<String> ids = all.stream().map(SubState::customerId).distinct().toList();
+    final Set<String> known = new HashSet<>();
+    for (int i = 0; i < ids.size(); i += batchSize) {
+      final List<String> part = ids.subList(i, Math.min(ids.size(), i + batchSize));
+      known.addAll(jdbc.queryForList("SELECT stripe_customer_id FROM billing_customer WHERE stripe_customer_id = ANY(?)",
+          String.class, (Object) part.toArray(String[]::new)));
+    }
+    int n = 0;
+    for (SubState s : all) if (s.customerId() == null || !known.contains(s.customerId())) n++;
+    return n;
+  }
+
+  private int flush(String sql, List<Object[]> args) {
+    if (args.isEmpty()) return 0;
+    int n = 0;
+    for (int c : jdbc.batchUpdate(sql, args)) n += Math.max(c, 0);
+    args.clear();
+    return n;
+  }
+
+  private static final String UPSERT_CUSTOMER = """
+      INSERT INTO billing_customer(id, user_id, email, stripe_customer_id, created_at, updated_at)
+      SELECT gen_random_uuid(), CAST(? AS uuid), ?, ?, now(), now()
+       WHERE NOT EXISTS (SELECT 1 FROM billing_customer WHERE user_id = CAST(? AS uuid) AND stripe_customer_id <> ?)
+      ON CONFLICT (stripe_customer_id) DO UPDATE SET email = excluded.email, updated_at = now()
+      """;
+
+  /**
+   * Só grava assinaturas cujo customer existe, e só por cima de linha mais antiga que o evento
+   * (updated_at); version sobe para invalidar caches/ETags.
+   */
+  private static final String UPSERT_SUBSCRIPTION = """
+      INSERT INTO subscription_record(id, billing_customer_id, stripe_subscription_id, status, product_id, price_id,
+                                      latest_invoice_id, default_payment_method, current_period_start,
+                                      current_period_end, cancel_at, cancel_at_period_end, created_at, updated_at, version)
+      SELECT gen_random_uuid(), c.id, v.sub, v.status, v.product, v.price, v.inv, v.pm, v.ps, v.pe, v.ca, v.cape, v.created, v.at, 0
+        FROM (SELECT ?::varchar AS sub, ?::varchar AS status, ?::varchar AS product, ?::varchar AS price,
+                     ?::varchar AS inv, ?::varchar AS pm, ?::timestamptz AS ps, ?::timestamptz AS pe,
+                     ?::timestamptz AS ca, ?::boolean AS cape, ?::timestamptz AS created, ?::timestamptz AS at,
+                     ?::varchar AS cus) v
+        JOIN billing_customer c ON c.stripe_customer_id = v.cus
+      ON CONFLICT (stripe_subscription_id) DO UPDATE SET
+        status = excluded.status, product_id = excluded.product_id, price_id = excluded.price_id,
+        latest_invoice_id = coalesce(excluded.latest_invoice_id, subscription_record.latest_invoice_id),
+        default_payment_method = coalesce(excluded.default_payment_method, subscription_record.default_payment_method),
+        current_period_start = excluded.current_period_start, current_period_end = excluded.current_period_end,
+        cancel_at = excluded.cancel_at, cancel_at_period_end = excluded.cancel_at_period_end,
+        updated_at = excluded.updated_at, version = subscription_record.version + 1
+      WHERE subscription_record.updated_at < excluded.updated_at
+      """;
+
+  /* ---------------- helpers ---------------- */
+
+  private static SubscriptionsStatus status(String s) {
+    if (s == null) return null;
+    return switch (s) {
+      case "incomplete" -> SubscriptionsStatus.INCOMPLETE;
+      case "incomplete_expired" -> SubscriptionsStatus.INCOMPLETE_EXPIRED;
+      case "trialing" -> SubscriptionsStatus.TRIALING;
+      case "active" -> SubscriptionsStatus.ACTIVE;
+      case "past_due" -> SubscriptionsStatus.PAST_DUE;
+      case "canceled" -> SubscriptionsStatus.CANCELED;
+      case "unpaid" -> SubscriptionsStatus.UNPAID;
+      default -> null;
+    };
+  }
+
+  private static String text(JsonNode n, String field) {
+    final JsonNode v = n.get(field);
+    return v != null && v.isTextual() && !v.asText().isEmpty() ? v.asText() : null;
+  }
+
+  /** Campo expansível: string (id) ou objeto com id. */
+  private static String idOf(JsonNode n) {
+    if (n.isTextual()) return n.asText();
+    return n.isObject() ? text(n, "id") : null;
+  }
+
+  private static Long longOr(JsonNode n, String field, Long dflt) {
+    final JsonNode v = n.get(field);
+    return v != null && v.isNumber() ? Long.valueOf(v.asLong()) : dflt;
+  }
+
+  private static Timestamp ts(Long epochSeconds) {
+    return epochSeconds == null ? null : Timestamp.from(Instant.ofEpochSecond(epochSeconds));
+  }
+}
@@ -0,0 +1,9 @@
+package br.ars.payment_service.repo;
+
+import br.ars.payment_service.domain.PixCharge;
+import org.springframework.data.jpa.repository.JpaRepository;
+import java.util.*;
+
+public interface PixChargeRepository extends JpaRepository<PixCharge, UUID> {
+  Optional<PixCharge> findByTxid(String txid);
+}
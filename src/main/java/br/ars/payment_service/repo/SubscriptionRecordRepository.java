@@ -1,9 +1,57 @@
 package br.ars.payment_service.repo;
 
 import br.ars.payment_service.domain.*;
+import br.ars.payment_service.dto.SubscriptionSummary;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.*;
+import java.time.OffsetDateTime;
 import java.util.*;
 
 public interface SubscriptionRecordRepository extends JpaRepository<SubscriptionRecord, UUID> {
+  String SUMMARY = """
+      select new br.ars.payment_service.dto.SubscriptionSummary(
+          s.stripeSubscriptionId, c.stripeCustomerId, s.status, s.priceId,
+          s.currentPeriodEnd, s.cancelAtPeriodEnd, s.createdAt)
+        from SubscriptionRecord s join s.customer c
+      """;
+
+  /** Traz o customer no mesmo SELECT (o change feed precisa do stripe_customer_id). */
+  @EntityGraph(attributePaths = "customer")
   Optional<SubscriptionRecord> findByStripeSubscriptionId(String subId);
-}
\ No newline at end of file
+
+  /** Assinatura aberta mais recente para customer+price+status (ix_sub_customer_price_status). */
+  Optional<SubscriptionRecord> findFirstByCustomerIdAndPriceIdAndStatusAndCreatedAtAfterOrderByCreatedAtDesc(
+      UUID customerId, String priceId, SubscriptionsStatus status, OffsetDateTime createdAfter);
+
+  /** Assinaturas do usuário (uk_customer_user + ix_sub_customer_price_status). */
+  @Query(SUMMARY + " where c.userId = :userId order by s.createdAt desc")
+  List<SubscriptionSummary> findSummariesByUserId(UUID userId);
+
+  /** Só as vivas (ACTIVE/TRIALING/PAST_DUE) do usuário (ix_sub_live_customer). */
+  @Query(SUMMARY + """
+       where c.userId = :userId
+         and s.status in (br.ars.payment_service.domain.SubscriptionsStatus.ACTIVE,
+                          br.ars.payment_service.domain.SubscriptionsStatus.TRIALING,
+                          br.ars.payment_service.domain.SubscriptionsStatus.PAST_DUE)
+       order by s.createdAt desc
+      """)
+  List<SubscriptionSummary> findLiveSummariesByUserId(UUID userId);
+
+  /** Por status, mais antigas primeiro (ix_sub_status_created). */
+  @Query(SUMMARY + " where s.status = :status order by s.createdAt")
+  List<SubscriptionSummary> findSummariesByStatus(SubscriptionsStatus status, Pageable page);
+
+  /** Vivas com fim de período em [from, to) (ix_sub_live_period_end). */
+  @Query(SUMMARY + """
+       where s.status in (br.ars.payment_service.domain.SubscriptionsStatus.ACTIVE,
+                          br.ars.payment_service.domain.SubscriptionsStatus.TRIALING,
+                          br.ars.payment_service.domain.SubscriptionsStatus.PAST_DUE)
+         and s.currentPeriodEnd >= :from and s.currentPeriodEnd < :to
+       order by s.currentPeriodEnd
+      """)
+  List<SubscriptionSummary> findLiveEndingBetween(OffsetDateTime from, OffsetDateTime to, Pageable page);
+
+  /** Entidades com customer já carregado, para quem precisa navegar o grafo. */
+  @Query("select s from SubscriptionRecord s join fetch s.customer c where c.userId = :userId order by s.createdAt desc")
+  List<SubscriptionRecord> findAllWithCustomerByUserId(UUID userId);
+}
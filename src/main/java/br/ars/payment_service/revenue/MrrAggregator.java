@@ -0,0 +1,404 @@
+package br.ars.payment_service.revenue;
+
+import br.ars.payment_service.catalog.CatalogPrice;
+import br.ars.payment_service.catalog.PriceCatalog;
+import br.ars.payment_service.domain.SubscriptionsStatus;
+import br.ars.payment_service.dto.MrrResponse;
+import br.ars.payment_service.service.SubscriptionChangedEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import java.sql.Date;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MRR, assinantes por plano e churn mantidos incrementalmente a partir dos SubscriptionChangedEvent
+ * (applyWebhookUpdate, recordSubscription, expiração). Cada evento traz o estado anterior e o novo,
+ * então custa O(1): tira a contribuição antiga e soma a nova em LongAdders por price.
+ *
+ * Os adders guardam só o delta local ainda não gravado. A cada flush o delta vai somado (não
+ * sobrescrito) para mrr_rollup / mrr_movement, então várias réplicas alimentam o mesmo total; em
+ * seguida os totais globais são relidos (poucas linhas, uma por plano/dia). Valor exposto = total
+ * lido + delta local pendente. O MRR é contagem × valor mensal do price no catálogo.
+ *
+ * Deltas de um processo que morrer sem flush se perdem; o replay (que escreve direto no banco) também
+ * não passa por aqui. Para esses casos, rebuild() recalcula as contagens a partir de subscription_record
+ * e incrementa a geração do rollup (mrr_rollup_generation). Réplicas que ainda têm delta da geração
+ * anterior o descartam no próximo flush, porque a recontagem já o inclui; o custo é perder as mudanças
+ * dessas réplicas entre o rebuild e o flush seguinte (no máximo app.mrr.flush-ms).
+ */
+@Service
+public class MrrAggregator {
+  private static final Logger log = LoggerFactory.getLogger(MrrAggregator.class);
+
+  static final String NO_PRICE = "none";
+  private static final String LOCK_KEY = "mrr_rollup";
+
+  static final String UPSERT_ROLLUP_SQL = """
+      INSERT INTO mrr_rollup (price_id, paying, trialing, updated_at) VALUES (?, ?, ?, now())
+      ON CONFLICT (price_id) DO UPDATE SET paying = mrr_rollup.paying + EXCLUDED.paying,
+                                           trialing = mrr_rollup.trialing + EXCLUDED.trialing,
+                                           updated_at = now()
+      """;
+
+  static final String UPSERT_MOVEMENT_SQL = """
+      INSERT INTO mrr_movement (day, price_id, started, churned) VALUES (?, ?, ?, ?)
+      ON CONFLICT (day, price_id) DO UPDATE SET started = mrr_movement.started + EXCLUDED.started,
+                                                churned = mrr_movement.churned + EXCLUDED.churned
+      """;
+
+  /** Usa o índice parcial ix_sub_live_price_id (só assinaturas vivas). */
+  static final String SEED_SQL = """
+      INSERT INTO mrr_rollup (price_id, paying, trialing, updated_at)
+      SELECT coalesce(price_id, 'none'),
+             count(*) FILTER (WHERE status IN ('ACTIVE', 'PAST_DUE')),
+             count(*) FILTER (WHERE status = 'TRIALING'),
+             now()
+        FROM subscription_record
+       WHERE status IN ('ACTIVE', 'TRIALING', 'PAST_DUE')
+       GROUP BY 1
+      """;
+
+  /** Contadores de um price: delta local pendente + último total global lido. */
+  static final class Plan {
+    final String priceId;
+    final LongAdder paying = new LongAdder();
+    final LongAdder trialing = new LongAdder();
+    final LongAdder started = new LongAdder();
+    final LongAdder churned = new LongAdder();
+    volatile long basePaying;
+    volatile long baseTrialing;
+    volatile long baseStarted;
+    volatile long baseChurned;
+
+    Plan(String priceId) {
+      this.priceId = priceId;
+    }
+
+    long paying() { return basePaying + paying.sum(); }
+    long trialing() { return baseTrialing + trialing.sum(); }
+    long started() { return baseStarted + started.sum(); }
+    long churned() { return baseChurned + churned.sum(); }
+  }
+
+  private record Delta(String priceId, long paying, long trialing, long started, long churned) {
+    boolean state() { return paying != 0 || trialing != 0; }
+    boolean movement() { return started != 0 || churned != 0; }
+  }
+
+  private final JdbcTemplate jdbc;
+  private final TransactionTemplate tx;
+  private final PriceCatalog catalog;
+  private final MeterRegistry meters;
+  private final Map<String, Plan> plans = new ConcurrentHashMap<>();
+  private final Set<String> currencies = ConcurrentHashMap.newKeySet();
+
+  @Value("${app.mrr.enabled:true}")
+  private boolean enabled;
+
+  @Value("${app.mrr.churn-window-days:30}")
+  private int churnWindowDays;
+
+  @Value("${app.replay.file:}")
+  private String replayFile;
+
+  private volatile Instant loadedAt;
+  /** Geração do rollup a que o delta local pendente pertence (só avança). */
+  private final AtomicLong generation = new AtomicLong();
+
+  public MrrAggregator(JdbcTemplate jdbc, PlatformTransactionManager txManager, PriceCatalog catalog, MeterRegistry meters) {
+    this.jdbc = jdbc;
+    this.tx = new TransactionTemplate(txManager);
+    this.catalog = catalog;
+    this.meters = meters;
+  }
+
+  /* ---------------- eventos (O(1)) ---------------- */
+
+  /** Só depois do commit: mudança revertida não conta. */
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onChange(SubscriptionChangedEvent e) {
+    if (!enabled) return;
+    final SubscriptionsStatus from = e.oldStatus();
+    final SubscriptionsStatus to = e.newStatus();
+    final Plan oldPlan = from != null ? plan(e.oldPriceId()) : null;
+    final Plan newPlan = plan(e.priceId());
+
+    if (oldPlan != null) {
+      if (paying(from)) oldPlan.paying.decrement();
+      else if (from == SubscriptionsStatus.TRIALING) oldPlan.trialing.decrement();
+    }
+    if (paying(to)) newPlan.paying.increment();
+    else if (to == SubscriptionsStatus.TRIALING) newPlan.trialing.increment();
+
+    // troca de plano entre estados pagantes não é entrada nem churn
+    if (!paying(from) && paying(to)) newPlan.started.increment();
+    if (paying(from) && churnedStatus(to)) oldPlan.churned.increment();
+  }
+
+  static boolean paying(SubscriptionsStatus s) {
+    return s == SubscriptionsStatus.ACTIVE || s == SubscriptionsStatus.PAST_DUE;
+  }
+
+  static boolean churnedStatus(SubscriptionsStatus s) {
+    return s == SubscriptionsStatus.CANCELED || s == SubscriptionsStatus.UNPAID
+        || s == SubscriptionsStatus.INCOMPLETE_EXPIRED;
+  }
+
+  private Plan plan(String priceId) {
+    final String id = StringUtils.hasText(priceId) ? priceId : NO_PRICE;
+    final Plan p = plans.get(id);
+    return p != null ? p : plans.computeIfAbsent(id, this::register);
+  }
+
+  private Plan register(String priceId) {
+    final Plan p = new Plan(priceId);
+    Gauge.builder("app.subscriptions.paying", p, Plan::paying).tag("price", priceId).register(meters);
+    Gauge.builder("app.subscriptions.trialing", p, Plan::trialing).tag("price", priceId).register(meters);
+    Gauge.builder("app.subscriptions.churned.window", p, Plan::churned).tag("price", priceId).register(meters);
+    Gauge.builder("app.mrr.plan", p, x -> {
+      final Double m = monthlyAmount(catalog.price(x.priceId).orElse(null));
+      return m != null ? x.paying() * m : Double.NaN;
+    }).tag("price", priceId).baseUnit("cents").register(meters);
+    return p;
+  }
+
+  private void registerCurrency(String currency) {
+    if (currency == null || !currencies.add(currency)) return;
+    Gauge.builder("app.mrr", this, a -> a.totalMrr(currency)).tag("currency", currency).baseUnit("cents").register(meters);
+  }
+
+  private double totalMrr(String currency) {
+    double sum = 0;
+    for (Plan p : plans.values()) {
+      final CatalogPrice price = catalog.price(p.priceId).orElse(null);
+      final Double m = monthlyAmount(price);
+      if (m != null && currency.equals(price.currency())) sum += p.paying() * m;
+    }
+    return sum;
+  }
+
+  /** Valor mensal equivalente do price (centavos); null se não for recorrente ou não tiver valor. */
+  static Double monthlyAmount(CatalogPrice p) {
+    if (p == null || p.unitAmount() == null || !p.recurring()) return null;
+    final double n = Math.max(1, p.intervalCount());
+    return switch (p.interval().toLowerCase(Locale.ROOT)) {
+      case "day" -> p.unitAmount() * 365.0 / 12.0 / n;
+      case "week" -> p.unitAmount() * 52.0 / 12.0 / n;
+      case "month" -> p.unitAmount() / n;
+      case "year" -> p.unitAmount() / 12.0 / n;
+      default -> null;
+    };
+  }
+
+  /* ---------------- rollup ---------------- */
+
+  /** Primeira subida com rollup vazio: semeia a partir de subscription_record (uma vez). */
+  @EventListener(ApplicationReadyEvent.class)
+  public void init() {
+    if (!enabled || StringUtils.hasText(replayFile)) return;
+    try {
+      tx.executeWithoutResult(s -> {
+        jdbc.queryForObject("SELECT pg_advisory_xact_lock(hashtextextended(?, 0))", Object.class, LOCK_KEY);
+        final Boolean empty = jdbc.queryForObject("SELECT NOT EXISTS (SELECT 1 FROM mrr_rollup)", Boolean.class);
+        if (Boolean.TRUE.equals(empty)) {
+          final int rows = jdbc.update(SEED_SQL);
+          log.info("[MRR] rollup semeado a partir de subscription_record ({} planos)", rows);
+        }
+        generation.accumulateAndGet(currentGeneration(), Math::max);
+      });
+      reload();
+    } catch (Exception e) {
+      log.warn("[MRR] init falhou: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Soma o delta local no rollup (mesma transação para estado e movimento) e relê os totais. Se houve
+   * rebuild desde o último flush, o delta de estado pendente é de antes da recontagem e é descartado.
+   */
+  @Scheduled(initialDelayString = "${app.mrr.flush-ms:30000}", fixedDelayString = "${app.mrr.flush-ms:30000}")
+  public void flush() {
+    if (!enabled || StringUtils.hasText(replayFile)) return;
+    final long drainedGeneration = generation.get();
+    final List<Delta> deltas = drain();
+    // movimentos contam no dia do flush (atraso máximo = app.mrr.flush-ms)
+    final Date today = Date.valueOf(LocalDate.now(ZoneOffset.UTC));
+    final long seen;
+    try {
+      seen = tx.execute(s -> {
+        jdbc.queryForObject("SELECT pg_advisory_xact_lock_shared(hashtextextended(?, 0))", Object.class, LOCK_KEY);
+        final long current = currentGeneration();
+        final boolean stale = current != drainedGeneration;
+        final List<Object[]> state = new ArrayList<>();
+        final List<Object[]> movement = new ArrayList<>();
+        for (Delta d : deltas) {
+          if (d.state() && !stale) state.add(new Object[]{d.priceId(), d.paying(), d.trialing()});
+          if (d.movement()) movement.add(new Object[]{today, d.priceId(), d.started(), d.churned()});
+        }
+        if (stale && deltas.stream().anyMatch(Delta::state)) {
+          log.warn("[MRR] rollup recalculado (geração {} -> {}); delta de estado pendente descartado: {}",
+              drainedGeneration, current, deltas.stream().filter(Delta::state).toList());
+        }
+        if (!state.isEmpty()) jdbc.batchUpdate(UPSERT_ROLLUP_SQL, state);
+        if (!movement.isEmpty()) jdbc.batchUpdate(UPSERT_MOVEMENT_SQL, movement);
+        return current;
+      });
+    } catch (Exception e) {
+      restore(deltas);
+      log.warn("[MRR] flush falhou; delta mantido em memória: {}", e.getMessage());
+      return;
+    }
+    generation.accumulateAndGet(seen, Math::max);
+    try {
+      reload();
+    } catch (Exception e) {
+      log.debug("[MRR] reload falhou: {}", e.getMessage());
+    }
+  }
+
+  @PreDestroy
+  void shutdown() {
+    flush();
+  }
+
+  /**
+   * Recalcula as contagens atuais a partir de subscription_record (reparo após perda de delta ou
+   * replay). O histórico de movimentos não é recalculado. A geração nova faz as outras réplicas
+   * descartarem, no próximo flush, o delta de estado que a recontagem já inclui.
+   */
+  public MrrResponse rebuild() {
+    final long[] done = tx.execute(s -> {
+      jdbc.queryForObject("SELECT pg_advisory_xact_lock(hashtextextended(?, 0))", Object.class, LOCK_KEY);
+      jdbc.update("DELETE FROM mrr_rollup");
+      final int n = jdbc.update(SEED_SQL);
+      final Long next = jdbc.queryForObject(
+          "UPDATE mrr_rollup_generation SET generation = generation + 1 WHERE id = 1 RETURNING generation", Long.class);
+      // o que este processo tinha pendente já está refletido na contagem
+      for (Plan p : plans.values()) {
+        p.paying.sumThenReset();
+        p.trialing.sumThenReset();
+      }
+      return new long[]{n, next != null ? next : 0};
+    });
+    generation.accumulateAndGet(done[1], Math::max);
+    log.info("[MRR] rollup recalculado ({} planos, geração {})", done[0], done[1]);
+    reload();
+    return snapshot();
+  }
+
+  private long currentGeneration() {
+    final Long g = jdbc.queryForObject("SELECT generation FROM mrr_rollup_generation WHERE id = 1", Long.class);
+    return g != null ? g : 0;
+  }
+
+  private List<Delta> drain() {
+    final List<Delta> out = new ArrayList<>();
+    for (Plan p : plans.values()) {
+      final Delta d = new Delta(p.priceId, p.paying.sumThenReset(), p.trialing.sumThenReset(),
+          p.started.sumThenReset(), p.churned.sumThenReset());
+      if (d.state() || d.movement()) out.add(d);
+    }
+    return out;
+  }
+
+  private void restore(List<Delta> deltas) {
+    for (Delta d : deltas) {
+      final Plan p = plan(d.priceId());
+      p.paying.add(d.paying());
+      p.trialing.add(d.trialing());
+      p.started.add(d.started());
+      p.churned.add(d.churned());
+    }
+  }
+
+  private void reload() {
+    final Map<String, long[]> state = new HashMap<>();
+    jdbc.query("SELECT price_id, paying, trialing FROM mrr_rollup",
+        rs -> { state.put(rs.getString(1), new long[]{rs.getLong(2), rs.getLong(3)}); });
+    final Map<String, long[]> moves = new HashMap<>();
+    jdbc.query("""
+        SELECT price_id, sum(started), sum(churned) FROM mrr_movement
+         WHERE day > ? GROUP BY price_id
+        """,
+        rs -> { moves.put(rs.getString(1), new long[]{rs.getLong(2), rs.getLong(3)}); },
+        Date.valueOf(LocalDate.now(ZoneOffset.UTC).minusDays(churnWindowDays)));
+
+    state.keySet().forEach(this::plan);
+    moves.keySet().forEach(this::plan);
+    for (Plan p : plans.values()) {
+      final long[] st = state.getOrDefault(p.priceId, new long[2]);
+      final long[] mv = moves.getOrDefault(p.priceId, new long[2]);
+      p.basePaying = st[0];
+      p.baseTrialing = st[1];
+      p.baseStarted = mv[0];
+      p.baseChurned = mv[1];
+      catalog.price(p.priceId).ifPresent(c -> registerCurrency(c.currency()));
+    }
+    loadedAt = Instant.now();
+  }
+
+  /* ---------------- leitura ---------------- */
+
+  /** false até a primeira leitura do rollup (antes disso só haveria o delta local). */
+  public boolean loaded() {
+    return loadedAt != null;
+  }
+
+  public MrrResponse snapshot() {
+    final List<MrrResponse.Plan> out = new ArrayList<>();
+    final Map<String, long[]> byCurrency = new TreeMap<>();
+    for (Plan p : plans.values()) {
+      final CatalogPrice price = catalog.price(p.priceId).orElse(null);
+      final Double monthly = monthlyAmount(price);
+      final long paying = p.paying();
+      final Long mrr = monthly != null ? Math.round(paying * monthly) : null;
+      out.add(new MrrResponse.Plan(p.priceId,
+          price != null ? price.productId() : null,
+          price != null ? price.nickname() : null,
+          price != null ? price.currency() : null,
+          monthly, paying, p.trialing(), mrr, p.started(), p.churned()));
+      if (mrr != null) {
+        final long[] t = byCurrency.computeIfAbsent(price.currency(), c -> new long[5]);
+        t[0] += mrr;
+        t[1] += paying;
+        t[2] += p.trialing();
+        t[3] += p.started();
+        t[4] += p.churned();
+      }
+    }
+    out.sort(Comparator.comparing(MrrResponse.Plan::priceId));
+    final List<MrrResponse.Total> totals = new ArrayList<>();
+    byCurrency.forEach((cur, t) -> {
+      final long atStart = t[1] - t[3] + t[4];
+      totals.add(new MrrResponse.Total(cur, t[0], t[1], t[2], t[3], t[4], atStart > 0 ? (double) t[4] / atStart : null));
+    });
+    return new MrrResponse(loadedAt, churnWindowDays, out, totals);
+  }
+}
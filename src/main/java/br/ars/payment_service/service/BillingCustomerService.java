@@ -1,5 +1,9 @@
 package br.ars.payment_service.service;
 
+import br.ars.payment_service.jfr.CustomerResolveEvent;
+import br.ars.payment_service.jfr.StripeCallEvent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.stripe.exception.StripeException;
 import com.stripe.model.Customer;
 import com.stripe.model.CustomerSearchResult;
@@ -7,64 +11,251 @@ import com.stripe.net.RequestOptions;
 import com.stripe.param.CustomerCreateParams;
 import com.stripe.param.CustomerSearchParams;
 import com.stripe.param.CustomerUpdateParams;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 
 import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Resolve o Customer da Stripe de um usuário: cache local → billing_customer → Stripe (search/create).
+ *
+ * A ida à Stripe é coordenada entre réplicas por um claim por userId (billing_customer_claim): só quem
+ * toma o claim faz search/create e grava billing_customer; os demais não chamam a Stripe, esperam a
+ * linha do vencedor aparecer. Claim e gravação são transações curtas; a chamada à Stripe roda fora
+ * de qualquer transação, sem prender conexão. Se o vencedor morrer, o claim vence (claim-ttl-ms) e o
+ * próximo assume.
+ *
+ * Memória limitada: o cache local tem tamanho máximo e o monitor por usuário só existe enquanto
+ * alguma thread o segura (weakValues) — duas threads do mesmo usuário sempre recebem o mesmo objeto.
+ */
 @Service
 public class BillingCustomerService {
   private static final Logger log = LoggerFactory.getLogger(BillingCustomerService.class);
   private static final String MD_USER_ID = "userId";
 
-  private final Map<String, String> cache = new ConcurrentHashMap<>();
-  private final Map<String, Object> locks = new ConcurrentHashMap<>();
+  private final Cache<String, String> cache;
+  private final Cache<String, Object> locks = Caffeine.newBuilder().weakValues().build();
+
+  private final JdbcTemplate jdbc;
+  private final TransactionTemplate tx;
+  private final MeterRegistry meters;
+
+  /** Quanto um nó espera pelo vencedor antes de seguir sozinho (idempotency key ainda evita duplicata). */
+  @Value("${app.billing.customer.wait-ms:10000}")
+  private long waitMs;
+
+  /** Validade do claim: maior que o pior caso de search + create na Stripe. */
+  @Value("${app.billing.customer.claim-ttl-ms:30000}")
+  private long claimTtlMs;
+
+  public BillingCustomerService(JdbcTemplate jdbc, PlatformTransactionManager txManager, MeterRegistry meters,
+                                @Value("${app.billing.customer.cache-size:100000}") long cacheSize) {
+    this.cache = Caffeine.newBuilder().maximumSize(cacheSize).build();
+    this.jdbc = jdbc;
+    this.tx = new TransactionTemplate(txManager);
+    this.tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    this.meters = meters;
+  }
 
   public String findOrCreateCustomer(String userId, String email) throws StripeException {
     if (!StringUtils.hasText(userId)) throw new IllegalArgumentException("userId obrigatório");
 
-    String cached = cache.get(userId);
-    if (cached != null) return cached;
+    final CustomerResolveEvent jfr = new CustomerResolveEvent();
+    jfr.begin();
+    jfr.userId = userId;
+    try {
+      return resolve(userId, email, jfr);
+    } catch (StripeException | RuntimeException e) {
+      jfr.outcome = e.getClass().getSimpleName();
+      throw e;
+    } finally {
+      jfr.commit();
+    }
+  }
 
-    final Object lock = locks.computeIfAbsent(userId, k -> new Object());
+  private String resolve(String userId, String email, CustomerResolveEvent jfr) throws StripeException {
+    String cached = cache.getIfPresent(userId);
+    if (cached != null) return resolved(jfr, "cache", cached);
+
+    final Object lock = locks.get(userId, k -> new Object());
+    final long lockT0 = System.nanoTime();
     synchronized (lock) {
-      cached = cache.get(userId);
-      if (cached != null) return cached;
+      jfr.lockWait = System.nanoTime() - lockT0;
+      cached = cache.getIfPresent(userId);
+      if (cached != null) return resolved(jfr, "cache", cached);
 
-      // 1) tenta encontrar por metadata
-      Customer existing = findCustomerByMetadata(userId);
+      final UUID userUuid = parseUuid(userId);
+      if (userUuid == null) {
+        // sem linha possível em billing_customer (user_id é UUID): só a deduplicação local
+        final String id = resolveOnStripe(userId, email);
+        cache.put(userId, id);
+        return resolved(jfr, "stripe", id);
+      }
 
-      // 2) fallback por e-mail (se informado)
-      if (existing == null && StringUtils.hasText(email)) {
-        existing = findBestCustomerByEmail(email);
+      final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMs);
+      long backoffMs = 25;
+      boolean waited = false;
+      while (true) {
+        final String stored = storedCustomerId(userUuid);
+        if (stored != null) {
+          cache.put(userId, stored);
+          return resolved(jfr, waited ? "waited" : "db", stored);
+        }
+        final String id = resolveClaimed(userId, userUuid, email);
+        if (id != null) {
+          cache.put(userId, id);
+          return resolved(jfr, "stripe", id);
+        }
+        // outro nó está resolvendo este usuário: espera a linha dele, sem chamar a Stripe
+        waited = true;
+        if (System.nanoTime() > deadline) {
+          log.warn("[BILL][CUSTOMER] timeout esperando outro nó userId={}; resolvendo sem lock", userId);
+          final String fallback = resolveOnStripe(userId, email);
+          cache.put(userId, fallback);
+          return resolved(jfr, "stripe", fallback);
+        }
+        final long waitT0 = System.nanoTime();
+        sleep(backoffMs);
+        jfr.peerWait += System.nanoTime() - waitT0;
+        backoffMs = Math.min(backoffMs * 2, 500);
       }
+    }
+  }
+
+  /**
+   * Com o claim do usuário: revalida billing_customer, resolve na Stripe (fora de transação) e grava a
+   * linha. null = claim com outro nó.
+   */
+  private String resolveClaimed(String userId, UUID userUuid, String email) throws StripeException {
+    final String owner = UUID.randomUUID().toString();
+    if (!claim(userUuid, owner)) return null;
+    try {
+      final String stored = storedCustomerId(userUuid);
+      if (stored != null) return stored;
+      return store(userId, userUuid, email, resolveOnStripe(userId, email));
+    } finally {
+      tx.executeWithoutResult(s -> jdbc.update(
+          "DELETE FROM billing_customer_claim WHERE user_id = ? AND owner = ?", userUuid, owner));
+    }
+  }
+
+  /** Toma o claim se estiver livre ou vencido (transação própria, commit imediato). */
+  private boolean claim(UUID userUuid, String owner) {
+    final List<String> got = tx.execute(s -> jdbc.queryForList("""
+        INSERT INTO billing_customer_claim(user_id, owner, claimed_until)
+        VALUES (?, ?, now() + make_interval(secs => ?))
+        ON CONFLICT (user_id) DO UPDATE SET owner = EXCLUDED.owner, claimed_until = EXCLUDED.claimed_until
+          WHERE billing_customer_claim.claimed_until < now()
+        RETURNING owner
+        """, String.class, userUuid, owner, claimTtlMs / 1000.0));
+    return got != null && !got.isEmpty();
+  }
+
+  /**
+   * Grava billing_customer. Conflito em uk_customer_user: outra gravação chegou antes e vale a linha dela.
+   * Conflito em uk_customer_stripe: o customer da Stripe já está vinculado a outro usuário; não há
+   * linha possível para este, então falha alto em vez de devolver um id sem registro.
+   */
+  private String store(String userId, UUID userUuid, String email, String customerId) {
+    return tx.execute(s -> {
+      final int inserted = jdbc.update("""
+          INSERT INTO billing_customer(id, user_id, email, stripe_customer_id, created_at, updated_at)
+          VALUES (?, ?, ?, ?, now(), now())
+          ON CONFLICT DO NOTHING
+          """, UUID.randomUUID(), userUuid, StringUtils.hasText(email) ? email : "", customerId);
+      if (inserted == 1) return customerId;
 
-      if (existing != null) {
-        ensureMetadata(existing, userId);
-        cache.put(userId, existing.getId());
-        log.info("[BILL][CUSTOMER] FOUND userId={} -> stripeCustomerId={}", userId, existing.getId());
-        return existing.getId();
+      final String stored = storedCustomerId(userUuid);
+      if (stored != null) {
+        if (!stored.equals(customerId)) {
+          log.warn("[BILL][CUSTOMER] userId={} já gravado com stripeCustomerId={}; descartando {}",
+              userId, stored, customerId);
+        }
+        return stored;
       }
+      final List<UUID> owners = jdbc.queryForList(
+          "SELECT user_id FROM billing_customer WHERE stripe_customer_id = ?", UUID.class, customerId);
+      meters.counter("app.billing.customer.conflict").increment();
+      log.error("[BILL][CUSTOMER][CONFLICT] stripeCustomerId={} já vinculado a userId={}; userId={} sem billing_customer",
+          customerId, owners, userId);
+      throw new IllegalStateException("customer " + customerId + " da Stripe já vinculado a outro usuário");
+    });
+  }
 
-      // 3) cria com idempotência por usuário
-      RequestOptions ro = RequestOptions.builder()
-          .setIdempotencyKey("customer-" + userId)
-          .build();
+  private String storedCustomerId(UUID userUuid) {
+    final List<String> ids = jdbc.queryForList("SELECT stripe_customer_id FROM billing_customer WHERE user_id = ?",
+        String.class, userUuid);
+    return ids.isEmpty() ? null : ids.get(0);
+  }
 
-      CustomerCreateParams.Builder cb = CustomerCreateParams.builder()
-          .putMetadata(MD_USER_ID, userId);
-      if (StringUtils.hasText(email)) cb.setEmail(email);
+  /** Busca por metadata, depois por e-mail; cria se não achar. */
+  private String resolveOnStripe(String userId, String email) throws StripeException {
+    // 1) tenta encontrar por metadata
+    Customer existing = findCustomerByMetadata(userId);
 
-      Customer created = Customer.create(cb.build(), ro);
-      cache.put(userId, created.getId());
-      log.info("[BILL][CUSTOMER] CREATED userId={} -> stripeCustomerId={}", userId, created.getId());
-      return created.getId();
+    // 2) fallback por e-mail (se informado)
+    if (existing == null && StringUtils.hasText(email)) {
+      existing = findBestCustomerByEmail(email, userId);
+    }
+
+    if (existing != null) {
+      ensureMetadata(existing, userId);
+      log.info("[BILL][CUSTOMER] FOUND userId={} -> stripeCustomerId={}", userId, existing.getId());
+      return existing.getId();
+    }
+
+    // 3) cria com idempotência por usuário
+    RequestOptions ro = RequestOptions.builder()
+        .setIdempotencyKey("customer-" + userId)
+        .build();
+
+    CustomerCreateParams.Builder cb = CustomerCreateParams.builder()
+        .putMetadata(MD_USER_ID, userId);
+    if (StringUtils.hasText(email)) cb.setEmail(email);
+
+    Customer created = StripeCallEvent.record("customer.create", false, null, () -> Customer.create(cb.build(), ro));
+    log.info("[BILL][CUSTOMER] CREATED userId={} -> stripeCustomerId={}", userId, created.getId());
+    return created.getId();
+  }
+
+  private String resolved(CustomerResolveEvent jfr, String path, String customerId) {
+    meters.counter("app.billing.customer.resolve", "path", path).increment();
+    jfr.path = path;
+    jfr.cacheHit = "cache".equals(path);
+    jfr.customerId = customerId;
+    jfr.outcome = "ok";
+    return customerId;
+  }
+
+  private static UUID parseUuid(String s) {
+    try {
+      return UUID.fromString(s);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static void sleep(long ms) {
+    try {
+      TimeUnit.MILLISECONDS.sleep(ms);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrompido esperando customer");
     }
   }
 
@@ -73,7 +264,7 @@ public class BillingCustomerService {
         .setQuery("metadata['" + MD_USER_ID + "']:'" + escape(userId) + "'")
         .setLimit(20L)
         .build();
-    CustomerSearchResult res = Customer.search(params);
+    CustomerSearchResult res = StripeCallEvent.record("customer.search", false, null, () -> Customer.search(params));
     if (res == null || res.getData().isEmpty()) return null;
 
     // pega o mais recente (ou ajuste seu critério aqui)
@@ -82,20 +273,23 @@ public class BillingCustomerService {
         .orElse(res.getData().get(0));
   }
 
-  private Customer findBestCustomerByEmail(String email) throws StripeException {
+  /** Candidatos com metadata userId de outro usuário ficam de fora (e-mail compartilhado não é posse). */
+  private Customer findBestCustomerByEmail(String email, String userId) throws StripeException {
     CustomerSearchParams params = CustomerSearchParams.builder()
         // REMOVIDO: "AND -deleted:'true'" (campo não suportado)
         .setQuery("email:'" + escape(email) + "'")
         .setLimit(20L)
         .build();
-    CustomerSearchResult res = Customer.search(params);
+    CustomerSearchResult res = StripeCallEvent.record("customer.search", true, null, () -> Customer.search(params));
     if (res == null || res.getData().isEmpty()) return null;
 
-    // prefere quem já tem metadata userId; senão, o mais recente
+    // prefere quem já tem metadata userId (deste usuário); senão, o mais recente
     return res.getData().stream()
+        .filter(c -> c.getMetadata() == null || !c.getMetadata().containsKey(MD_USER_ID)
+            || userId.equals(c.getMetadata().get(MD_USER_ID)))
         .max(Comparator.<Customer>comparingInt(c -> c.getMetadata() != null && c.getMetadata().containsKey(MD_USER_ID) ? 1 : 0)
             .thenComparing(Customer::getCreated))
-        .orElse(res.getData().get(0));
+        .orElse(null);
   }
 
   private void ensureMetadata(Customer c, String userId) throws StripeException {
@@ -106,7 +300,7 @@ public class BillingCustomerService {
     CustomerUpdateParams update = CustomerUpdateParams.builder()
         .putMetadata(MD_USER_ID, userId)
         .build();
-    c.update(update);
+    StripeCallEvent.record("customer.update", false, c.getId(), () -> c.update(update));
     log.info("[BILL][CUSTOMER] UPDATED metadata userId for customerId={} ({} -> {})", c.getId(), current, userId);
   }
 
@@ -116,5 +310,5 @@ public class BillingCustomerService {
     return s.replace("\\", "\\\\").replace("'", "\\'");
   }
 
-  public void evictCache(String userId) { cache.remove(userId); }
+  public void evictCache(String userId) { cache.invalidate(userId); }
 }
@@ -1,18 +1,31 @@
 package br.ars.payment_service.service;
 
+import br.ars.payment_service.audit.AuditJournal;
+import br.ars.payment_service.audit.AuditingHttpClient;
+import br.ars.payment_service.catalog.PriceCatalog;
+import br.ars.payment_service.config.ReplicaLagGuard;
+import br.ars.payment_service.domain.BillingCustomer;
+import br.ars.payment_service.domain.SubscriptionRecord;
+import br.ars.payment_service.domain.SubscriptionsStatus;
+import br.ars.payment_service.dto.EphemeralKeyRequest;
+import br.ars.payment_service.dto.EphemeralKeyResponse;
 import br.ars.payment_service.dto.SubscribeRequest;
 import br.ars.payment_service.dto.SubscribeResponse;
 import br.ars.payment_service.dto.SubscriptionBackendStatus;
 import br.ars.payment_service.dto.SubscriptionStatusResponse;
+import br.ars.payment_service.jfr.StripeCallEvent;
+import br.ars.payment_service.jfr.SubscribeEvent;
 import com.stripe.Stripe;
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.IdempotencyException;
 import com.stripe.exception.StripeException;
-import com.stripe.model.EphemeralKey;
 import com.stripe.model.Invoice;
 import com.stripe.model.PaymentIntent;
+import com.stripe.model.Price;
 import com.stripe.model.SetupIntent;
 import com.stripe.model.Subscription;
+import com.stripe.model.SubscriptionItem;
 import com.stripe.net.RequestOptions;
-import com.stripe.param.EphemeralKeyCreateParams;
 import com.stripe.param.InvoiceRetrieveParams;
 import com.stripe.param.PaymentIntentConfirmParams;
 import com.stripe.param.SubscriptionCreateParams;
@@ -20,6 +33,13 @@ import com.stripe.param.SubscriptionRetrieveParams;
 import com.stripe.param.SubscriptionUpdateParams;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import br.ars.payment_service.repo.BillingCustomerRepository;
+import br.ars.payment_service.repo.SubscriptionRecordRepository;
+import java.io.IOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.net.URI;
@@ -30,11 +50,25 @@ import java.net.http.HttpResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 
 import java.lang.reflect.Method;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 
 @Service
 public class BillingService {
@@ -59,6 +93,17 @@ public class BillingService {
   private String httpApiVersion;
 
   private final BillingCustomerService billingCustomerService;
+  private final BillingCustomerRepository customerRepo;
+  private final SubscriptionRecordRepository subscriptionRepo;
+  private final EphemeralKeyCache ephemeralKeys;
+  private final SubscribeOutbox outbox;
+  private final TransactionTemplate tx;
+  private final MeterRegistry meters;
+  private final ChangeFeedService changeFeed;
+  private final ApplicationEventPublisher events;
+  private final PriceCatalog catalog;
+  private final ReplicaLagGuard replicaGuard;
+  private final AuditJournal audit;
 
   private final HttpClient http = HttpClient.newBuilder()
       .version(HttpClient.Version.HTTP_2)
@@ -66,19 +111,91 @@ public class BillingService {
 
   private final ObjectMapper json = new ObjectMapper();
 
-  public BillingService(BillingCustomerService billingCustomerService) {
+  /**
+   * Janela em que uma assinatura INCOMPLETE ainda pode ser reaproveitada: carência do job de expiração
+   * menos a margem de segurança, para não devolver ao app uma assinatura que o job está para expirar.
+   */
+  private final Duration reuseWindow;
+
+  /** client_secrets das assinaturas INCOMPLETE abertas (reuso sem ida à Stripe). */
+  private final Cache<String, IntentSecrets> intentSecrets;
+
+  private record IntentSecrets(String subscriptionId, String paymentIntent, String setupIntent) {}
+
+  public BillingService(BillingCustomerService billingCustomerService,
+                        BillingCustomerRepository customerRepo,
+                        SubscriptionRecordRepository subscriptionRepo,
+                        EphemeralKeyCache ephemeralKeys,
+                        SubscribeOutbox outbox,
+                        PlatformTransactionManager txManager,
+                        MeterRegistry meters,
+                        ChangeFeedService changeFeed,
+                        ApplicationEventPublisher events,
+                        PriceCatalog catalog,
+                        ReplicaLagGuard replicaGuard,
+                        AuditJournal audit,
+                        @Value("${app.grace-period-hours:2}") long gracePeriodHours,
+                        @Value("${app.billing.reuse-safety-margin-minutes:30}") long reuseSafetyMarginMinutes) {
     this.billingCustomerService = billingCustomerService;
+    this.customerRepo = customerRepo;
+    this.subscriptionRepo = subscriptionRepo;
+    this.ephemeralKeys = ephemeralKeys;
+    this.outbox = outbox;
+    this.tx = new TransactionTemplate(txManager);
+    this.meters = meters;
+    this.changeFeed = changeFeed;
+    this.events = events;
+    this.catalog = catalog;
+    this.replicaGuard = replicaGuard;
+    this.audit = audit;
+    final Duration window = Duration.ofHours(gracePeriodHours).minusMinutes(reuseSafetyMarginMinutes);
+    this.reuseWindow = window.isNegative() ? Duration.ZERO : window;
+    this.intentSecrets = Caffeine.newBuilder()
+        .maximumSize(100_000)
+        .expireAfterWrite(reuseWindow.isZero() ? Duration.ofMinutes(1) : reuseWindow)
+        .build();
   }
 
   /** Cria assinatura DEFAULT_INCOMPLETE; devolve PI client_secret OU SI client_secret. */
-  @Transactional
   public SubscribeResponse startSubscription(SubscribeRequest req) throws StripeException {
+    return startSubscription(req, null);
+  }
+
+  /**
+   * Idem, repassando a chave de idempotência da requisição para o Subscription.create.
+   *
+   * Sem @Transactional de propósito: as chamadas à Stripe rodam fora de transação e o banco só é
+   * tocado em duas transações curtas (outbox antes, registro + fechamento do outbox depois), então
+   * nenhuma conexão do pool fica presa durante I/O externo.
+   */
+  public SubscribeResponse startSubscription(SubscribeRequest req, String idempotencyKey) throws StripeException {
+    final SubscribeEvent jfr = new SubscribeEvent();
+    jfr.begin();
+    try {
+      final SubscribeResponse res = startSubscription(req, idempotencyKey, jfr);
+      jfr.customerId = res.getCustomerId();
+      jfr.subscriptionId = res.getSubscriptionId();
+      jfr.outcome = "ok";
+      return res;
+    } catch (StripeException | RuntimeException e) {
+      jfr.outcome = e.getClass().getSimpleName();
+      throw e;
+    } finally {
+      jfr.commit();
+    }
+  }
+
+  private SubscribeResponse startSubscription(SubscribeRequest req, String idempotencyKey, SubscribeEvent jfr)
+      throws StripeException {
     Stripe.apiKey = stripeSecretKey;
+    jfr.userId = req.userId();
 
     final String userId = require(req.userId(), "userId");
     final String email = req.email();
     final String priceId = StringUtils.hasText(req.priceId()) ? req.priceId() : defaultBasicPriceId;
     final String stripeVersion = StringUtils.hasText(req.stripeVersion()) ? req.stripeVersion() : mobileApiVersionDefault;
+    jfr.priceId = priceId;
+    catalog.requireActive(priceId);
 
     log.info("[BILL][FLOW] startSubscription (cards/googlepay) userId={}, email={}, priceId={}, stripeVersion={}",
         userId, email, priceId, stripeVersion);
@@ -86,9 +203,33 @@ public class BillingService {
     // 1) Customer
     final String customerId = billingCustomerService.findOrCreateCustomer(userId, email);
 
+    // 1.1) Usuário voltou à PaymentSheet: reaproveita a assinatura INCOMPLETE ainda válida
+    final IntentSecrets reused = findReusableIncomplete(customerId, priceId);
+    if (reused != null) {
+      jfr.path = "reuse";
+      final EphemeralKeyCache.CachedKey ek = ephemeralKeys.get(customerId, stripeVersion);
+      log.info("[BILL][FLOW][REUSE] subId={}, customerId={}, hasPI={}, hasSI={}",
+          reused.subscriptionId(), customerId, reused.paymentIntent() != null, reused.setupIntent() != null);
+      return new SubscribeResponse(stripePublishableKey, customerId, reused.subscriptionId(),
+          reused.paymentIntent(), ek.secret(), reused.setupIntent(), null);
+    }
+
+    // 1.2) Intenção registrada antes de qualquer efeito na Stripe (tx curta)
+    // Se algo falhar daqui em diante a linha fica PENDING e o SubscribeOutboxRecoveryJob reconcilia com a Stripe.
+    final UUID outboxId = timed("outbox", () -> tx.execute(s -> outbox.begin(userId, email, customerId, priceId, idempotencyKey)));
+    jfr.path = "create";
+    return createSubscription(userId, email, customerId, priceId, stripeVersion, idempotencyKey, outboxId);
+  }
+
+  private SubscribeResponse createSubscription(String userId, String email, String customerId, String priceId,
+                                               String stripeVersion, String idempotencyKey, UUID outboxId)
+      throws StripeException {
+    final Timer.Sample stripeSample = Timer.start(meters);
+
     // 2) Cria assinatura: DEFAULT_INCOMPLETE + salvar PM na assinatura
     final SubscriptionCreateParams params = SubscriptionCreateParams.builder()
         .setCustomer(customerId)
+        .putMetadata(SubscribeOutbox.METADATA_KEY, outboxId.toString())
         .addItem(SubscriptionCreateParams.Item.builder().setPrice(priceId).build())
         .setCollectionMethod(SubscriptionCreateParams.CollectionMethod.CHARGE_AUTOMATICALLY)
         .setPaymentBehavior(SubscriptionCreateParams.PaymentBehavior.DEFAULT_INCOMPLETE)
@@ -105,7 +246,18 @@ public class BillingService {
         .addExpand("pending_setup_intent")
         .build();
 
-    final Subscription subCreated = Subscription.create(params);
+    final RequestOptions createOpts = StringUtils.hasText(idempotencyKey)
+        ? RequestOptions.builder().setIdempotencyKey(idempotencyKey).build()
+        : null;
+    final Subscription subCreated;
+    try {
+      subCreated = StripeCallEvent.record("subscription.create", false, null,
+          () -> Subscription.create(params, createOpts));
+    } catch (StripeException e) {
+      // recusa definitiva fecha o outbox; rede/5xx/conflito de idempotência ficam PENDING (a assinatura pode existir)
+      if (rejected(e)) tx.executeWithoutResult(s -> outbox.fail(outboxId));
+      throw e;
+    }
     final String subscriptionId = subCreated.getId();
 
     // 3) Segundo retrieve COM as expansões corretas (garante objetos populados quando o SDK permite)
@@ -114,7 +266,8 @@ public class BillingService {
         .addExpand("latest_invoice.payment_intent")
         .addExpand("pending_setup_intent")
         .build();
-    final Subscription sub = Subscription.retrieve(subscriptionId, srp, (RequestOptions) null);
+    final Subscription sub = StripeCallEvent.record("subscription.retrieve", false, subscriptionId,
+        () -> Subscription.retrieve(subscriptionId, srp, (RequestOptions) null));
 
     // 4) Obter a Invoice
     Invoice inv = safeGetLatestInvoice(sub);
@@ -125,7 +278,8 @@ public class BillingService {
         final InvoiceRetrieveParams irp = InvoiceRetrieveParams.builder()
             .addExpand("payment_intent")
             .build();
-        inv = Invoice.retrieve(invId, irp, (RequestOptions) null);
+        inv = StripeCallEvent.record("invoice.retrieve", true, invId,
+            () -> Invoice.retrieve(invId, irp, (RequestOptions) null));
         invIdForLog = inv != null ? inv.getId() : invId;
       }
     }
@@ -155,13 +309,20 @@ public class BillingService {
       }
     }
 
-    // 8) Ephemeral Key para o app
-    final EphemeralKey ek = EphemeralKey.create(
-        EphemeralKeyCreateParams.builder()
-            .setCustomer(customerId)
-            .setStripeVersion(stripeVersion)
-            .build()
-    );
+    if (StringUtils.hasText(paymentIntentClientSecret) || StringUtils.hasText(setupIntentClientSecret)) {
+      intentSecrets.put(subscriptionId, new IntentSecrets(subscriptionId, paymentIntentClientSecret, setupIntentClientSecret));
+    }
+
+    // 8) Ephemeral Key para o app (reaproveitada por customer+versão enquanto válida)
+    final EphemeralKeyCache.CachedKey ek = ephemeralKeys.get(customerId, stripeVersion);
+    stripeSample.stop(phaseTimer("stripe"));
+
+    // 9) Registra localmente + fecha o outbox (tx curta; base do reuso e do job de expiração)
+    timed("record", () -> tx.execute(s -> {
+      recordSubscription(userId, email, customerId, sub, priceId);
+      outbox.complete(outboxId, subscriptionId);
+      return null;
+    }));
 
     log.info("[BILL][FLOW][RES] subId={}, customerId={}, invId={}, hasPI={}, siId={}, hasSI={}",
         subscriptionId, customerId, invIdForLog, paymentIntentClientSecret != null, siIdForLog, setupIntentClientSecret != null);
@@ -171,12 +332,22 @@ public class BillingService {
         customerId,
         subscriptionId,
         paymentIntentClientSecret,   // PaymentSheet paga a fatura inicial (quando existir)
-        ek.getSecret(),
+        ek.secret(),
         setupIntentClientSecret,     // PaymentSheet salva PM e ativa trial/auto (quando não existir PI)
         null
     );
   }
 
+  /** EphemeralKey para o app abrir a PaymentSheet/CustomerSheet sem iniciar assinatura. */
+  public EphemeralKeyResponse ephemeralKey(EphemeralKeyRequest req) throws StripeException {
+    final String userId = require(req.userId(), "userId");
+    final String stripeVersion = StringUtils.hasText(req.stripeVersion()) ? req.stripeVersion() : mobileApiVersionDefault;
+    final String customerId = billingCustomerService.findOrCreateCustomer(userId, req.email());
+    final EphemeralKeyCache.CachedKey ek = ephemeralKeys.get(customerId, stripeVersion);
+    return new EphemeralKeyResponse(stripePublishableKey, customerId, ek.secret(),
+        Instant.ofEpochSecond(ek.expiresEpochSeconds()).toString());
+  }
+
   /** Confirma manualmente o PaymentIntent inicial (opcional para PI; não usado para SI). */
   public void confirmInitialPayment(String subscriptionId, String paymentMethodId) throws StripeException {
     Stripe.apiKey = stripeSecretKey;
@@ -185,7 +356,8 @@ public class BillingService {
         .addExpand("latest_invoice")
         .addExpand("latest_invoice.payment_intent")
         .build();
-    final Subscription sub = Subscription.retrieve(subscriptionId, srp, (RequestOptions) null);
+    final Subscription sub = StripeCallEvent.record("subscription.retrieve", false, subscriptionId,
+        () -> Subscription.retrieve(subscriptionId, srp, (RequestOptions) null));
 
     final Invoice inv = safeGetLatestInvoice(sub);
     final String piId = tryExtractPaymentIntentIdFromInvoice(inv);
@@ -193,12 +365,13 @@ public class BillingService {
       throw new IllegalStateException("PaymentIntent não encontrado na fatura inicial.");
     }
 
-    final PaymentIntent pi = PaymentIntent.retrieve(piId);
+    final PaymentIntent pi = StripeCallEvent.record("payment_intent.retrieve", false, piId,
+        () -> PaymentIntent.retrieve(piId));
     final PaymentIntentConfirmParams.Builder b = PaymentIntentConfirmParams.builder();
     if (StringUtils.hasText(paymentMethodId)) {
       b.setPaymentMethod(paymentMethodId);
     }
-    pi.confirm(b.build());
+    StripeCallEvent.record("payment_intent.confirm", false, piId, () -> pi.confirm(b.build()));
     log.info("[BILL][CONFIRM_PI] subscriptionId={}, piId={}", subscriptionId, pi.getId());
   }
 
@@ -209,7 +382,8 @@ public class BillingService {
 
   public SubscriptionStatusResponse getStatus(String subscriptionId) throws StripeException {
     Stripe.apiKey = stripeSecretKey;
-    final Subscription sub = Subscription.retrieve(subscriptionId);
+    final Subscription sub = StripeCallEvent.record("subscription.retrieve", false, subscriptionId,
+        () -> Subscription.retrieve(subscriptionId));
     final SubscriptionBackendStatus status = mapStatus(sub);
 
     String currentPeriodEndIso = null;
@@ -220,15 +394,24 @@ public class BillingService {
   }
 
   public void changePlan(String subscriptionId, String newPriceId, String prorationBehaviorRaw) throws StripeException {
+    changePlan(subscriptionId, newPriceId, prorationBehaviorRaw, null);
+  }
+
+  /** Idem, fixando a data de proration (a mesma usada em /proration-preview). */
+  public void changePlan(String subscriptionId, String newPriceId, String prorationBehaviorRaw,
+                         Long prorationDate) throws StripeException {
     Stripe.apiKey = stripeSecretKey;
+    catalog.requireActive(require(newPriceId, "newPriceId"));
 
-    final Subscription sub = Subscription.retrieve(subscriptionId);
+    final Subscription sub = StripeCallEvent.record("subscription.retrieve", false, subscriptionId,
+        () -> Subscription.retrieve(subscriptionId));
     final String itemId = (sub.getItems() != null && !sub.getItems().getData().isEmpty())
         ? sub.getItems().getData().get(0).getId() : null;
 
     final SubscriptionUpdateParams.Builder b = SubscriptionUpdateParams.builder();
     final SubscriptionUpdateParams.ProrationBehavior pb = parseProration(prorationBehaviorRaw);
     if (pb != null) b.setProrationBehavior(pb);
+    if (prorationDate != null) b.setProrationDate(prorationDate);
 
     if (StringUtils.hasText(itemId)) {
       b.addItem(SubscriptionUpdateParams.Item.builder().setId(itemId).setPrice(newPriceId).build());
@@ -236,23 +419,180 @@ public class BillingService {
       b.addItem(SubscriptionUpdateParams.Item.builder().setPrice(newPriceId).build());
     }
 
-    final Subscription updated = sub.update(b.build());
+    final Subscription updated = StripeCallEvent.record("subscription.update", false, subscriptionId,
+        () -> sub.update(b.build()));
     log.info("[BILL][CHANGE_PLAN] subscriptionId={}, status={}", updated.getId(), updated.getStatus());
   }
 
-  /** Usado pelo StripeWebhookController */
+  /**
+   * Usado pelo StripeWebhookController. Falhas (inclusive no change feed) propagam: a transação
+   * volta inteira e o webhook responde 500 para a Stripe re-tentar.
+   */
+  @Transactional
   public void applyWebhookUpdate(Subscription sub, Invoice inv) {
+    final String subIdSafe = (sub != null) ? sub.getId() : null;
+    final String invId = (inv != null) ? inv.getId() : null;
+    final SubscriptionBackendStatus status = (sub != null) ? mapStatus(sub) : SubscriptionBackendStatus.INACTIVE;
+    log.info("[BILL][WEBHOOK] subscriptionId={}, status={}, invoiceId={}", subIdSafe, status, invId);
+
+    if (sub != null && StringUtils.hasText(subIdSafe)) {
+      SubscriptionRecord rec = subscriptionRepo.findByStripeSubscriptionId(subIdSafe).orElse(null);
+      if (rec == null) {
+        BillingCustomer customer = StringUtils.hasText(sub.getCustomer())
+            ? customerRepo.findByStripeCustomerId(sub.getCustomer()).orElse(null) : null;
+        if (customer == null) {
+          log.debug("[BILL][WEBHOOK] sem registro local para subscriptionId={}", subIdSafe);
+          return;
+        }
+        rec = SubscriptionRecord.builder().customer(customer).stripeSubscriptionId(subIdSafe).build();
+      }
+      final RecordState before = RecordState.of(rec);
+      copyFromStripe(rec, sub);
+      if (StringUtils.hasText(invId)) rec.setLatestInvoiceId(invId);
+      saveAndPublish(rec, before);
+    }
+  }
+
+  /**
+   * Procura em subscription_record uma assinatura INCOMPLETE do mesmo customer/price criada dentro da
+   * janela de reuso (carência do job de expiração menos a margem de segurança). Secrets vêm do cache local (0 chamadas) ou de um
+   * único GET na Stripe; sem secret utilizável devolve null e o fluxo cria uma nova assinatura.
+   */
+  private IntentSecrets findReusableIncomplete(String customerId, String priceId) {
+    if (reuseWindow.isZero()) return null;
+    final SubscriptionRecord open = customerRepo.findByStripeCustomerId(customerId)
+        .flatMap(c -> subscriptionRepo.findFirstByCustomerIdAndPriceIdAndStatusAndCreatedAtAfterOrderByCreatedAtDesc(
+            c.getId(), priceId, SubscriptionsStatus.INCOMPLETE, OffsetDateTime.now().minus(reuseWindow)))
+        .orElse(null);
+    if (open == null) return null;
+
+    final String subId = open.getStripeSubscriptionId();
+    final IntentSecrets cached = intentSecrets.getIfPresent(subId);
+    if (cached != null) return cached;
+
+    String pi = StringUtils.hasText(open.getLatestInvoiceId()) ? fetchPaymentIntentSecretHttp(open.getLatestInvoiceId()) : null;
+    String si = !StringUtils.hasText(pi) ? fetchSetupIntentSecretHttp(subId) : null;
+    if (!StringUtils.hasText(pi) && !StringUtils.hasText(si)) {
+      log.info("[BILL][FLOW][REUSE] subId={} sem PI/SI utilizável; criando nova assinatura", subId);
+      return null;
+    }
+    final IntentSecrets found = new IntentSecrets(subId, pi, si);
+    intentSecrets.put(subId, found);
+    return found;
+  }
+
+  /**
+   * Garante billing_customer + subscription_record para a assinatura recém-criada.
+   * Deve rodar dentro de uma transação (também usado pela recuperação do outbox).
+   */
+  public void recordSubscription(String userId, String email, String customerId, Subscription sub, String priceId) {
+    final UUID userUuid;
     try {
-      final String subIdSafe = (sub != null) ? sub.getId() : null;
-      final String invId = (inv != null) ? inv.getId() : null;
-      final SubscriptionBackendStatus status = (sub != null) ? mapStatus(sub) : SubscriptionBackendStatus.INACTIVE;
-      log.info("[BILL][WEBHOOK] subscriptionId={}, status={}, invoiceId={}", subIdSafe, status, invId);
-      // TODO: persistir status/datas em DB e publicar eventos internos
-    } catch (Exception e) {
-      log.error("[BILL][WEBHOOK][ERR] {}", e.getMessage(), e);
+      userUuid = UUID.fromString(userId);
+    } catch (IllegalArgumentException e) {
+      log.warn("[BILL][RECORD] userId não é UUID ({}); assinatura {} não registrada localmente", userId, sub.getId());
+      return;
+    }
+
+    BillingCustomer customer = customerRepo.findByUserId(userUuid).orElse(null);
+    if (customer == null) {
+      customer = customerRepo.save(BillingCustomer.builder()
+          .userId(userUuid)
+          .email(StringUtils.hasText(email) ? email : "")
+          .stripeCustomerId(customerId)
+          .build());
+    }
+
+    SubscriptionRecord rec = subscriptionRepo.findByStripeSubscriptionId(sub.getId())
+        .orElseGet(() -> SubscriptionRecord.builder().stripeSubscriptionId(sub.getId()).build());
+    final RecordState before = RecordState.of(rec);
+    rec.setCustomer(customer);
+    rec.setPriceId(priceId);
+    copyFromStripe(rec, sub);
+    saveAndPublish(rec, before);
+  }
+
+  /** Estado relevante para o change feed antes da alteração (null = registro novo). */
+  private record RecordState(SubscriptionsStatus status, String priceId, OffsetDateTime periodEnd, boolean cancelAtPeriodEnd) {
+    static RecordState of(SubscriptionRecord r) {
+      return r.getId() == null ? null
+          : new RecordState(r.getStatus(), r.getPriceId(), r.getCurrentPeriodEnd(), r.isCancelAtPeriodEnd());
+    }
+  }
+
+  /**
+   * Salva e, se o estado mudou, grava no change feed (mesma transação) e publica
+   * SubscriptionChangedEvent para os listeners locais.
+   */
+  private void saveAndPublish(SubscriptionRecord rec, RecordState before) {
+    subscriptionRepo.save(rec);
+    // leituras do mesmo usuário/assinatura logo depois vão ao primário (réplica pode estar atrás)
+    replicaGuard.recordWrite(
+        ReplicaLagGuard.subscriptionKey(rec.getStripeSubscriptionId()),
+        ReplicaLagGuard.userKey(rec.getCustomer() != null ? rec.getCustomer().getUserId() : null));
+    final RecordState after = new RecordState(rec.getStatus(), rec.getPriceId(), rec.getCurrentPeriodEnd(), rec.isCancelAtPeriodEnd());
+    if (after.equals(before)) return;
+
+    final SubscriptionChangedEvent e = new SubscriptionChangedEvent(
+        rec.getStripeSubscriptionId(),
+        rec.getCustomer() != null ? rec.getCustomer().getStripeCustomerId() : null,
+        before != null ? before.status() : null,
+        rec.getStatus(),
+        before != null ? before.priceId() : null,
+        rec.getPriceId(),
+        rec.getCurrentPeriodEnd(),
+        rec.isCancelAtPeriodEnd());
+    changeFeed.append(e);
+    events.publishEvent(e);
+  }
+
+  private <T> T timed(String phase, Supplier<T> body) {
+    final Timer.Sample sample = Timer.start(meters);
+    try {
+      return body.get();
+    } finally {
+      sample.stop(phaseTimer(phase));
     }
   }
 
+  private Timer phaseTimer(String phase) {
+    return Timer.builder("app.billing.subscribe.phase")
+        .description("Tempo por fase do /subscribe (stripe = I/O externo sem conexão de banco)")
+        .tag("phase", phase)
+        .publishPercentileHistogram()
+        .register(meters);
+  }
+
+  private static void copyFromStripe(SubscriptionRecord rec, Subscription sub) {
+    rec.setStatus(toDomainStatus(mapStatus(sub), rec.getStatus()));
+    rec.setCancelAtPeriodEnd(Boolean.TRUE.equals(sub.getCancelAtPeriodEnd()));
+    rec.setCancelAt(toOffset(sub.getCancelAt()));
+    if (StringUtils.hasText(sub.getLatestInvoice())) rec.setLatestInvoiceId(sub.getLatestInvoice());
+
+    // SDK 29.x: período corrente e preço vivem no item da assinatura
+    final SubscriptionItem item = (sub.getItems() != null && sub.getItems().getData() != null
+        && !sub.getItems().getData().isEmpty()) ? sub.getItems().getData().get(0) : null;
+    if (item != null) {
+      rec.setCurrentPeriodStart(toOffset(item.getCurrentPeriodStart()));
+      rec.setCurrentPeriodEnd(toOffset(item.getCurrentPeriodEnd()));
+      if (item.getPrice() != null) {
+        rec.setPriceId(item.getPrice().getId());
+        rec.setProductId(item.getPrice().getProduct());
+      }
+    }
+  }
+
+  private static SubscriptionsStatus toDomainStatus(SubscriptionBackendStatus s, SubscriptionsStatus fallback) {
+    if (s == null || s == SubscriptionBackendStatus.INACTIVE) {
+      return fallback != null ? fallback : SubscriptionsStatus.INCOMPLETE;
+    }
+    return SubscriptionsStatus.valueOf(s.name());
+  }
+
+  private static OffsetDateTime toOffset(Long epochSeconds) {
+    return epochSeconds == null ? null : OffsetDateTime.ofInstant(Instant.ofEpochSecond(epochSeconds), ZoneOffset.UTC);
+  }
+
   // ---------------- helpers (SDK/reflection) ----------------
 
   private static String require(String v, String field) {
@@ -274,6 +614,12 @@ public class BillingService {
     };
   }
 
+  /** 4xx da Stripe = request recusado sem efeito; 409 e idempotency_error podem esconder um create anterior. */
+  private static boolean rejected(StripeException e) {
+    final Integer code = e.getStatusCode();
+    return code != null && code >= 400 && code < 500 && code != 409 && !(e instanceof IdempotencyException);
+  }
+
   private static SubscriptionUpdateParams.ProrationBehavior parseProration(String s) {
     if (!StringUtils.hasText(s)) return null;
     return switch (s) {
@@ -293,7 +639,7 @@ public class BillingService {
     try {
       final String invId = sub.getLatestInvoice();
       if (StringUtils.hasText(invId)) {
-        return Invoice.retrieve(invId);
+        return StripeCallEvent.record("invoice.retrieve", true, invId, () -> Invoice.retrieve(invId));
       }
     } catch (Throwable ignored) {}
     return null;
@@ -328,7 +674,7 @@ public class BillingService {
       Method mId = inv.getClass().getMethod("getPaymentIntent");
       Object id = mId.invoke(inv);
       if (id instanceof String s && StringUtils.hasText(s)) {
-        PaymentIntent pi = PaymentIntent.retrieve(s);
+        PaymentIntent pi = StripeCallEvent.record("payment_intent.retrieve", true, s, () -> PaymentIntent.retrieve(s));
         if (pi != null && StringUtils.hasText(pi.getClientSecret())) return pi.getClientSecret();
       }
     } catch (Throwable ignored) {}
@@ -371,7 +717,7 @@ public class BillingService {
       Method mId = sub.getClass().getMethod("getPendingSetupIntent");
       Object id = mId.invoke(sub);
       if (id instanceof String s && StringUtils.hasText(s)) {
-        SetupIntent si = SetupIntent.retrieve(s);
+        SetupIntent si = StripeCallEvent.record("setup_intent.retrieve", true, s, () -> SetupIntent.retrieve(s));
         if (si != null && StringUtils.hasText(si.getClientSecret())) return si.getClientSecret();
       }
     } catch (Throwable ignored) {}
@@ -394,6 +740,53 @@ public class BillingService {
     return null;
   }
 
+  // ---------------- warm-up ----------------
+
+  /**
+   * Abre conexões TLS com a Stripe antes de receber tráfego: {@code parallel} leituras do preço padrão
+   * pelo SDK (pool keep-alive do HttpURLConnection) e uma pelo cliente HTTP/2 dos fallbacks.
+   * Só leitura; devolve quantas responderam (qualquer status HTTP conta: o handshake já aconteceu).
+   */
+  public int warmUpStripe(int parallel) {
+    Stripe.apiKey = stripeSecretKey;
+    // pool próprio: o common pool pode ter 1 thread e serializaria os handshakes
+    final ExecutorService pool = Executors.newFixedThreadPool(parallel + 1);
+    final List<CompletableFuture<Boolean>> calls = new ArrayList<>();
+    for (int i = 0; i < parallel; i++) {
+      calls.add(CompletableFuture.supplyAsync(() -> {
+        try {
+          Price.retrieve(defaultBasicPriceId);
+          return true;
+        } catch (ApiConnectionException e) {
+          log.warn("[BILL][WARMUP] SDK sem conexão: {}", e.getMessage());
+          return false;
+        } catch (StripeException e) {
+          return true;
+        }
+      }, pool));
+    }
+    calls.add(CompletableFuture.supplyAsync(() -> {
+      try {
+        final HttpRequest req = HttpRequest.newBuilder(URI.create("https://api.stripe.com/v1/prices/"
+                + URLEncoder.encode(defaultBasicPriceId, StandardCharsets.UTF_8)))
+            .header("Authorization", "Bearer " + stripeSecretKey)
+            .header("User-Agent", "ars-payment-service/1.0")
+            .GET()
+            .build();
+        send(req, HttpResponse.BodyHandlers.discarding());
+        return true;
+      } catch (Exception e) {
+        log.warn("[BILL][WARMUP] HTTP/2 sem conexão: {}", e.toString());
+        return false;
+      }
+    }, pool));
+    try {
+      return (int) calls.stream().filter(CompletableFuture::join).count();
+    } finally {
+      pool.shutdown();
+    }
+  }
+
   // ---------------- fallbacks HTTP diretos na API Stripe ----------------
 
   /** Busca o client_secret do PaymentIntent da fatura via HTTP, independente do SDK. */
@@ -413,7 +806,7 @@ public class BillingService {
         b.header("Stripe-Version", httpApiVersion);
       }
 
-      HttpResponse<String> res = http.send(b.build(), HttpResponse.BodyHandlers.ofString());
+      HttpResponse<String> res = send("http.invoice.retrieve", invoiceId, b.build());
       if (res.statusCode() >= 200 && res.statusCode() < 300) {
         JsonNode root = json.readTree(res.body());
         JsonNode piNode = root.get("payment_intent");
@@ -455,7 +848,7 @@ public class BillingService {
         b.header("Stripe-Version", httpApiVersion);
       }
 
-      HttpResponse<String> res = http.send(b.build(), HttpResponse.BodyHandlers.ofString());
+      HttpResponse<String> res = send("http.payment_intent.retrieve", piId, b.build());
       if (res.statusCode() >= 200 && res.statusCode() < 300) {
         JsonNode root = json.readTree(res.body());
         String secret = textOrNull(root.get("client_secret"));
@@ -487,7 +880,7 @@ public class BillingService {
         b.header("Stripe-Version", httpApiVersion);
       }
 
-      HttpResponse<String> res = http.send(b.build(), HttpResponse.BodyHandlers.ofString());
+      HttpResponse<String> res = send("http.subscription.retrieve", subscriptionId, b.build());
       if (res.statusCode() >= 200 && res.statusCode() < 300) {
         JsonNode root = json.readTree(res.body());
         JsonNode siNode = root.get("pending_setup_intent");
@@ -524,7 +917,7 @@ public class BillingService {
         b.header("Stripe-Version", httpApiVersion);
       }
 
-      HttpResponse<String> res = http.send(b.build(), HttpResponse.BodyHandlers.ofString());
+      HttpResponse<String> res = send("http.setup_intent.retrieve", siId, b.build());
       if (res.statusCode() >= 200 && res.statusCode() < 300) {
         JsonNode root = json.readTree(res.body());
         String secret = textOrNull(root.get("client_secret"));
@@ -538,6 +931,31 @@ public class BillingService {
     return null;
   }
 
+  /** GET de fallback, sempre fora do caminho feliz do SDK (evento JFR com fallback=true). */
+  private HttpResponse<String> send(String operation, String objectId, HttpRequest req) throws Exception {
+    return StripeCallEvent.record(operation, true, objectId,
+        () -> send(req, HttpResponse.BodyHandlers.ofString()));
+  }
+
+  /**
+   * Chamada HTTP direta à Stripe com o mesmo registro de auditoria do AuditingHttpClient (método/caminho,
+   * status, Request-Id, latência, id ou código do erro); falha de transporte sai com status 0.
+   */
+  private <T> HttpResponse<T> send(HttpRequest req, HttpResponse.BodyHandler<T> handler) throws IOException, InterruptedException {
+    final String target = req.method() + " " + req.uri().getPath();
+    final long t0 = System.nanoTime();
+    try {
+      final HttpResponse<T> res = http.send(req, handler);
+      audit.stripeCall(target, System.nanoTime() - t0, res.statusCode(),
+          res.headers().firstValue("Request-Id").orElse(null),
+          res.body() instanceof String body ? AuditingHttpClient.summary(res.statusCode(), body) : null);
+      return res;
+    } catch (IOException | InterruptedException | RuntimeException e) {
+      audit.stripeCall(target, System.nanoTime() - t0, 0, null, e.getClass().getSimpleName());
+      throw e;
+    }
+  }
+
   private static String textOrNull(JsonNode n) {
     return (n != null && !n.isNull()) ? n.asText(null) : null;
   }
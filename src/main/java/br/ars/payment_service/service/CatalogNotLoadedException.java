@@ -0,0 +1,9 @@
+package br.ars.payment_service.service;
+
+/** Catálogo de preços ainda sem a primeira carga; o cliente deve repetir depois. */
+public class CatalogNotLoadedException extends RuntimeException {
+
+  public CatalogNotLoadedException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,143 @@
+package br.ars.payment_service.service;
+
+import br.ars.payment_service.dto.ChangeFeedResponse;
+import br.ars.payment_service.dto.SubscriptionChange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.sql.Timestamp;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Change feed de assinaturas sobre subscription_change_log.
+ *
+ * Consumidores fazem long-poll com um cursor (seq). Só são entregues linhas cujas transações
+ * anteriores já terminaram (tx_id < xmin do snapshot), então o cursor nunca pula uma linha
+ * commitada depois com seq menor. Espera não prende thread: DeferredResult acordado por commit
+ * local ou por um tick que confere o maior seq visível (uma query por tick, não por consumidor).
+ */
+@Service
+public class ChangeFeedService {
+  private static final Logger log = LoggerFactory.getLogger(ChangeFeedService.class);
+
+  private static final String VISIBLE = "tx_id < pg_snapshot_xmin(pg_current_snapshot())";
+
+  private record Waiter(long after, int limit, DeferredResult<ChangeFeedResponse> result) {}
+
+  private final JdbcTemplate jdbc;
+  private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+
+  @Value("${app.change-feed.max-limit:1000}")
+  private int maxLimit;
+
+  @Value("${app.change-feed.max-wait-ms:30000}")
+  private long maxWaitMs;
+
+  public ChangeFeedService(JdbcTemplate jdbc) {
+    this.jdbc = jdbc;
+  }
+
+  /** Grava a mudança; chamar dentro da transação que alterou subscription_record. */
+  public void append(SubscriptionChangedEvent e) {
+    jdbc.update("""
+        INSERT INTO subscription_change_log(stripe_subscription_id, stripe_customer_id, old_status, new_status,
+                                            price_id, current_period_end, cancel_at_period_end)
+        VALUES (?, ?, ?, ?, ?, ?, ?)
+        """,
+        e.subscriptionId(), e.customerId(),
+        e.oldStatus() != null ? e.oldStatus().name() : null, e.newStatus().name(),
+        e.priceId(), e.currentPeriodEnd() != null ? Timestamp.from(e.currentPeriodEnd().toInstant()) : null,
+        e.cancelAtPeriodEnd());
+  }
+
+  public List<SubscriptionChange> read(long after, int limit) {
+    return jdbc.query("""
+        SELECT seq, stripe_subscription_id, stripe_customer_id, old_status, new_status, price_id,
+               current_period_end, cancel_at_period_end, changed_at
+          FROM subscription_change_log
+         WHERE seq > ? AND """ + VISIBLE + """
+         ORDER BY seq
+         LIMIT ?
+        """,
+        (rs, i) -> new SubscriptionChange(
+            rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5), rs.getString(6),
+            iso(rs.getObject(7, OffsetDateTime.class)), rs.getBoolean(8), iso(rs.getObject(9, OffsetDateTime.class))),
+        after, clampLimit(limit));
+  }
+
+  /** Long-poll: responde já se houver mudanças; senão espera até waitMs. */
+  public DeferredResult<ChangeFeedResponse> poll(long after, int limit, long waitMs) {
+    final long wait = Math.max(0, Math.min(waitMs, maxWaitMs));
+    final DeferredResult<ChangeFeedResponse> dr =
+        new DeferredResult<>(wait, new ChangeFeedResponse(List.of(), after));
+    final List<SubscriptionChange> now = read(after, limit);
+    if (!now.isEmpty() || wait == 0) {
+      dr.setResult(toResponse(now, after));
+      return dr;
+    }
+    final Waiter w = new Waiter(after, limit, dr);
+    dr.onCompletion(() -> waiters.remove(w));
+    waiters.add(w);
+    return dr;
+  }
+
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onChange(SubscriptionChangedEvent e) {
+    if (!waiters.isEmpty()) wake();
+  }
+
+  /** Cobre mudanças gravadas por outras réplicas. */
+  @Scheduled(fixedDelayString = "${app.change-feed.tick-ms:1000}")
+  public void tick() {
+    if (!waiters.isEmpty()) wake();
+  }
+
+  /** Maior seq já entregável (0 se o log estiver vazio). */
+  public long latestSeq() {
+    final Long maxSeq = jdbc.queryForObject(
+        "SELECT coalesce(max(seq), 0) FROM subscription_change_log WHERE " + VISIBLE, Long.class);
+    return maxSeq != null ? maxSeq : 0;
+  }
+
+  private void wake() {
+    try {
+      final long max = latestSeq();
+      for (Iterator<Waiter> it = waiters.iterator(); it.hasNext(); ) {
+        final Waiter w = it.next();
+        if (w.result().isSetOrExpired()) {
+          it.remove();
+          continue;
+        }
+        if (w.after() >= max) continue;
+        final List<SubscriptionChange> batch = read(w.after(), w.limit());
+        if (!batch.isEmpty() && w.result().setResult(toResponse(batch, w.after()))) it.remove();
+      }
+    } catch (Exception e) {
+      log.warn("[FEED] wake falhou: {}", e.getMessage());
+    }
+  }
+
+  private int clampLimit(int limit) {
+    return Math.max(1, Math.min(limit, maxLimit));
+  }
+
+  private static ChangeFeedResponse toResponse(List<SubscriptionChange> batch, long after) {
+    final long next = batch.isEmpty() ? after : batch.get(batch.size() - 1).seq();
+    return new ChangeFeedResponse(batch, next);
+  }
+
+  private static String iso(OffsetDateTime t) {
+    return t == null ? null : t.withOffsetSameInstant(ZoneOffset.UTC).toString();
+  }
+}
@@ -0,0 +1,117 @@
+package br.ars.payment_service.service;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.stripe.Stripe;
+import com.stripe.exception.StripeException;
+import com.stripe.model.EphemeralKey;
+import com.stripe.param.EphemeralKeyCreateParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache de EphemeralKey por (customerId, stripeVersion).
+ *
+ * A chave é reutilizada enquanto restar mais que min-remaining de validade; dentro da janela de
+ * refresh-ahead, quem pede recebe a atual e uma nova é emitida em background.
+ */
+@Service
+public class EphemeralKeyCache {
+  private static final Logger log = LoggerFactory.getLogger(EphemeralKeyCache.class);
+
+  public record CachedKey(String id, String secret, long expiresEpochSeconds) {}
+
+  private record CacheKey(String customerId, String stripeVersion) {}
+
+  @Value("${app.stripe.secret-key}")
+  private String stripeSecretKey;
+
+  private final long minRemainingSeconds;
+  private final long refreshAheadSeconds;
+  private final boolean revokeOnEvict;
+  private final LoadingCache<CacheKey, CachedKey> cache;
+
+  public EphemeralKeyCache(@Value("${app.stripe.ephemeral-key.min-remaining-seconds:300}") long minRemainingSeconds,
+                           @Value("${app.stripe.ephemeral-key.refresh-ahead-seconds:900}") long refreshAheadSeconds,
+                           @Value("${app.stripe.ephemeral-key.revoke-on-evict:false}") boolean revokeOnEvict,
+                           @Value("${app.stripe.ephemeral-key.max-entries:100000}") long maxEntries) {
+    this.minRemainingSeconds = minRemainingSeconds;
+    this.refreshAheadSeconds = Math.max(refreshAheadSeconds, minRemainingSeconds);
+    this.revokeOnEvict = revokeOnEvict;
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(maxEntries)
+        .expireAfter(new Expiry<CacheKey, CachedKey>() {
+          @Override public long expireAfterCreate(CacheKey k, CachedKey v, long now) { return ttlNanos(v); }
+          @Override public long expireAfterUpdate(CacheKey k, CachedKey v, long now, long cur) { return ttlNanos(v); }
+          @Override public long expireAfterRead(CacheKey k, CachedKey v, long now, long cur) { return cur; }
+        })
+        .removalListener((CacheKey k, CachedKey v, RemovalCause cause) -> {
+          // EXPIRED já não vale na Stripe; REPLACED pode estar em uso pelo app. Só revoga o que saiu ainda válido.
+          if (revokeOnEvict && v != null && (cause == RemovalCause.SIZE || cause == RemovalCause.EXPLICIT)) revoke(v);
+        })
+        .build(this::create);
+  }
+
+  /** Secret válido por pelo menos min-remaining-seconds. */
+  public CachedKey get(String customerId, String stripeVersion) throws StripeException {
+    final CacheKey key = new CacheKey(customerId, stripeVersion);
+    final CachedKey v;
+    try {
+      v = cache.get(key);
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof StripeException se) throw se;
+      throw e;
+    }
+    if (v.expiresEpochSeconds() - nowSeconds() < refreshAheadSeconds) {
+      cache.refresh(key);
+    }
+    return v;
+  }
+
+  /** Descarta (e revoga, se configurado) as chaves do customer. */
+  public void invalidate(String customerId) {
+    cache.invalidateAll(cache.asMap().keySet().stream()
+        .filter(k -> k.customerId().equals(customerId))
+        .toList());
+  }
+
+  private CachedKey create(CacheKey k) throws StripeException {
+    Stripe.apiKey = stripeSecretKey;
+    final EphemeralKey ek = EphemeralKey.create(
+        EphemeralKeyCreateParams.builder()
+            .setCustomer(k.customerId())
+            .setStripeVersion(k.stripeVersion())
+            .build()
+    );
+    final long expires = ek.getExpires() != null ? ek.getExpires() : nowSeconds() + 3600;
+    log.debug("[BILL][EPHEMERAL] nova chave customerId={} version={} expires={}", k.customerId(), k.stripeVersion(), expires);
+    return new CachedKey(ek.getId(), ek.getSecret(), expires);
+  }
+
+  private void revoke(CachedKey v) {
+    try {
+      Stripe.apiKey = stripeSecretKey;
+      final EphemeralKey ek = new EphemeralKey();
+      ek.setId(v.id());
+      ek.delete();
+    } catch (StripeException e) {
+      log.warn("[BILL][EPHEMERAL] revogação falhou id={}: {}", v.id(), e.getMessage());
+    }
+  }
+
+  private long ttlNanos(CachedKey v) {
+    final long secs = v.expiresEpochSeconds() - nowSeconds() - minRemainingSeconds;
+    return TimeUnit.SECONDS.toNanos(Math.max(0, secs));
+  }
+
+  private static long nowSeconds() {
+    return System.currentTimeMillis() / 1000;
+  }
+}
@@ -0,0 +1,9 @@
+package br.ars.payment_service.service;
+
+/** Requisição idêntica (mesma chave de idempotência) ainda em processamento; o cliente deve repetir depois. */
+public class IdempotencyConflictException extends RuntimeException {
+
+  public IdempotencyConflictException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,134 @@
+package br.ars.payment_service.service;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Estimativa local de troca de plano seguindo o modelo documentado da Stripe (assinatura de 1 item,
+ * quantidade 1), sem rede. Ainda não conferida contra prévias reais da Stripe: o valor cobrado é o da
+ * fatura da Stripe.
+ *
+ * Mesmo intervalo: crédito do tempo não usado no price atual e cobrança do tempo restante no novo,
+ * cada linha = valor × (fim − data) / (fim − início) em segundos, arredondada ao centavo. Intervalo
+ * diferente: a Stripe reinicia o ciclo na data da troca e fatura o novo price cheio na hora, com o
+ * crédito (se houver proration) abatido na mesma fatura. Saldo negativo vira crédito do cliente e é
+ * consumido pela fatura seguinte.
+ */
+public final class ProrationCalculator {
+
+  private ProrationCalculator() {}
+
+  public enum Mode {
+    CREATE_PRORATIONS, NONE, ALWAYS_INVOICE;
+
+    /** Mesmos valores do parseProration do BillingService; vazio = default da Stripe. */
+    public static Mode parse(String s) {
+      if (s == null || s.isBlank()) return CREATE_PRORATIONS;
+      return switch (s) {
+        case "create_prorations" -> CREATE_PRORATIONS;
+        case "none" -> NONE;
+        case "always_invoice" -> ALWAYS_INVOICE;
+        default -> throw new IllegalArgumentException("prorationBehavior inválido: " + s);
+      };
+    }
+  }
+
+  public record Price(String id, String currency, long unitAmount, String interval, long intervalCount) {}
+
+  public record Line(String priceId, long amount, boolean proration, Instant periodStart, Instant periodEnd) {}
+
+  /**
+   * invoicedNow: total da fatura emitida na troca (null = nenhuma). amountDueNow: o que é cobrado
+   * agora. nextInvoiceAmount/nextInvoiceAt: próxima fatura do ciclo. creditBalance: crédito que ainda
+   * sobra para o cliente depois dela.
+   */
+  public record Result(
+      List<Line> lines,
+      long prorationTotal,
+      Long invoicedNow,
+      long amountDueNow,
+      long nextInvoiceAmount,
+      Instant nextInvoiceAt,
+      boolean billingCycleReset,
+      long creditBalance
+  ) {}
+
+  public static Result preview(Price current, Price target, Instant periodStart, Instant periodEnd,
+                               Instant prorationDate, Mode mode) {
+    if (!current.currency().equalsIgnoreCase(target.currency())) {
+      throw new IllegalArgumentException("moeda diferente do plano atual: " + target.currency());
+    }
+    if (!periodStart.isBefore(periodEnd)) throw new IllegalStateException("período da assinatura inválido");
+    if (prorationDate.isBefore(periodStart) || !prorationDate.isBefore(periodEnd)) {
+      throw new IllegalStateException("data de proration fora do período corrente");
+    }
+
+    final long total = periodEnd.getEpochSecond() - periodStart.getEpochSecond();
+    final long remaining = periodEnd.getEpochSecond() - prorationDate.getEpochSecond();
+    final boolean reset = !sameInterval(current, target);
+    final boolean samePrice = current.id().equals(target.id());
+    final List<Line> lines = new ArrayList<>();
+
+    long prorations = 0;
+    if (mode != Mode.NONE && !samePrice) {
+      final long credit = -prorate(current.unitAmount(), remaining, total);
+      lines.add(new Line(current.id(), credit, true, prorationDate, periodEnd));
+      prorations += credit;
+      if (!reset) {
+        final long charge = prorate(target.unitAmount(), remaining, total);
+        lines.add(new Line(target.id(), charge, true, prorationDate, periodEnd));
+        prorations += charge;
+      }
+    }
+
+    if (reset) {
+      final Instant newEnd = addInterval(prorationDate, target);
+      lines.add(new Line(target.id(), target.unitAmount(), false, prorationDate, newEnd));
+      final long invoiced = target.unitAmount() + prorations;
+      final long leftover = Math.max(0, -invoiced);
+      return new Result(List.copyOf(lines), prorations, invoiced, Math.max(0, invoiced),
+          Math.max(0, target.unitAmount() - leftover), newEnd, true, Math.max(0, leftover - target.unitAmount()));
+    }
+
+    return switch (mode) {
+      case NONE -> new Result(List.copyOf(lines), 0, null, 0, target.unitAmount(), periodEnd, false, 0);
+      case CREATE_PRORATIONS -> {
+        // prorations ficam pendentes e entram na próxima fatura junto com o novo ciclo
+        final long next = target.unitAmount() + prorations;
+        yield new Result(List.copyOf(lines), prorations, null, 0, Math.max(0, next), periodEnd, false, Math.max(0, -next));
+      }
+      case ALWAYS_INVOICE -> {
+        final long leftover = Math.max(0, -prorations);
+        yield new Result(List.copyOf(lines), prorations, prorations, Math.max(0, prorations),
+            Math.max(0, target.unitAmount() - leftover), periodEnd, false, Math.max(0, leftover - target.unitAmount()));
+      }
+    };
+  }
+
+  /** amount × remaining / total arredondado ao centavo mais próximo (meio para cima). */
+  static long prorate(long amount, long remaining, long total) {
+    return Math.floorDiv(2 * amount * remaining + total, 2 * total);
+  }
+
+  private static boolean sameInterval(Price a, Price b) {
+    return a.interval() != null && a.interval().equals(b.interval()) && a.intervalCount() == b.intervalCount();
+  }
+
+  private static Instant addInterval(Instant from, Price p) {
+    if (p.interval() == null) throw new IllegalArgumentException("price não recorrente: " + p.id());
+    final ZonedDateTime t = from.atZone(ZoneOffset.UTC);
+    final long n = p.intervalCount();
+    final ZonedDateTime end = switch (p.interval().toLowerCase(Locale.ROOT)) {
+      case "day" -> t.plusDays(n);
+      case "week" -> t.plusWeeks(n);
+      case "month" -> t.plusMonths(n);
+      case "year" -> t.plusYears(n);
+      default -> throw new IllegalArgumentException("intervalo desconhecido: " + p.interval());
+    };
+    return end.toInstant();
+  }
+}
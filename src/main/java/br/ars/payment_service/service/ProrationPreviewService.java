@@ -0,0 +1,86 @@
+package br.ars.payment_service.service;
+
+import br.ars.payment_service.catalog.CatalogPrice;
+import br.ars.payment_service.catalog.PriceCatalog;
+import br.ars.payment_service.domain.SubscriptionRecord;
+import br.ars.payment_service.domain.SubscriptionsStatus;
+import br.ars.payment_service.dto.ProrationPreviewResponse;
+import com.stripe.exception.StripeException;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.time.Instant;
+import java.util.Locale;
+
+/**
+ * Prévia de troca de plano calculada localmente (catálogo em memória + período em subscription_record),
+ * para o app não consultar a Stripe a cada interação. É estimativa: a fatura da Stripe é a fonte da verdade.
+ *
+ * Sem transação própria: a leitura do registro é a transação curta (readOnly) do SubscriptionQueryService,
+ * e o catalog.resolve (que pode ir à Stripe) roda depois dela, sem conexão presa.
+ */
+@Service
+public class ProrationPreviewService {
+
+  private final SubscriptionQueryService subscriptions;
+  private final PriceCatalog catalog;
+
+  public ProrationPreviewService(SubscriptionQueryService subscriptions, PriceCatalog catalog) {
+    this.subscriptions = subscriptions;
+    this.catalog = catalog;
+  }
+
+  public ProrationPreviewResponse preview(String subscriptionId, String newPriceId, String prorationBehavior,
+                                          Long prorationDate) throws StripeException {
+    if (!StringUtils.hasText(newPriceId)) throw new IllegalArgumentException("newPriceId é obrigatório");
+    final ProrationCalculator.Mode mode = ProrationCalculator.Mode.parse(prorationBehavior);
+    if (!catalog.snapshot().loaded()) throw new CatalogNotLoadedException("catálogo de preços ainda não carregado");
+    catalog.requireActive(newPriceId);
+
+    final SubscriptionRecord rec = subscriptions.record(subscriptionId)
+        .orElseThrow(() -> new SubscriptionNotFoundException("assinatura não encontrada: " + subscriptionId));
+    if (rec.getStatus() != SubscriptionsStatus.ACTIVE && rec.getStatus() != SubscriptionsStatus.PAST_DUE) {
+      throw new SubscriptionStateException("prévia só para assinaturas ACTIVE/PAST_DUE (status " + rec.getStatus() + ")");
+    }
+    if (rec.getPriceId() == null || rec.getCurrentPeriodStart() == null || rec.getCurrentPeriodEnd() == null) {
+      throw new ProrationUnavailableException("assinatura sem price/período registrado: " + subscriptionId);
+    }
+
+    final ProrationCalculator.Price current = toCalc(catalog.resolve(rec.getPriceId()));
+    final ProrationCalculator.Price target = toCalc(catalog.resolve(newPriceId));
+    final Instant at = prorationDate != null ? Instant.ofEpochSecond(prorationDate) : Instant.ofEpochSecond(Instant.now().getEpochSecond());
+
+    final ProrationCalculator.Result r;
+    try {
+      r = ProrationCalculator.preview(current, target,
+          rec.getCurrentPeriodStart().toInstant(), rec.getCurrentPeriodEnd().toInstant(), at, mode);
+    } catch (IllegalStateException e) {
+      // período gravado inválido ou prorationDate fora do ciclo corrente
+      throw new ProrationUnavailableException(e.getMessage());
+    }
+
+    return new ProrationPreviewResponse(
+        subscriptionId,
+        current.id(),
+        target.id(),
+        mode.name().toLowerCase(Locale.ROOT),
+        at.getEpochSecond(),
+        target.currency(),
+        r.lines().stream()
+            .map(l -> new ProrationPreviewResponse.Line(l.priceId(), l.amount(), l.proration(),
+                l.periodStart().toString(), l.periodEnd().toString()))
+            .toList(),
+        r.prorationTotal(),
+        r.invoicedNow(),
+        r.amountDueNow(),
+        r.nextInvoiceAmount(),
+        r.nextInvoiceAt().toString(),
+        r.billingCycleReset(),
+        r.creditBalance());
+  }
+
+  private static ProrationCalculator.Price toCalc(CatalogPrice p) {
+    if (p.unitAmount() == null) throw new ProrationUnavailableException("price sem unit_amount fixo: " + p.id());
+    return new ProrationCalculator.Price(p.id(), p.currency(), p.unitAmount(), p.interval(), p.intervalCount());
+  }
+}
@@ -0,0 +1,9 @@
+package br.ars.payment_service.service;
+
+/** Assinatura existe, mas sem dados para a prévia local (price/período ausente, price sem valor fixo, data fora do ciclo). */
+public class ProrationUnavailableException extends RuntimeException {
+
+  public ProrationUnavailableException(String message) {
+    super(message);
+  }
+}
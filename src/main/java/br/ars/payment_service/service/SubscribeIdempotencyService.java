@@ -0,0 +1,224 @@
+package br.ars.payment_service.service;
+
+import br.ars.payment_service.dto.SubscribeRequest;
+import br.ars.payment_service.dto.SubscribeResponse;
+import br.ars.payment_service.jobs.ShardedJobRunner;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.stripe.exception.StripeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Idempotência do /subscribe.
+ *
+ * Chave = header Idempotency-Key (escopo do usuário) ou, sem header, userId+priceId+janela de tempo.
+ * Duplicata em voo no mesmo nó espera o future da primeira; concluída, recebe a resposta gravada.
+ * Entre nós, idempotency_record (Postgres) faz o papel de trava + armazenamento da resposta.
+ */
+@Service
+public class SubscribeIdempotencyService {
+  private static final Logger log = LoggerFactory.getLogger(SubscribeIdempotencyService.class);
+
+  private static final String IN_FLIGHT = "IN_FLIGHT";
+  private static final String DONE = "DONE";
+
+  @FunctionalInterface
+  public interface SubscribeCall {
+    SubscribeResponse call(String idempotencyKey) throws StripeException;
+  }
+
+  private final JdbcTemplate jdbc;
+  private final ShardedJobRunner runner;
+  private final ObjectMapper json = new ObjectMapper();
+  private final Cache<String, Pending> local;
+
+  private record Pending(String fingerprint, CompletableFuture<SubscribeResponse> future) {}
+
+  @Value("${app.idempotency.derived-window-seconds:120}")
+  private long derivedWindowSeconds;
+
+  @Value("${app.idempotency.wait-timeout-ms:30000}")
+  private long waitTimeoutMs;
+
+  /** IN_FLIGHT mais velho que isso é considerado órfão (nó caiu) e pode ser assumido. */
+  @Value("${app.idempotency.in-flight-lease-ms:60000}")
+  private long inFlightLeaseMs;
+
+  private final Duration ttl;
+
+  public SubscribeIdempotencyService(JdbcTemplate jdbc,
+                                     ShardedJobRunner runner,
+                                     @Value("${app.idempotency.ttl-hours:24}") long ttlHours,
+                                     @Value("${app.idempotency.max-entries:100000}") long maxEntries) {
+    this.jdbc = jdbc;
+    this.runner = runner;
+    this.ttl = Duration.ofHours(ttlHours);
+    this.local = Caffeine.newBuilder()
+        .maximumSize(maxEntries)
+        .expireAfterWrite(ttl)
+        .build();
+  }
+
+  /** Chave efetiva para a requisição (sempre prefixada pelo usuário). */
+  public String resolveKey(SubscribeRequest req, String headerKey) {
+    final String userId = StringUtils.hasText(req.userId()) ? req.userId() : "-";
+    if (StringUtils.hasText(headerKey)) {
+      if (headerKey.length() > 128) throw new IllegalArgumentException("Idempotency-Key muito longa (máx. 128)");
+      return Idem.key("sub", userId, "h", headerKey);
+    }
+    final long window = System.currentTimeMillis() / 1000 / Math.max(1, derivedWindowSeconds);
+    return Idem.key("sub", userId, String.valueOf(req.priceId()), "w" + window);
+  }
+
+  public SubscribeResponse execute(String key, SubscribeRequest req, SubscribeCall call) throws StripeException {
+    final String fingerprint = fingerprint(req);
+    final Pending mine = new Pending(fingerprint, new CompletableFuture<>());
+    final Pending existing = local.asMap().putIfAbsent(key, mine);
+    if (existing != null) {
+      if (!existing.fingerprint().equals(fingerprint)) {
+        throw new IllegalArgumentException("Idempotency-Key reutilizada com outro payload");
+      }
+      log.info("[BILL][IDEM] duplicata local key={}; aguardando/replay", key);
+      return await(existing.future());
+    }
+
+    try {
+      final SubscribeResponse res = runClustered(key, fingerprint, call);
+      mine.future().complete(res);
+      return res;
+    } catch (StripeException | RuntimeException e) {
+      // falha não é memorizada: a próxima tentativa executa de novo
+      local.asMap().remove(key, mine);
+      mine.future().completeExceptionally(e);
+      throw e;
+    }
+  }
+
+  private SubscribeResponse runClustered(String key, String fingerprint, SubscribeCall call) throws StripeException {
+    final long deadline = System.currentTimeMillis() + waitTimeoutMs;
+    long sleep = 50;
+    while (true) {
+      if (claim(key, fingerprint)) break;
+
+      final List<Map<String, Object>> rows = jdbc.queryForList(
+          "SELECT fingerprint, status, response_json FROM idempotency_record WHERE idem_key = ?", key);
+      if (!rows.isEmpty()) {
+        final Map<String, Object> row = rows.get(0);
+        if (!fingerprint.equals(row.get("fingerprint"))) {
+          throw new IllegalArgumentException("Idempotency-Key reutilizada com outro payload");
+        }
+        if (DONE.equals(row.get("status"))) {
+          log.info("[BILL][IDEM] replay key={}", key);
+          return readResponse((String) row.get("response_json"));
+        }
+      }
+      if (System.currentTimeMillis() > deadline) {
+        throw new IdempotencyConflictException("requisição idêntica ainda em processamento; tente novamente");
+      }
+      sleepQuietly(sleep);
+      sleep = Math.min(sleep * 2, 500);
+    }
+
+    final SubscribeResponse res;
+    try {
+      res = call.call(key);
+    } catch (StripeException | RuntimeException e) {
+      jdbc.update("DELETE FROM idempotency_record WHERE idem_key = ? AND status = ?", key, IN_FLIGHT);
+      throw e;
+    }
+    jdbc.update("UPDATE idempotency_record SET status = ?, response_json = ?, updated_at = now() WHERE idem_key = ?",
+        DONE, writeResponse(res), key);
+    return res;
+  }
+
+  /** Insere IN_FLIGHT ou assume um IN_FLIGHT órfão; true = este nó executa. */
+  private boolean claim(String key, String fingerprint) {
+    final List<String> got = jdbc.queryForList("""
+        INSERT INTO idempotency_record(idem_key, fingerprint, status) VALUES (?, ?, ?)
+        ON CONFLICT (idem_key) DO UPDATE SET updated_at = now()
+         WHERE idempotency_record.status = 'IN_FLIGHT'
+           AND idempotency_record.fingerprint = excluded.fingerprint
+           AND idempotency_record.updated_at < now() - (? * interval '1 millisecond')
+        RETURNING idem_key
+        """, String.class, key, fingerprint, IN_FLIGHT, inFlightLeaseMs);
+    return !got.isEmpty();
+  }
+
+  @Scheduled(fixedDelayString = "${app.idempotency.purge-interval-ms:3600000}")
+  public void purge() {
+    runner.runSharded("idempotency-purge", 1, (shard, count) ->
+        jdbc.update("DELETE FROM idempotency_record WHERE created_at < now() - (? * interval '1 second')",
+            ttl.toSeconds()));
+  }
+
+  private SubscribeResponse await(CompletableFuture<SubscribeResponse> f) throws StripeException {
+    try {
+      return f.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+    } catch (ExecutionException | CompletionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof StripeException se) throw se;
+      if (cause instanceof RuntimeException re) throw re;
+      throw new IllegalStateException(cause);
+    } catch (TimeoutException e) {
+      throw new IdempotencyConflictException("requisição idêntica ainda em processamento; tente novamente");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrompido aguardando requisição idêntica");
+    }
+  }
+
+  private static String fingerprint(SubscribeRequest r) {
+    try {
+      final String raw = String.join("|", String.valueOf(r.userId()), String.valueOf(r.email()),
+          String.valueOf(r.priceId()), String.valueOf(r.stripeVersion()), String.valueOf(r.pmMode()));
+      final byte[] h = MessageDigest.getInstance("SHA-256").digest(raw.getBytes(StandardCharsets.UTF_8));
+      return HexFormat.of().formatHex(h);
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private String writeResponse(SubscribeResponse r) {
+    try {
+      return json.writeValueAsString(r);
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private SubscribeResponse readResponse(String s) {
+    try {
+      return json.readValue(s, SubscribeResponse.class);
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void sleepQuietly(long ms) {
+    try {
+      Thread.sleep(ms);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrompido aguardando requisição idêntica");
+    }
+  }
+}
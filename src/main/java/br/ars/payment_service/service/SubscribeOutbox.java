@@ -0,0 +1,83 @@
+package br.ars.payment_service.service;
+
+import br.ars.payment_service.jobs.ShardedJobRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Outbox do fluxo de assinatura: cada /subscribe grava a intenção (PENDING) numa transação curta
+ * antes de falar com a Stripe e a fecha depois: DONE (assinatura registrada) ou FAILED (a Stripe
+ * recusou o create, nada foi criado). Linhas PENDING antigas indicam que o nó caiu ou perdeu a
+ * resposta no meio do fluxo e são tratadas pelo SubscribeOutboxRecoveryJob (ABANDONED se nada existir).
+ *
+ * O id vai para a Stripe como metadata[outbox_id] junto com o Idempotency-Key do request, então é
+ * derivado da chave: a retentativa reabre a mesma linha e repete exatamente os mesmos parâmetros.
+ */
+@Component
+public class SubscribeOutbox {
+
+  public static final String METADATA_KEY = "outbox_id";
+
+  public record Pending(UUID id, String userId, String email, String customerId, String priceId) {}
+
+  private final JdbcTemplate jdbc;
+
+  public SubscribeOutbox(JdbcTemplate jdbc) {
+    this.jdbc = jdbc;
+  }
+
+  /** Id estável por chave de idempotência (sem chave, aleatório). */
+  public static UUID idFor(String idemKey) {
+    return StringUtils.hasText(idemKey)
+        ? UUID.nameUUIDFromBytes(("subscribe_outbox:" + idemKey).getBytes(StandardCharsets.UTF_8))
+        : UUID.randomUUID();
+  }
+
+  /**
+   * Grava (ou reabre, na retentativa) a intenção. created_at volta a now() ao reabrir para o job de
+   * recuperação não disputar a linha com a tentativa em curso; DONE fica DONE (a Stripe devolve a
+   * mesma assinatura para a mesma chave e o complete() é repetido).
+   */
+  public UUID begin(String userId, String email, String customerId, String priceId, String idemKey) {
+    final UUID id = idFor(idemKey);
+    jdbc.update("""
+        INSERT INTO subscribe_outbox(id, user_id, email, stripe_customer_id, price_id, idem_key, status)
+        VALUES (?, ?, ?, ?, ?, ?, 'PENDING')
+        ON CONFLICT (id) DO UPDATE SET status = 'PENDING', created_at = now(), updated_at = now()
+         WHERE subscribe_outbox.status <> 'DONE'
+        """, id, userId, email, customerId, priceId, idemKey);
+    return id;
+  }
+
+  public void complete(UUID id, String subscriptionId) {
+    jdbc.update("UPDATE subscribe_outbox SET status = 'DONE', subscription_id = ?, updated_at = now() WHERE id = ?",
+        subscriptionId, id);
+  }
+
+  /** A Stripe recusou o create (nada foi criado): o job não precisa procurar a assinatura. */
+  public void fail(UUID id) {
+    jdbc.update("UPDATE subscribe_outbox SET status = 'FAILED', updated_at = now() WHERE id = ? AND status = 'PENDING'", id);
+  }
+
+  public void abandon(UUID id) {
+    jdbc.update("UPDATE subscribe_outbox SET status = 'ABANDONED', updated_at = now() WHERE id = ? AND status = 'PENDING'", id);
+  }
+
+  /** PENDING mais velhos que {@code olderThanSeconds}, restritos a um shard do runner. */
+  public List<Pending> stalePending(long olderThanSeconds, int shard, int shardCount, int limit) {
+    return jdbc.query("""
+        SELECT id, user_id, email, stripe_customer_id, price_id FROM subscribe_outbox
+         WHERE status = 'PENDING' AND created_at < now() - (? * interval '1 second')
+           AND """ + ShardedJobRunner.shardPredicate("id::text") + """
+         ORDER BY created_at
+         LIMIT ?
+        """,
+        (rs, i) -> new Pending(rs.getObject(1, UUID.class), rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5)),
+        olderThanSeconds, shardCount, shard, limit);
+  }
+}
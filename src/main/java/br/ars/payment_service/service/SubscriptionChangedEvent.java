@@ -0,0 +1,17 @@
+package br.ars.payment_service.service;
+
+import br.ars.payment_service.domain.SubscriptionsStatus;
+
+import java.time.OffsetDateTime;
+
+/** Publicado (via ApplicationEventPublisher) a cada mudança de estado gravada em subscription_record. */
+public record SubscriptionChangedEvent(
+    String subscriptionId,
+    String customerId,
+    SubscriptionsStatus oldStatus,   // null = registro novo
+    SubscriptionsStatus newStatus,
+    String oldPriceId,
+    String priceId,
+    OffsetDateTime currentPeriodEnd,
+    boolean cancelAtPeriodEnd
+) {}
@@ -0,0 +1,9 @@
+package br.ars.payment_service.service;
+
+/** Assinatura sem registro local (subscription_record). */
+public class SubscriptionNotFoundException extends RuntimeException {
+
+  public SubscriptionNotFoundException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,70 @@
+package br.ars.payment_service.service;
+
+import br.ars.payment_service.config.ReplicaLagGuard;
+import br.ars.payment_service.domain.SubscriptionRecord;
+import br.ars.payment_service.domain.SubscriptionsStatus;
+import br.ars.payment_service.dto.SubscriptionSummary;
+import br.ars.payment_service.repo.SubscriptionRecordRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/** Leituras de assinaturas pelo banco (projeções; nenhuma chamada à Stripe). Vão para a réplica, se houver. */
+@Service
+@Transactional(readOnly = true)
+public class SubscriptionQueryService {
+
+  private final SubscriptionRecordRepository subscriptionRepo;
+  private final ReplicaLagGuard replicaGuard;
+
+  @Value("${app.billing.query.max-limit:500}")
+  private int maxLimit;
+
+  public SubscriptionQueryService(SubscriptionRecordRepository subscriptionRepo, ReplicaLagGuard replicaGuard) {
+    this.subscriptionRepo = subscriptionRepo;
+    this.replicaGuard = replicaGuard;
+  }
+
+  public List<SubscriptionSummary> byUser(String userId, boolean liveOnly) {
+    final UUID uid = parseUserId(userId);
+    replicaGuard.pinIfRecentWrite(ReplicaLagGuard.userKey(uid));
+    return liveOnly ? subscriptionRepo.findLiveSummariesByUserId(uid) : subscriptionRepo.findSummariesByUserId(uid);
+  }
+
+  /** Registro local da assinatura (GET de status); logo após gravação própria, lê do primário. */
+  public Optional<SubscriptionRecord> record(String subscriptionId) {
+    replicaGuard.pinIfRecentWrite(ReplicaLagGuard.subscriptionKey(subscriptionId));
+    return subscriptionRepo.findByStripeSubscriptionId(subscriptionId);
+  }
+
+  public List<SubscriptionSummary> byStatus(SubscriptionsStatus status, int limit) {
+    if (status == null) throw new IllegalArgumentException("status obrigatório");
+    return subscriptionRepo.findSummariesByStatus(status, PageRequest.ofSize(clamp(limit)));
+  }
+
+  /** Vivas cujo período termina nas próximas {@code within}. */
+  public List<SubscriptionSummary> endingWithin(Duration within, int limit) {
+    if (within.isNegative() || within.isZero()) throw new IllegalArgumentException("janela deve ser positiva");
+    final OffsetDateTime now = OffsetDateTime.now();
+    return subscriptionRepo.findLiveEndingBetween(now, now.plus(within), PageRequest.ofSize(clamp(limit)));
+  }
+
+  private int clamp(int limit) {
+    return Math.max(1, Math.min(limit, maxLimit));
+  }
+
+  private static UUID parseUserId(String userId) {
+    try {
+      return UUID.fromString(userId);
+    } catch (IllegalArgumentException | NullPointerException e) {
+      throw new IllegalArgumentException("userId inválido");
+    }
+  }
+}
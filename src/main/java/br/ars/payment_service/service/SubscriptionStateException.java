@@ -0,0 +1,9 @@
+package br.ars.payment_service.service;
+
+/** Operação incompatível com o status atual da assinatura. */
+public class SubscriptionStateException extends RuntimeException {
+
+  public SubscriptionStateException(String message) {
+    super(message);
+  }
+}
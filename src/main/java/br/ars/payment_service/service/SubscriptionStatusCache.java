@@ -0,0 +1,82 @@
+package br.ars.payment_service.service;
+
+import br.ars.payment_service.domain.SubscriptionRecord;
+import br.ars.payment_service.dto.SubscriptionStatusResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Status de assinatura a partir de subscription_record, com ETag forte (version + updated_at).
+ *
+ * Entradas curtas em memória (app.billing.status.cache-ttl-ms): o poll repetido do app responde 304
+ * sem ir ao banco nem montar corpo. Commit local de mudança invalida a entrada; gravações de outras
+ * réplicas aparecem quando ela expira (mesma ordem do max-age sugerido ao cliente). Sem registro local
+ * nada é guardado e o chamador decide o fallback.
+ */
+@Service
+public class SubscriptionStatusCache {
+
+  /** Corpo pronto + ETag já entre aspas. */
+  public record Entry(SubscriptionStatusResponse body, String etag) {}
+
+  private final SubscriptionQueryService queries;
+  private final MeterRegistry meters;
+  private final Cache<String, Entry> cache;
+  private final CacheControl cacheControl;
+
+  public SubscriptionStatusCache(SubscriptionQueryService queries, MeterRegistry meters,
+                                 @Value("${app.billing.status.cache-ttl-ms:5000}") long ttlMs,
+                                 @Value("${app.billing.status.cache-size:100000}") long size,
+                                 @Value("${app.billing.status.max-age-seconds:5}") long maxAgeSeconds) {
+    this.queries = queries;
+    this.meters = meters;
+    this.cache = Caffeine.newBuilder()
+        .maximumSize(size)
+        .expireAfterWrite(Duration.ofMillis(ttlMs))
+        .build();
+    // private: o status é do usuário, proxies compartilhados não guardam
+    this.cacheControl = CacheControl.maxAge(maxAgeSeconds, TimeUnit.SECONDS).cachePrivate();
+  }
+
+  public Optional<Entry> get(String subscriptionId) {
+    final Entry hit = cache.getIfPresent(subscriptionId);
+    if (hit != null) {
+      meters.counter("app.billing.status.lookup", "source", "cache").increment();
+      return Optional.of(hit);
+    }
+    // loader devolvendo null não grava: assinatura sem registro volta a consultar na próxima
+    final Entry loaded = cache.get(subscriptionId, id -> queries.record(id).map(SubscriptionStatusCache::entry).orElse(null));
+    meters.counter("app.billing.status.lookup", "source", loaded != null ? "db" : "none").increment();
+    return Optional.ofNullable(loaded);
+  }
+
+  public CacheControl cacheControl() {
+    return cacheControl;
+  }
+
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onChange(SubscriptionChangedEvent e) {
+    cache.invalidate(e.subscriptionId());
+  }
+
+  static Entry entry(SubscriptionRecord r) {
+    return new Entry(SubscriptionStatusStream.snapshot(r), etag(r));
+  }
+
+  /** Muda a cada save (version) e distingue registros recriados com a mesma version (updated_at, µs). */
+  static String etag(SubscriptionRecord r) {
+    final Instant at = r.getUpdatedAt().toInstant();
+    final long micros = at.getEpochSecond() * 1_000_000L + at.getNano() / 1_000;
+    return "\"" + r.getVersion() + "-" + Long.toHexString(micros) + "\"";
+  }
+}
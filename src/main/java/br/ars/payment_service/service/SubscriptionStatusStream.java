@@ -0,0 +1,320 @@
+package br.ars.payment_service.service;
+
+import br.ars.payment_service.domain.SubscriptionRecord;
+import br.ars.payment_service.dto.SubscriptionBackendStatus;
+import br.ars.payment_service.dto.SubscriptionChange;
+import br.ars.payment_service.dto.SubscriptionStatusResponse;
+import br.ars.payment_service.repo.SubscriptionRecordRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Push de status de assinatura via SSE para o app (substitui o polling pós-PaymentSheet).
+ *
+ * Conexões ociosas não prendem thread: cada uma é só um SseEmitter (request assíncrono do servlet)
+ * num mapa subscriptionId -> assinantes. As mudanças vêm do change feed, então o webhook processado
+ * em qualquer réplica chega aqui; commit local só antecipa a leitura. Heartbeat periódico mantém
+ * proxies/NAT abertos e descobre conexões mortas; timeout encerra e limpa o registro.
+ *
+ * Nenhuma thread de request, de webhook ou do @Scheduled escreve no socket: pump e heartbeat só
+ * enfileiram na fila da conexão, e o pool sse-writer drena cada fila (no máximo um dreno por conexão,
+ * em ordem). Conexão com escrita presa além de send-timeout-ms ou fila acima de max-queued (cliente que
+ * não lê) sai do registro; o timeout do SseEmitter encerra o request depois.
+ */
+@Service
+public class SubscriptionStatusStream {
+  private static final Logger log = LoggerFactory.getLogger(SubscriptionStatusStream.class);
+
+  private static final class Subscriber {
+    final String subscriptionId;
+    final SseEmitter emitter;
+    final Queue<SseEmitter.SseEventBuilder> outbox = new ConcurrentLinkedQueue<>();
+    final AtomicInteger queued = new AtomicInteger();
+    final AtomicBoolean draining = new AtomicBoolean();
+    /** nanoTime desde que há escrita pendente ou em curso; 0 = ocioso. */
+    final AtomicLong busySince = new AtomicLong();
+    volatile boolean closed;
+
+    Subscriber(String subscriptionId, SseEmitter emitter) {
+      this.subscriptionId = subscriptionId;
+      this.emitter = emitter;
+    }
+  }
+
+  private final ChangeFeedService changeFeed;
+  private final SubscriptionRecordRepository subscriptionRepo;
+  private final Map<String, Set<Subscriber>> bySubscription = new ConcurrentHashMap<>();
+  private final AtomicInteger connections = new AtomicInteger();
+  private final ReentrantLock pumpLock = new ReentrantLock();
+  private final Counter stuck;
+  private final ExecutorService writers;
+  private final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread t = new Thread(r, "sse-heartbeat");
+    t.setDaemon(true);
+    return t;
+  });
+
+  /** Último seq do change feed já despachado (só avança dentro de pump). */
+  private volatile long cursor = -1;
+
+  @Value("${app.billing.sse.timeout-ms:300000}")
+  private long timeoutMs;
+
+  @Value("${app.billing.sse.max-connections:50000}")
+  private int maxConnections;
+
+  @Value("${app.billing.sse.batch-size:500}")
+  private int batchSize;
+
+  @Value("${app.billing.sse.heartbeat-ms:15000}")
+  private long heartbeatMs;
+
+  @Value("${app.billing.sse.send-timeout-ms:10000}")
+  private long sendTimeoutMs;
+
+  @Value("${app.billing.sse.max-queued:32}")
+  private int maxQueued;
+
+  public SubscriptionStatusStream(ChangeFeedService changeFeed,
+                                  SubscriptionRecordRepository subscriptionRepo,
+                                  MeterRegistry meters,
+                                  @Value("${app.billing.sse.writer-threads:8}") int writerThreads) {
+    this.changeFeed = changeFeed;
+    this.subscriptionRepo = subscriptionRepo;
+    this.writers = Executors.newFixedThreadPool(writerThreads, r -> {
+      Thread t = new Thread(r, "sse-writer");
+      t.setDaemon(true);
+      return t;
+    });
+    Gauge.builder("app.billing.sse.connections", connections, AtomicInteger::get)
+        .description("Conexões SSE de status abertas")
+        .register(meters);
+    this.stuck = Counter.builder("app.billing.sse.stuck")
+        .description("Conexões SSE descartadas por escrita presa além do send-timeout ou fila cheia")
+        .register(meters);
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    try {
+      cursor = changeFeed.latestSeq();
+    } catch (Exception e) {
+      log.warn("[BILL][SSE] cursor inicial indisponível: {}", e.getMessage());
+    }
+    heartbeats.scheduleWithFixedDelay(this::heartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  void shutdown() {
+    heartbeats.shutdownNow();
+    writers.shutdownNow();
+  }
+
+  /** Abre o stream; o primeiro evento é o estado atual gravado (se houver). */
+  public SseEmitter subscribe(String subscriptionId) {
+    if (subscriptionId == null || !subscriptionId.startsWith("sub_")) {
+      throw new IllegalArgumentException("subscriptionId inválido");
+    }
+    if (connections.incrementAndGet() > maxConnections) {
+      connections.decrementAndGet();
+      throw new RejectedExecutionException("limite de conexões SSE atingido");
+    }
+    final SseEmitter emitter = new SseEmitter(timeoutMs);
+    final Subscriber s = new Subscriber(subscriptionId, emitter);
+    emitter.onCompletion(() -> remove(s));
+    emitter.onTimeout(emitter::complete);
+    emitter.onError(e -> remove(s));
+    bySubscription.compute(subscriptionId, (k, subs) -> {
+      final Set<Subscriber> set = subs != null ? subs : ConcurrentHashMap.newKeySet();
+      set.add(s);
+      return set;
+    });
+
+    // snapshot sob o lock do assinante: um push concorrente entra na fila antes (e o snapshot já o reflete) ou depois
+    try {
+      synchronized (s) {
+        subscriptionRepo.findByStripeSubscriptionId(subscriptionId)
+            .ifPresent(rec -> enqueue(s, status(null, snapshot(rec))));
+      }
+    } catch (RuntimeException e) {
+      remove(s);
+      throw e;
+    }
+    return emitter;
+  }
+
+  @TransactionalEventListener(fallbackExecution = true)
+  public void onChange(SubscriptionChangedEvent e) {
+    if (bySubscription.containsKey(e.subscriptionId())) pump();
+  }
+
+  /** Cobre mudanças gravadas por outras réplicas. */
+  @Scheduled(fixedDelayString = "${app.billing.sse.poll-ms:1000}")
+  public void tick() {
+    pump();
+  }
+
+  /** Enfileira um comentário nas conexões ociosas e descarta as que estão presas. */
+  void heartbeat() {
+    try {
+      final long now = System.nanoTime();
+      final long timeout = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs);
+      for (Set<Subscriber> subs : bySubscription.values()) {
+        for (Subscriber s : subs) {
+          final long since = s.busySince.get();
+          if (since == 0) {
+            enqueue(s, SseEmitter.event().comment("hb"));
+          } else if (now - since > timeout) {
+            evict(s);
+          }
+        }
+      }
+    } catch (Exception e) {
+      log.warn("[BILL][SSE] heartbeat falhou: {}", e.getMessage());
+    }
+  }
+
+  /** Só enfileira (nunca escreve na thread de quem chama); o dreno roda no pool sse-writer. */
+  private void enqueue(Subscriber s, SseEmitter.SseEventBuilder ev) {
+    if (s.closed) return;
+    if (s.queued.incrementAndGet() > maxQueued) {
+      evict(s);
+      return;
+    }
+    s.outbox.add(ev);
+    s.busySince.compareAndSet(0, System.nanoTime());
+    scheduleDrain(s);
+  }
+
+  private void scheduleDrain(Subscriber s) {
+    if (!s.draining.compareAndSet(false, true)) return;
+    try {
+      writers.execute(() -> drain(s));
+    } catch (RejectedExecutionException e) {
+      s.draining.set(false);
+      evict(s);
+    }
+  }
+
+  private void drain(Subscriber s) {
+    try {
+      SseEmitter.SseEventBuilder ev;
+      while (!s.closed && (ev = s.outbox.poll()) != null) {
+        s.queued.decrementAndGet();
+        s.busySince.set(System.nanoTime());
+        try {
+          s.emitter.send(ev);
+        } catch (IOException | IllegalStateException e) {
+          s.closed = true;
+          remove(s);
+        }
+      }
+    } finally {
+      s.busySince.set(0);
+      s.draining.set(false);
+    }
+    // evento enfileirado entre o último poll e a liberação do dreno
+    if (!s.closed && !s.outbox.isEmpty()) {
+      s.busySince.compareAndSet(0, System.nanoTime());
+      scheduleDrain(s);
+    }
+  }
+
+  /** Cliente que não lê: sai do registro; a escrita presa (se houver) termina com o timeout do emitter. */
+  private void evict(Subscriber s) {
+    if (s.closed) return;
+    s.closed = true;
+    s.outbox.clear();
+    stuck.increment();
+    remove(s);
+  }
+
+  private void pump() {
+    if (!pumpLock.tryLock()) return; // pump em curso; o que ele não viu sai no próximo tick
+    try {
+      if (cursor < 0) {
+        cursor = changeFeed.latestSeq();
+        return;
+      }
+      if (bySubscription.isEmpty()) {
+        // ninguém ouvindo: só acompanha o feed para não despachar histórico ao próximo assinante
+        cursor = Math.max(cursor, changeFeed.latestSeq());
+        return;
+      }
+      while (true) {
+        final List<SubscriptionChange> batch = changeFeed.read(cursor, batchSize);
+        for (SubscriptionChange c : batch) {
+          final Set<Subscriber> subs = bySubscription.get(c.subscriptionId());
+          if (subs == null) continue;
+          final SubscriptionStatusResponse body = fromChange(c);
+          for (Subscriber s : subs) {
+            synchronized (s) {
+              enqueue(s, status(String.valueOf(c.seq()), body));
+            }
+          }
+        }
+        if (!batch.isEmpty()) cursor = batch.get(batch.size() - 1).seq();
+        if (batch.size() < batchSize) break;
+      }
+    } catch (Exception e) {
+      log.warn("[BILL][SSE] pump falhou: {}", e.getMessage());
+    } finally {
+      pumpLock.unlock();
+    }
+  }
+
+  private static SseEmitter.SseEventBuilder status(String id, SubscriptionStatusResponse body) {
+    final SseEmitter.SseEventBuilder ev = SseEmitter.event().name("status").data(body, MediaType.APPLICATION_JSON);
+    return id != null ? ev.id(id) : ev;
+  }
+
+  private void remove(Subscriber s) {
+    bySubscription.computeIfPresent(s.subscriptionId, (k, subs) -> {
+      if (subs.remove(s)) connections.decrementAndGet();
+      return subs.isEmpty() ? null : subs;
+    });
+  }
+
+  static SubscriptionStatusResponse snapshot(SubscriptionRecord r) {
+    return new SubscriptionStatusResponse(
+        r.getStripeSubscriptionId(),
+        SubscriptionBackendStatus.valueOf(r.getStatus().name()),
+        r.getCurrentPeriodEnd() != null ? r.getCurrentPeriodEnd().withOffsetSameInstant(ZoneOffset.UTC).toString() : null,
+        r.isCancelAtPeriodEnd());
+  }
+
+  private static SubscriptionStatusResponse fromChange(SubscriptionChange c) {
+    return new SubscriptionStatusResponse(
+        c.subscriptionId(), SubscriptionBackendStatus.valueOf(c.newStatus()), c.currentPeriodEnd(), c.cancelAtPeriodEnd());
+  }
+}
@@ -0,0 +1,71 @@
+package br.ars.payment_service.startup;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aot.AotDetector;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Tempo até o readiness (desde o início da JVM, incluindo warm-up) e RSS do processo.
+ *
+ * app.startup.time-to-ready e app.startup.rss.bytes são fixados quando o readiness vira
+ * ACCEPTING_TRAFFIC; app.process.rss.bytes acompanha o RSS atual (Linux, /proc/self/status).
+ */
+@Component
+public class StartupMetrics {
+  private static final Logger log = LoggerFactory.getLogger(StartupMetrics.class);
+  private static final Path PROC_STATUS = Path.of("/proc/self/status");
+
+  private volatile double readyMillis = Double.NaN;
+  private volatile double readyRss = Double.NaN;
+
+  public StartupMetrics(MeterRegistry meters) {
+    Gauge.builder("app.startup.time-to-ready", this, m -> m.readyMillis)
+        .baseUnit("milliseconds")
+        .description("Início da JVM até o readiness (inclui warm-up)")
+        .register(meters);
+    Gauge.builder("app.startup.rss.bytes", this, m -> m.readyRss)
+        .description("RSS no momento do readiness")
+        .register(meters);
+    Gauge.builder("app.process.rss.bytes", StartupMetrics::rssBytes)
+        .description("RSS atual do processo")
+        .register(meters);
+  }
+
+  @EventListener
+  public void onReadiness(AvailabilityChangeEvent<ReadinessState> event) {
+    if (event.getState() != ReadinessState.ACCEPTING_TRAFFIC || !Double.isNaN(readyMillis)) return;
+    readyMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+    readyRss = rssBytes();
+    final List<String> jvmArgs = ManagementFactory.getRuntimeMXBean().getInputArguments();
+    final boolean cds = jvmArgs.stream().anyMatch(a -> a.startsWith("-XX:SharedArchiveFile"));
+    log.info("[STARTUP] pronto em {} ms; RSS {} MB; aot={}, cds={}",
+        (long) readyMillis, Double.isNaN(readyRss) ? "?" : (long) (readyRss / (1024 * 1024)),
+        AotDetector.useGeneratedArtifacts(), cds);
+  }
+
+  private static double rssBytes() {
+    try {
+      for (String line : Files.readAllLines(PROC_STATUS)) {
+        if (line.startsWith("VmRSS:")) {
+          // "VmRSS:	  123456 kB"
+          return Long.parseLong(line.substring(6).trim().split("\\s+")[0]) * 1024.0;
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      // fora do Linux: sem métrica
+    }
+    return Double.NaN;
+  }
+}
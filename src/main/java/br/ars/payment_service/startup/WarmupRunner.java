@@ -0,0 +1,232 @@
+package br.ars.payment_service.startup;
+
+import br.ars.payment_service.service.BillingService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.sql.DataSource;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Aquecimento antes do readiness.
+ *
+ * Roda como ApplicationRunner: o Spring Boot só publica ReadinessState.ACCEPTING_TRAFFIC depois dos
+ * runners, então o probe de readiness fica vermelho até aqui terminar. Abre conexões TLS com a Stripe,
+ * enche o pool do Hikari e exercita via loopback HTTP os caminhos de subscribe (payload inválido → 400,
+ * sem Stripe), status (por id com e sem If-None-Match, se houver assinatura gravada; listagens admin se
+ * app.admin.token estiver definido)
+ * e webhook (evento de warm-up assinado localmente, ignorado).
+ * Repete em rodadas até a mediana estabilizar ou estourar o limite de rodadas/tempo.
+ * app.warmup.enabled é lido em runtime (não via @Conditional) para valer também com AOT.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class WarmupRunner implements ApplicationRunner {
+  private static final Logger log = LoggerFactory.getLogger(WarmupRunner.class);
+
+  private final BillingService billingService;
+  private final DataSource dataSource;
+  private final Environment env;
+  private final Timer duration;
+  private final AtomicInteger rounds = new AtomicInteger();
+  private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+
+  @Value("${app.warmup.enabled:true}")
+  private boolean enabled;
+
+  @Value("${app.warmup.stripe-connections:4}")
+  private int stripeConnections;
+
+  @Value("${app.warmup.db-connections:${spring.datasource.hikari.minimum-idle:10}}")
+  private int dbConnections;
+
+  @Value("${app.warmup.requests-per-round:20}")
+  private int requestsPerRound;
+
+  @Value("${app.warmup.min-rounds:3}")
+  private int minRounds;
+
+  @Value("${app.warmup.max-rounds:50}")
+  private int maxRounds;
+
+  /** Mediana da rodada dentro desta fração da anterior = estável. */
+  @Value("${app.warmup.settle-tolerance:0.15}")
+  private double settleTolerance;
+
+  @Value("${app.warmup.max-duration-ms:60000}")
+  private long maxDurationMs;
+
+  @Value("${app.stripe.webhook-secret:}")
+  private String webhookSecret;
+
+  @Value("${app.admin.token:}")
+  private String adminToken;
+
+  public WarmupRunner(BillingService billingService, DataSource dataSource, Environment env, MeterRegistry meters) {
+    this.billingService = billingService;
+    this.dataSource = dataSource;
+    this.env = env;
+    this.duration = Timer.builder("app.warmup.duration")
+        .description("Duração do aquecimento antes do readiness")
+        .register(meters);
+    Gauge.builder("app.warmup.rounds", rounds, AtomicInteger::get).register(meters);
+  }
+
+  @Override
+  public void run(ApplicationArguments args) {
+    if (!enabled || StringUtils.hasText(env.getProperty("app.replay.file"))) return; // modo offline: sem tráfego
+    final long t0 = System.nanoTime();
+    try {
+      warmStripe();
+      warmDatabase();
+      warmHttpPaths(t0);
+    } catch (Exception e) {
+      log.warn("[WARMUP] interrompido: {}", e.toString());
+    } finally {
+      final long took = System.nanoTime() - t0;
+      duration.record(took, TimeUnit.NANOSECONDS);
+      log.info("[WARMUP] concluído em {} ms ({} rodadas)", TimeUnit.NANOSECONDS.toMillis(took), rounds.get());
+    }
+  }
+
+  private void warmStripe() {
+    final long t = System.nanoTime();
+    final int ok = billingService.warmUpStripe(stripeConnections);
+    log.info("[WARMUP] stripe: {}/{} conexões em {} ms", ok, stripeConnections + 1,
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t));
+  }
+
+  /** Pega N conexões ao mesmo tempo para o Hikari criá-las agora, não no primeiro pico. */
+  private void warmDatabase() throws Exception {
+    final long t = System.nanoTime();
+    final List<Connection> held = new ArrayList<>();
+    try {
+      for (int i = 0; i < dbConnections; i++) {
+        final Connection c = dataSource.getConnection();
+        held.add(c);
+        try (Statement st = c.createStatement()) {
+          st.execute("SELECT 1");
+        }
+      }
+    } finally {
+      for (Connection c : held) c.close();
+    }
+    log.info("[WARMUP] banco: {} conexões em {} ms", held.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t));
+  }
+
+  private void warmHttpPaths(long t0) throws Exception {
+    final String port = env.getProperty("local.server.port");
+    if (!StringUtils.hasText(port)) return; // sem servidor web (ex.: modo replay)
+    final String base = "http://127.0.0.1:" + port + env.getProperty("server.servlet.context-path", "");
+    final List<HttpRequest> paths = requests(base);
+
+    double previous = -1;
+    int stable = 0;
+    while (rounds.get() < maxRounds && System.nanoTime() - t0 < TimeUnit.MILLISECONDS.toNanos(maxDurationMs)) {
+      final long[] lat = new long[requestsPerRound * paths.size()];
+      int n = 0;
+      for (int i = 0; i < requestsPerRound; i++) {
+        for (HttpRequest r : paths) {
+          final long s = System.nanoTime();
+          http.send(r, HttpResponse.BodyHandlers.discarding());
+          lat[n++] = System.nanoTime() - s;
+        }
+      }
+      Arrays.sort(lat);
+      final double median = lat[lat.length / 2] / 1_000.0;
+      final int round = rounds.incrementAndGet();
+      log.debug("[WARMUP] rodada {} mediana {} µs", round, (long) median);
+      stable = previous > 0 && Math.abs(median - previous) <= previous * settleTolerance ? stable + 1 : 0;
+      previous = median;
+      if (round >= minRounds && stable >= 2) break;
+    }
+  }
+
+  private List<HttpRequest> requests(String base) throws Exception {
+    final List<HttpRequest> out = new ArrayList<>();
+    // subscribe: sem userId → 400 antes de qualquer chamada à Stripe (chave própria do pod: sem disputa entre réplicas)
+    out.add(HttpRequest.newBuilder(URI.create(base + "/api/billing/subscribe"))
+        .header("Content-Type", "application/json")
+        .header("Idempotency-Key", "warmup-" + UUID.randomUUID())
+        .POST(HttpRequest.BodyPublishers.ofString("{\"userId\":\"\",\"priceId\":\"price_warmup\"}"))
+        .build());
+    // listagens (admin): leituras no banco; sem token o admin está desligado e elas ficam de fora
+    if (StringUtils.hasText(adminToken)) {
+      out.add(HttpRequest.newBuilder(URI.create(base + "/api/admin/users/" + UUID.randomUUID() + "/subscriptions"))
+          .header("X-Admin-Token", adminToken).GET().build());
+      out.add(HttpRequest.newBuilder(URI.create(base + "/api/admin/subscriptions?status=ACTIVE&limit=1"))
+          .header("X-Admin-Token", adminToken).GET().build());
+    }
+    // status por id: poll normal (200 do cache) e condicional (304), se já houver alguma assinatura gravada
+    final String subscriptionId = anySubscriptionId();
+    if (subscriptionId != null) {
+      final HttpRequest poll = HttpRequest.newBuilder(URI.create(base + "/api/billing/subscriptions/" + subscriptionId)).GET().build();
+      out.add(poll);
+      http.send(poll, HttpResponse.BodyHandlers.discarding()).headers().firstValue("ETag").ifPresent(etag ->
+          out.add(HttpRequest.newBuilder(poll.uri()).header("If-None-Match", etag).GET().build()));
+    }
+    // planos: catálogo em memória
+    out.add(HttpRequest.newBuilder(URI.create(base + "/api/billing/plans")).GET().build());
+    // webhook: assinatura válida, tipo ignorado pelo controller
+    final String payload = "{\"id\":\"evt_warmup\",\"object\":\"event\",\"type\":\"warmup.ping\",\"data\":{\"object\":{}}}";
+    out.add(HttpRequest.newBuilder(URI.create(base + "/api/stripe/webhook"))
+        .header("Content-Type", "application/json")
+        .header("Stripe-Signature", sign(payload))
+        .POST(HttpRequest.BodyPublishers.ofString(payload))
+        .build());
+    return out;
+  }
+
+  private String anySubscriptionId() {
+    try (Connection c = dataSource.getConnection();
+         Statement st = c.createStatement();
+         ResultSet rs = st.executeQuery("SELECT stripe_subscription_id FROM subscription_record LIMIT 1")) {
+      return rs.next() ? rs.getString(1) : null;
+    } catch (Exception e) {
+      log.debug("[WARMUP] sem assinatura para o status: {}", e.toString());
+      return null;
+    }
+  }
+
+  /** Cabeçalho Stripe-Signature (t=...,v1=HMAC-SHA256(secret, t.payload)). */
+  private String sign(String payload) {
+    if (!StringUtils.hasText(webhookSecret)) return "t=0,v1=0";
+    try {
+      final long ts = System.currentTimeMillis() / 1000;
+      final Mac mac = Mac.getInstance("HmacSHA256");
+      mac.init(new SecretKeySpec(webhookSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+      final byte[] sig = mac.doFinal((ts + "." + payload).getBytes(StandardCharsets.UTF_8));
+      return "t=" + ts + ",v1=" + HexFormat.of().formatHex(sig);
+    } catch (Exception e) {
+      return "t=0,v1=0";
+    }
+  }
+}
@@ -0,0 +1,178 @@
+-- Executado após o ddl-auto do Hibernate (spring.jpa.defer-datasource-initialization=true).
+-- Apenas objetos que o JPA não sabe declarar; tudo idempotente.
+
+-- ---- Índices de leitura de subscription_record (o ddl-auto só cria as constraints únicas) ----
+-- ExpirePaymentsJob: INCOMPLETE mais antigas primeiro
+CREATE INDEX IF NOT EXISTS ix_sub_incomplete_created ON subscription_record (created_at) WHERE status = 'INCOMPLETE';
+-- listagem por status
+CREATE INDEX IF NOT EXISTS ix_sub_status_created ON subscription_record (status, created_at);
+-- assinaturas vivas por customer / vencendo em breve
+CREATE INDEX IF NOT EXISTS ix_sub_live_customer ON subscription_record (billing_customer_id, created_at)
+  WHERE status IN ('ACTIVE', 'TRIALING', 'PAST_DUE');
+CREATE INDEX IF NOT EXISTS ix_sub_live_period_end ON subscription_record (current_period_end)
+  WHERE status IN ('ACTIVE', 'TRIALING', 'PAST_DUE');
+
+-- ---- Réplica de leitura: heartbeat gravado no primário e lido na réplica (ReplicaLagGuard) ----
+CREATE TABLE IF NOT EXISTS replica_heartbeat (
+  id      SMALLINT    PRIMARY KEY,
+  beat_at TIMESTAMPTZ NOT NULL
+);
+
+-- ---- Job runner: nós vivos e leases por shard ----
+CREATE TABLE IF NOT EXISTS job_node (
+  node_id      VARCHAR(128) PRIMARY KEY,
+  heartbeat_at TIMESTAMPTZ  NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS job_lease (
+  job_name     VARCHAR(64)  NOT NULL,
+  shard        INT          NOT NULL,
+  owner        VARCHAR(128) NOT NULL,
+  lease_until  TIMESTAMPTZ  NOT NULL,
+  last_run_at  TIMESTAMPTZ,
+  last_items   BIGINT       NOT NULL DEFAULT 0,
+  PRIMARY KEY (job_name, shard)
+);
+
+-- ---- Idempotência de requisições (/api/billing/subscribe) ----
+CREATE TABLE IF NOT EXISTS idempotency_record (
+  idem_key      VARCHAR(200) PRIMARY KEY,
+  fingerprint   VARCHAR(64)  NOT NULL,
+  status        VARCHAR(16)  NOT NULL,   -- IN_FLIGHT | DONE
+  response_json TEXT,
+  created_at    TIMESTAMPTZ  NOT NULL DEFAULT now(),
+  updated_at    TIMESTAMPTZ  NOT NULL DEFAULT now()
+);
+CREATE INDEX IF NOT EXISTS ix_idem_created ON idempotency_record (created_at);
+
+-- ---- Claim de resolução de customer (BillingCustomerService): quem resolve o usuário na Stripe ----
+-- Tomado e liberado em transações curtas; claimed_until vencido = dono morreu, outro nó assume.
+CREATE TABLE IF NOT EXISTS billing_customer_claim (
+  user_id       UUID         PRIMARY KEY,
+  owner         VARCHAR(64)  NOT NULL,
+  claimed_until TIMESTAMPTZ  NOT NULL
+);
+
+-- ---- Outbox do /subscribe: intenção registrada antes das chamadas à Stripe (recuperação pós-crash) ----
+CREATE TABLE IF NOT EXISTS subscribe_outbox (
+  id                 UUID         PRIMARY KEY,
+  user_id            VARCHAR(64)  NOT NULL,
+  email              VARCHAR(320),
+  stripe_customer_id VARCHAR(64)  NOT NULL,
+  price_id           VARCHAR(64)  NOT NULL,
+  idem_key           VARCHAR(200),
+  status             VARCHAR(16)  NOT NULL,   -- PENDING | DONE | FAILED | ABANDONED
+  subscription_id    VARCHAR(64),
+  created_at         TIMESTAMPTZ  NOT NULL DEFAULT now(),
+  updated_at         TIMESTAMPTZ  NOT NULL DEFAULT now()
+);
+CREATE INDEX IF NOT EXISTS ix_subscribe_outbox_pending ON subscribe_outbox (created_at) WHERE status = 'PENDING';
+
+-- ---- ExpirePaymentsJob: cancelamentos na Stripe ainda não confirmados (marcador sai no sucesso) ----
+CREATE TABLE IF NOT EXISTS expire_cancel_retry (
+  stripe_subscription_id VARCHAR(255) PRIMARY KEY,
+  attempts               INT          NOT NULL DEFAULT 0,
+  next_attempt_at        TIMESTAMPTZ  NOT NULL
+);
+CREATE INDEX IF NOT EXISTS ix_expire_cancel_retry_next ON expire_cancel_retry (next_attempt_at);
+
+-- ---- Change feed de assinaturas (append-only; escrito na mesma transação da mudança de estado) ----
+-- tx_id permite entregar só linhas cujas transações anteriores já terminaram (cursor sem buracos).
+CREATE TABLE IF NOT EXISTS subscription_change_log (
+  seq                    BIGSERIAL    PRIMARY KEY,
+  stripe_subscription_id VARCHAR(64)  NOT NULL,
+  stripe_customer_id     VARCHAR(64),
+  old_status             VARCHAR(32),
+  new_status             VARCHAR(32)  NOT NULL,
+  price_id               VARCHAR(64),
+  current_period_end     TIMESTAMPTZ,
+  cancel_at_period_end   BOOLEAN      NOT NULL DEFAULT false,
+  changed_at             TIMESTAMPTZ  NOT NULL DEFAULT now(),
+  tx_id                  XID8         NOT NULL DEFAULT pg_current_xact_id()
+);
+
+-- ---- Migração em massa de plano (/api/admin/migrations) ----
+-- cursor_id = último subscription_record.id concluído (checkpoint do keyset); owner/lease_until = nó que executa.
+CREATE TABLE IF NOT EXISTS plan_migration (
+  id                 UUID         PRIMARY KEY,
+  source_price_id    VARCHAR(64)  NOT NULL,
+  target_price_id    VARCHAR(64)  NOT NULL,
+  proration_behavior VARCHAR(32),
+  status             VARCHAR(16)  NOT NULL,   -- RUNNING | PAUSED | DONE
+  cursor_id          UUID,
+  total              BIGINT       NOT NULL DEFAULT 0,
+  migrated           BIGINT       NOT NULL DEFAULT 0,
+  skipped            BIGINT       NOT NULL DEFAULT 0,
+  failed             BIGINT       NOT NULL DEFAULT 0,
+  owner              VARCHAR(128),
+  lease_until        TIMESTAMPTZ,
+  created_at         TIMESTAMPTZ  NOT NULL DEFAULT now(),
+  updated_at         TIMESTAMPTZ  NOT NULL DEFAULT now()
+);
+CREATE UNIQUE INDEX IF NOT EXISTS ux_plan_migration_active_source ON plan_migration (source_price_id)
+  WHERE status IN ('RUNNING', 'PAUSED');
+
+CREATE TABLE IF NOT EXISTS plan_migration_failure (
+  migration_id           UUID         NOT NULL,
+  stripe_subscription_id VARCHAR(64)  NOT NULL,
+  error                  VARCHAR(512),
+  failed_at              TIMESTAMPTZ  NOT NULL DEFAULT now(),
+  PRIMARY KEY (migration_id, stripe_subscription_id)
+);
+
+-- keyset das assinaturas vivas de um price
+CREATE INDEX IF NOT EXISTS ix_sub_live_price_id ON subscription_record (price_id, id)
+  WHERE status IN ('ACTIVE', 'TRIALING', 'PAST_DUE');
+
+-- ---- Ledger de invoices (append-only, alimentado pelos webhooks invoice.payment_*) ----
+-- Particionado por mês em occurred_at (= created do evento); as partições mensais são criadas pelo
+-- InvoiceLedger (mês anterior + app.ledger.months-ahead). O default só pega o que cair fora delas.
+-- A PK inclui a chave de partição (exigência do Postgres) e deduplica retentativas do mesmo evento.
+CREATE TABLE IF NOT EXISTS invoice_ledger (
+  event_id               VARCHAR(64)  NOT NULL,
+  event_type             VARCHAR(64)  NOT NULL,
+  occurred_at            TIMESTAMPTZ  NOT NULL,
+  invoice_id             VARCHAR(64)  NOT NULL,
+  stripe_customer_id     VARCHAR(64),
+  stripe_subscription_id VARCHAR(64),
+  status                 VARCHAR(32),
+  currency               VARCHAR(8),
+  amount_due             BIGINT,
+  amount_paid            BIGINT,
+  amount_remaining       BIGINT,
+  total                  BIGINT,
+  billing_reason         VARCHAR(64),
+  period_start           TIMESTAMPTZ,
+  period_end             TIMESTAMPTZ,
+  invoice_created_at     TIMESTAMPTZ,
+  recorded_at            TIMESTAMPTZ  NOT NULL DEFAULT now(),
+  PRIMARY KEY (event_id, occurred_at)
+) PARTITION BY RANGE (occurred_at);
+CREATE TABLE IF NOT EXISTS invoice_ledger_default PARTITION OF invoice_ledger DEFAULT;
+-- linhas chegam em ordem de tempo: BRIN é minúsculo e basta para recortar intervalos dentro do mês
+CREATE INDEX IF NOT EXISTS brin_invoice_ledger_occurred ON invoice_ledger USING brin (occurred_at);
+CREATE INDEX IF NOT EXISTS brin_invoice_ledger_recorded ON invoice_ledger USING brin (recorded_at);
+
+-- ---- Rollup de MRR (MrrAggregator): totais somados pelos flushes de cada réplica ----
+CREATE TABLE IF NOT EXISTS mrr_rollup (
+  price_id   VARCHAR(64)  PRIMARY KEY,
+  paying     BIGINT       NOT NULL DEFAULT 0,   -- ACTIVE + PAST_DUE
+  trialing   BIGINT       NOT NULL DEFAULT 0,
+  updated_at TIMESTAMPTZ  NOT NULL DEFAULT now()
+);
+
+-- geração do rollup: rebuild() incrementa; flush feito com geração antiga descarta o delta de estado
+CREATE TABLE IF NOT EXISTS mrr_rollup_generation (
+  id         INT     PRIMARY KEY DEFAULT 1 CHECK (id = 1),
+  generation BIGINT  NOT NULL DEFAULT 0
+);
+INSERT INTO mrr_rollup_generation (id, generation) VALUES (1, 0) ON CONFLICT (id) DO NOTHING;
+
+-- entradas em / saídas de paying por dia (janela de churn)
+CREATE TABLE IF NOT EXISTS mrr_movement (
+  day      DATE         NOT NULL,
+  price_id VARCHAR(64)  NOT NULL,
+  started  BIGINT       NOT NULL DEFAULT 0,
+  churned  BIGINT       NOT NULL DEFAULT 0,
+  PRIMARY KEY (day, price_id)
+);
@@ -0,0 +1,69 @@
+package br.ars.payment_service.config;
+
+import br.ars.payment_service.audit.AuditJournal;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.URI;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/** O token é exigido em qualquer grafia do caminho que o Spring MVC roteie para /api/admin/**. */
+@WebMvcTest(controllers = AdminTokenFilterTest.Probe.class, properties = {"app.admin.token=secret", "app.stripe.secret-key=sk_test"})
+@Import({SecurityConfig.class, AdminTokenFilterTest.Probe.class})
+class AdminTokenFilterTest {
+
+  @RestController
+  static class Probe {
+    @GetMapping("/api/admin/probe")
+    String admin() {
+      return "admin";
+    }
+
+    @GetMapping("/actuator/jfr")
+    String jfr() {
+      return "jfr";
+    }
+
+    @GetMapping("/api/billing/probe")
+    String open() {
+      return "open";
+    }
+  }
+
+  @Autowired MockMvc mvc;
+  @MockBean AuditJournal audit; // exigido pelo AppConfig (WebMvcConfigurer)
+
+  @Test
+  void adminPathRequiresToken() throws Exception {
+    mvc.perform(get("/api/admin/probe")).andExpect(status().isUnauthorized());
+    mvc.perform(get("/api/admin/probe").header(AdminTokenFilter.HEADER, "wrong")).andExpect(status().isUnauthorized());
+    mvc.perform(get("/api/admin/probe").header(AdminTokenFilter.HEADER, "secret"))
+        .andExpect(status().isOk()).andExpect(content().string("admin"));
+    mvc.perform(get(URI.create("/actuator/%6Afr"))).andExpect(status().isUnauthorized());
+    mvc.perform(get("/actuator/jfr").header(AdminTokenFilter.HEADER, "secret")).andExpect(content().string("jfr"));
+  }
+
+  @Test
+  void encodedAdminPathStillRequiresToken() throws Exception {
+    for (String path : new String[] {"/api/%61dmin/probe", "/api/adm%69n/pr%6Fbe"}) {
+      // o MVC roteia estas grafias para o handler de admin...
+      mvc.perform(get(URI.create(path)).header(AdminTokenFilter.HEADER, "secret")).andExpect(content().string("admin"));
+      // ...então sem token elas também têm de parar no filtro
+      mvc.perform(get(URI.create(path))).andExpect(status().isUnauthorized());
+    }
+  }
+
+  @Test
+  void otherPathsAreOpen() throws Exception {
+    mvc.perform(get("/api/billing/probe")).andExpect(status().isOk()).andExpect(content().string("open"));
+  }
+}
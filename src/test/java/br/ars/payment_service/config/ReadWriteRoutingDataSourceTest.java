@@ -0,0 +1,95 @@
+package br.ars.payment_service.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/** Roteamento por transação: só readOnly explícito, com réplica utilizável e sem pin, vai para a réplica. */
+class ReadWriteRoutingDataSourceTest {
+
+  private final DataSource primary = mock(DataSource.class);
+  private final DataSource replica = mock(DataSource.class);
+
+  @AfterEach
+  void clearTransaction() {
+    TransactionSynchronizationManager.clear();
+  }
+
+  private ReadWriteRoutingDataSource router(ReplicaLagGuard guard) {
+    return new ReadWriteRoutingDataSource(primary, replica, guard, new SimpleMeterRegistry());
+  }
+
+  private static ReplicaLagGuard guard(boolean replicaAllowed) {
+    final ReplicaLagGuard guard = mock(ReplicaLagGuard.class);
+    when(guard.replicaAllowed()).thenReturn(replicaAllowed);
+    return guard;
+  }
+
+  private static void transaction(String name, boolean readOnly) {
+    TransactionSynchronizationManager.initSynchronization();
+    TransactionSynchronizationManager.setActualTransactionActive(true);
+    TransactionSynchronizationManager.setCurrentTransactionReadOnly(readOnly);
+    TransactionSynchronizationManager.setCurrentTransactionName(name);
+  }
+
+  @Test
+  void outsideTransactionGoesToPrimary() {
+    assertThat(router(guard(true)).determineCurrentLookupKey()).isEqualTo(ReadWriteRoutingDataSource.Route.PRIMARY);
+  }
+
+  @Test
+  void readOnlyTransactionGoesToReplica() {
+    transaction("br.ars.payment_service.service.SubscriptionQueryService.byUser", true);
+    assertThat(router(guard(true)).determineCurrentLookupKey()).isEqualTo(ReadWriteRoutingDataSource.Route.REPLICA);
+  }
+
+  @Test
+  void writeTransactionGoesToPrimary() {
+    transaction("br.ars.payment_service.service.BillingService.applyWebhookUpdate", false);
+    assertThat(router(guard(true)).determineCurrentLookupKey()).isEqualTo(ReadWriteRoutingDataSource.Route.PRIMARY);
+  }
+
+  @Test
+  void implicitSpringDataTransactionGoesToPrimary() {
+    transaction("org.springframework.data.jpa.repository.support.SimpleJpaRepository.findById", true);
+    assertThat(router(guard(true)).determineCurrentLookupKey()).isEqualTo(ReadWriteRoutingDataSource.Route.PRIMARY);
+  }
+
+  @Test
+  void readOnlyGoesToPrimaryWhenGuardRefuses() {
+    transaction("br.ars.payment_service.service.SubscriptionQueryService.byUser", true);
+    assertThat(router(guard(false)).determineCurrentLookupKey()).isEqualTo(ReadWriteRoutingDataSource.Route.PRIMARY);
+  }
+
+  @Test
+  void recentWriteOnThisNodePinsReadToPrimary() {
+    final ReplicaLagGuard guard = new ReplicaLagGuard(new SimpleMeterRegistry(), 3000, 5000);
+    guard.monitor(primary, replica);
+    ReflectionTestUtils.setField(guard, "replicaUp", true);
+    final ReadWriteRoutingDataSource router = router(guard);
+
+    transaction("br.ars.payment_service.service.SubscriptionQueryService.record", true);
+    guard.pinIfRecentWrite(ReplicaLagGuard.subscriptionKey("sub_1"));
+    assertThat(router.determineCurrentLookupKey()).as("sem escrita recente").isEqualTo(ReadWriteRoutingDataSource.Route.REPLICA);
+    clearTransaction();
+
+    guard.recordWrite(ReplicaLagGuard.subscriptionKey("sub_1"));
+    transaction("br.ars.payment_service.service.SubscriptionQueryService.record", true);
+    guard.pinIfRecentWrite(ReplicaLagGuard.subscriptionKey("sub_1"));
+    assertThat(router.determineCurrentLookupKey()).as("logo após a escrita").isEqualTo(ReadWriteRoutingDataSource.Route.PRIMARY);
+
+    // fim da transação limpa o pin
+    TransactionSynchronizationManager.getSynchronizations().forEach(s -> s.afterCompletion(0));
+    clearTransaction();
+    transaction("br.ars.payment_service.service.SubscriptionQueryService.record", true);
+    assertThat(guard.replicaAllowed()).isTrue();
+  }
+}
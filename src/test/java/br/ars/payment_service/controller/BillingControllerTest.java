@@ -0,0 +1,107 @@
+package br.ars.payment_service.controller;
+
+import br.ars.payment_service.audit.AuditJournal;
+import br.ars.payment_service.catalog.PriceCatalog;
+import br.ars.payment_service.config.SecurityConfig;
+import br.ars.payment_service.domain.SubscriptionRecord;
+import br.ars.payment_service.domain.SubscriptionsStatus;
+import br.ars.payment_service.service.BillingService;
+import br.ars.payment_service.service.ProrationPreviewService;
+import br.ars.payment_service.service.SubscribeIdempotencyService;
+import br.ars.payment_service.service.SubscriptionQueryService;
+import br.ars.payment_service.service.SubscriptionStatusCache;
+import br.ars.payment_service.service.SubscriptionStatusStream;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/** GET condicional do status: ETag segue a version do registro, If-None-Match igual => 304 sem corpo. */
+@WebMvcTest(controllers = BillingController.class, properties = {
+    "app.admin.token=secret",
+    "app.stripe.secret-key=sk_test",
+    "app.billing.status.cache-ttl-ms=0", // sem cache: cada GET relê o registro (mock)
+    "app.billing.status.max-age-seconds=5"
+})
+@Import({SecurityConfig.class, SubscriptionStatusCache.class, SimpleMeterRegistry.class})
+class BillingControllerTest {
+
+  private static final String SUB = "sub_etag";
+  private static final String URL = "/api/billing/subscriptions/" + SUB;
+
+  @Autowired MockMvc mvc;
+  @MockBean AuditJournal audit; // exigido pelo AppConfig (WebMvcConfigurer)
+  @MockBean SubscriptionQueryService queries;
+  @MockBean BillingService billingService;
+  @MockBean SubscribeIdempotencyService idempotency;
+  @MockBean SubscriptionStatusStream statusStream;
+  @MockBean PriceCatalog catalog;
+  @MockBean ProrationPreviewService prorations;
+
+  private static final OffsetDateTime UPDATED = OffsetDateTime.of(2026, 10, 1, 12, 0, 0, 123_456_000, ZoneOffset.UTC);
+
+  private void stored(long version) {
+    when(queries.record(SUB)).thenReturn(Optional.of(SubscriptionRecord.builder()
+        .stripeSubscriptionId(SUB)
+        .status(SubscriptionsStatus.ACTIVE)
+        .currentPeriodEnd(UPDATED.plusDays(30))
+        .updatedAt(UPDATED)
+        .version(version)
+        .build()));
+  }
+
+  @Test
+  void statusCarriesEtagAndPrivateCacheControl() throws Exception {
+    stored(1);
+    mvc.perform(get(URL))
+        .andExpect(status().isOk())
+        .andExpect(header().exists(HttpHeaders.ETAG))
+        .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=5, private"))
+        .andExpect(jsonPath("$.subscriptionId").value(SUB));
+    verifyNoInteractions(billingService);
+  }
+
+  @Test
+  void matchingIfNoneMatchGets304WithoutBody() throws Exception {
+    stored(1);
+    final String etag = mvc.perform(get(URL)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+    mvc.perform(get(URL).header(HttpHeaders.IF_NONE_MATCH, etag))
+        .andExpect(status().isNotModified())
+        .andExpect(header().string(HttpHeaders.ETAG, etag))
+        .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=5, private"))
+        .andExpect(content().string(""));
+  }
+
+  @Test
+  void etagChangesWithVersion() throws Exception {
+    stored(1);
+    final String v1 = mvc.perform(get(URL)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    stored(2);
+    final String v2 = mvc.perform(get(URL)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+    assertThat(v2).isNotEqualTo(v1);
+
+    // o ETag antigo não vale mais: corpo completo com o novo
+    mvc.perform(get(URL).header(HttpHeaders.IF_NONE_MATCH, v1))
+        .andExpect(status().isOk())
+        .andExpect(header().string(HttpHeaders.ETAG, v2))
+        .andExpect(jsonPath("$.subscriptionId").value(SUB));
+  }
+}
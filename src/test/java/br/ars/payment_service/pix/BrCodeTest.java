@@ -0,0 +1,64 @@
+package br.ars.payment_service.pix;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/** Payload EMV/TLV e CRC16 do BR Code contra valores de referência. */
+class BrCodeTest {
+
+  /** Exemplo de QR estático do Manual de Padrões para Iniciação do Pix (BCB). */
+  private static final String BCB_EXAMPLE =
+      "00020126580014br.gov.bcb.pix0136123e4567-e12b-12d1-a456-426655440000"
+          + "5204000053039865802BR5913Fulano de Tal6008BRASILIA62070503***63041D3D";
+
+  @Test
+  void crc16MatchesCcittFalseCheckValue() {
+    assertThat(BrCode.crc16(0xFFFF, "123456789")).isEqualTo(0x29B1);
+  }
+
+  @Test
+  void payloadMatchesBcbExample() {
+    final BrCode code = new BrCode("123e4567-e12b-12d1-a456-426655440000", "Fulano de Tal", "BRASILIA", null);
+    assertThat(code.payload("***")).isEqualTo(BCB_EXAMPLE);
+  }
+
+  @Test
+  void crcIsComputedOverWholePayloadIncludingTag() {
+    final String payload = new BrCode("pix@example.com", "Loja", "Sao Paulo", new BigDecimal("19.9")).payload("ARS123");
+    final String body = payload.substring(0, payload.length() - 4);
+    assertThat(body).endsWith("6304");
+    assertThat(payload.substring(payload.length() - 4))
+        .isEqualTo(String.format("%04X", BrCode.crc16(0xFFFF, body)));
+  }
+
+  @Test
+  void fieldsAreTlvWithTwoDigitLength() {
+    final String payload = new BrCode("pix@example.com", "Joao da Padaria Ltda ME Filial", "São João del-Rei", new BigDecimal("19.9"))
+        .payload("ARS123");
+    // percorre o TLV de ponta a ponta: id(2) + tamanho(2) + valor
+    int i = 0;
+    final StringBuilder ids = new StringBuilder();
+    while (i < payload.length()) {
+      final String id = payload.substring(i, i + 2);
+      final int len = Integer.parseInt(payload.substring(i + 2, i + 4));
+      ids.append(id).append(' ');
+      i += 4 + len;
+    }
+    assertThat(i).isEqualTo(payload.length());
+    assertThat(ids.toString().trim()).isEqualTo("00 26 52 53 54 58 59 60 62 63");
+    assertThat(payload).contains("540519.90")
+        .contains("5925Joao da Padaria Ltda ME F")   // nome limitado a 25
+        .contains("6015Sao Joao del-Re")            // acento removido, cidade limitada a 15
+        .contains("62100506ARS123");
+  }
+
+  @Test
+  void rejectsMissingKeyAndOversizedField() {
+    assertThatThrownBy(() -> new BrCode(" ", "Loja", "Cidade", null)).isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> BrCode.field("05", "x".repeat(100))).isInstanceOf(IllegalArgumentException.class);
+  }
+}
@@ -0,0 +1,58 @@
+package br.ars.payment_service.pix;
+
+import br.ars.payment_service.config.PixProperties;
+import br.ars.payment_service.domain.PixCharge;
+import br.ars.payment_service.domain.PixChargeStatus;
+import br.ars.payment_service.repo.PixChargeRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/** QR do PIX: renderizado uma vez por txid; o segundo pedido sai do cache, sem banco nem render. */
+class PixServiceTest {
+
+  private final PixChargeRepository repo = mock(PixChargeRepository.class);
+  private final PixExpirationService expirations = mock(PixExpirationService.class);
+  private PixService service;
+
+  @AfterEach
+  void close() {
+    if (service != null) service.shutdown();
+  }
+
+  @Test
+  void secondQrRequestIsServedFromCache() throws Exception {
+    final PixProperties props = new PixProperties();
+    props.setKey("pix@example.com");
+    props.setAmount("1.00");
+    props.getMerchant().setName("Loja");
+    props.getMerchant().setCity("Sao Paulo");
+    service = new PixService(props, repo, expirations);
+
+    final String txid = "ARS0000000000000000000001";
+    final String payload = new BrCode("pix@example.com", "Loja", "Sao Paulo", new BigDecimal("1.00")).payload(txid);
+    when(repo.findByTxid(txid)).thenReturn(Optional.of(PixCharge.builder()
+        .txid(txid)
+        .amount(new BigDecimal("1.00"))
+        .payload(payload)
+        .status(PixChargeStatus.PENDING)
+        .expiresAt(OffsetDateTime.now().plusMinutes(30))
+        .build()));
+
+    final byte[] first = service.qrPng(txid).get();
+    final byte[] second = service.qrPng(txid).get();
+
+    assertThat(first).startsWith(0x89, 'P', 'N', 'G');
+    assertThat(second).isSameAs(first);
+    verify(repo, times(1)).findByTxid(txid);
+  }
+}
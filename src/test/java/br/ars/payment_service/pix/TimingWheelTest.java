@@ -0,0 +1,96 @@
+package br.ars.payment_service.pix;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Timing wheel com 4 buckets por nível (spans 1, 4, 16 ticks; horizonte 48): prazos em cada nível,
+ * nas fronteiras de slot e além do horizonte expiram exatamente no tick do prazo.
+ */
+class TimingWheelTest {
+
+  private static final int WHEEL = 4;
+
+  /** Avança tick a tick e devolve chave -> tick em que expirou. */
+  private static Map<String, Long> run(TimingWheel wheel, long fromMs, long toMs, long tickMs) {
+    final Map<String, Long> expiredAt = new HashMap<>();
+    for (long now = fromMs; now <= toMs; now += tickMs) {
+      final long at = now;
+      wheel.advanceTo(now, k -> assertThat(expiredAt.put(k, at)).as("expirou duas vezes: " + k).isNull());
+    }
+    return expiredAt;
+  }
+
+  @Test
+  void cascadesThroughLevelsAndExpiresOnTheDeadlineTick() {
+    for (long start = 0; start < 2 * 16; start++) {
+      final TimingWheel wheel = new TimingWheel(1, WHEEL, start);
+      final Map<String, Long> deadline = new HashMap<>();
+      // nível 0 (<4), nível 1 (<16), nível 2 (<64) e além do horizonte
+      for (long d = 1; d <= 150; d++) {
+        deadline.put("k" + d, start + d);
+        wheel.schedule("k" + d, start + d);
+      }
+      final Map<String, Long> expiredAt = run(wheel, start, start + 200, 1);
+      assertThat(expiredAt).as("start=" + start).isEqualTo(deadline);
+      assertThat(wheel.size()).isZero();
+    }
+  }
+
+  @Test
+  void slotBoundariesExpireExactlyOnTime() {
+    final TimingWheel wheel = new TimingWheel(1, WHEEL, 0);
+    final List<Long> boundaries = List.of(4L, 8L, 16L, 32L, 48L, 64L, 128L);
+    for (long b : boundaries) {
+      wheel.schedule("at" + b, b);
+      wheel.schedule("before" + b, b - 1);
+      wheel.schedule("after" + b, b + 1);
+    }
+    final Map<String, Long> expiredAt = run(wheel, 0, 200, 1);
+    for (long b : boundaries) {
+      assertThat(expiredAt.get("at" + b)).isEqualTo(b);
+      assertThat(expiredAt.get("before" + b)).isEqualTo(b - 1);
+      assertThat(expiredAt.get("after" + b)).isEqualTo(b + 1);
+    }
+  }
+
+  @Test
+  void deadlineBetweenTicksRoundsUpAndPastDeadlineExpiresOnNextAdvance() {
+    final TimingWheel wheel = new TimingWheel(10, WHEEL, 1000);
+    wheel.schedule("mid", 1025);   // tick 103 => 1030 ms
+    wheel.schedule("exact", 1040); // tick 104
+    wheel.schedule("past", 900);
+    final List<String> atStart = new ArrayList<>();
+    wheel.advanceTo(1000, atStart::add);
+    assertThat(atStart).containsExactly("past");
+
+    final Map<String, Long> expiredAt = run(wheel, 1010, 1100, 10);
+    assertThat(expiredAt).containsEntry("mid", 1030L).containsEntry("exact", 1040L);
+  }
+
+  @Test
+  void cancelBeforeExpiryAndRescheduleReplaceTheEntry() {
+    final TimingWheel wheel = new TimingWheel(1, WHEEL, 0);
+    wheel.schedule("low", 2);
+    wheel.schedule("mid", 10);
+    wheel.schedule("high", 40);
+    wheel.schedule("moved", 5);
+    wheel.advanceTo(1, k -> {});     // já nas buckets, não só na fila de entrada
+    wheel.cancel("low");
+    wheel.cancel("mid");
+    wheel.cancel("high");
+    wheel.schedule("moved", 30);     // re-agendar cancela o anterior
+    assertThat(wheel.contains("low")).isFalse();
+    assertThat(wheel.size()).isEqualTo(1);
+
+    final Map<String, Long> expiredAt = run(wheel, 2, 100, 1);
+    assertThat(expiredAt).containsOnlyKeys("moved").containsEntry("moved", 30L);
+    assertThat(wheel.size()).isZero();
+  }
+}
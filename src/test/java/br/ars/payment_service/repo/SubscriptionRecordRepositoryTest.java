@@ -0,0 +1,96 @@
+package br.ars.payment_service.repo;
+
+import br.ars.payment_service.domain.BillingCustomer;
+import br.ars.payment_service.domain.SubscriptionRecord;
+import br.ars.payment_service.domain.SubscriptionsStatus;
+import br.ars.payment_service.dto.SubscriptionSummary;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Guarda contra N+1 nos caminhos de leitura: cada consulta deve custar um único statement. */
+@DataJpaTest(properties = {
+    "spring.sql.init.mode=never",
+    "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class SubscriptionRecordRepositoryTest {
+
+  @Autowired EntityManager em;
+  @Autowired EntityManagerFactory emf;
+  @Autowired SubscriptionRecordRepository repo;
+
+  private Statistics stats;
+  private UUID userId;
+
+  @BeforeEach
+  void seed() {
+    stats = emf.unwrap(SessionFactory.class).getStatistics();
+    for (int u = 0; u < 5; u++) {
+      final BillingCustomer c = BillingCustomer.builder()
+          .userId(UUID.randomUUID()).email("u" + u + "@example.com").stripeCustomerId("cus_" + u).build();
+      em.persist(c);
+      if (u == 0) userId = c.getUserId();
+      for (int i = 0; i < 4; i++) {
+        em.persist(SubscriptionRecord.builder()
+            .customer(c)
+            .stripeSubscriptionId("sub_" + u + "_" + i)
+            .status(i % 2 == 0 ? SubscriptionsStatus.ACTIVE : SubscriptionsStatus.INCOMPLETE)
+            .priceId("price_basic")
+            .currentPeriodEnd(OffsetDateTime.now().plusDays(i + 1))
+            .build());
+      }
+    }
+    em.flush();
+    em.clear();
+    stats.clear();
+  }
+
+  @Test
+  void summariesByUserUseOneStatement() {
+    final List<SubscriptionSummary> all = repo.findSummariesByUserId(userId);
+    final List<SubscriptionSummary> live = repo.findLiveSummariesByUserId(userId);
+
+    assertThat(all).hasSize(4).allMatch(s -> "cus_0".equals(s.customerId()));
+    assertThat(live).hasSize(2).allMatch(s -> s.status() == SubscriptionsStatus.ACTIVE);
+    assertThat(stats.getPrepareStatementCount()).isEqualTo(2);
+    assertThat(stats.getEntityLoadCount()).isZero();
+  }
+
+  @Test
+  void summariesByStatusAndPeriodEndUseOneStatementEach() {
+    final List<SubscriptionSummary> incomplete =
+        repo.findSummariesByStatus(SubscriptionsStatus.INCOMPLETE, PageRequest.ofSize(100));
+    final OffsetDateTime now = OffsetDateTime.now();
+    final List<SubscriptionSummary> ending =
+        repo.findLiveEndingBetween(now, now.plusDays(2), PageRequest.ofSize(100));
+
+    assertThat(incomplete).hasSize(10);
+    assertThat(ending).hasSize(5).allMatch(s -> s.customerId() != null);
+    assertThat(stats.getPrepareStatementCount()).isEqualTo(2);
+  }
+
+  @Test
+  void entitiesWithCustomerDoNotTriggerLazyLoads() {
+    final List<SubscriptionRecord> recs = repo.findAllWithCustomerByUserId(userId);
+    recs.forEach(r -> assertThat(r.getCustomer().getStripeCustomerId()).isEqualTo("cus_0"));
+
+    final SubscriptionRecord one = repo.findByStripeSubscriptionId("sub_3_1").orElseThrow();
+    assertThat(one.getCustomer().getStripeCustomerId()).isEqualTo("cus_3");
+
+    assertThat(recs).hasSize(4);
+    assertThat(stats.getPrepareStatementCount()).isEqualTo(2);
+  }
+}
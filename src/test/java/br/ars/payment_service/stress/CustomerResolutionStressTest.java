@@ -0,0 +1,129 @@
+package br.ars.payment_service.stress;
+
+import br.ars.payment_service.service.BillingCustomerService;
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * BillingCustomerService sob contenção: várias "réplicas" (instâncias com cache e monitores próprios,
+ * mesmo banco) resolvendo os mesmos usuários ao mesmo tempo, e muitos usuários distintos numa só.
+ */
+class CustomerResolutionStressTest extends StressTestSupport {
+
+  private static final int USERS = Integer.getInteger("stress.customer.users", 40);
+  private static final int REPLICAS = Integer.getInteger("stress.customer.replicas", 4);
+  private static final int CALLS = Integer.getInteger("stress.customer.calls", 10_000);
+  private static final int DISTINCT_USERS = Integer.getInteger("stress.customer.distinct-users", 5_000);
+  private static final long CACHE_SIZE = 1_000;
+
+  @Autowired JdbcTemplate jdbc;
+  @Autowired PlatformTransactionManager txManager;
+  @Autowired MeterRegistry meters;
+
+  @BeforeEach
+  void resetStripe() {
+    stripe.reset();
+  }
+
+  private BillingCustomerService replica() {
+    final BillingCustomerService s = new BillingCustomerService(jdbc, txManager, meters, CACHE_SIZE);
+    ReflectionTestUtils.setField(s, "waitMs", 30_000L);
+    ReflectionTestUtils.setField(s, "claimTtlMs", 30_000L);
+    return s;
+  }
+
+  @Test
+  void contendedUsersGetExactlyOneStripeCustomer() throws Exception {
+    final List<BillingCustomerService> replicas = new ArrayList<>();
+    for (int i = 0; i < REPLICAS; i++) replicas.add(replica());
+    final List<String> users = new ArrayList<>();
+    for (int i = 0; i < USERS; i++) users.add(UUID.randomUUID().toString());
+    final Map<String, Set<String>> seen = new ConcurrentHashMap<>();
+
+    final Result r = hammer("customer.contended", THREADS, CALLS, i -> {
+      final ThreadLocalRandom rnd = ThreadLocalRandom.current();
+      final String user = users.get(rnd.nextInt(users.size()));
+      final String id = replicas.get(rnd.nextInt(replicas.size())).findOrCreateCustomer(user, null);
+      seen.computeIfAbsent(user, u -> ConcurrentHashMap.newKeySet()).add(id);
+    });
+
+    assertThat(r.errors()).as("erros: %s", r.sampleErrors()).isZero();
+    for (String user : users) {
+      assertThat(stripe.customersCreatedFor(user)).as("customers na Stripe para %s", user).isEqualTo(1);
+      assertThat(seen.get(user)).as("ids devolvidos para %s", user).hasSize(1);
+      final List<String> rows = jdbc.queryForList(
+          "SELECT stripe_customer_id FROM billing_customer WHERE user_id = ?", String.class, UUID.fromString(user));
+      assertThat(rows).as("billing_customer de %s", user).containsExactlyElementsOf(seen.get(user));
+    }
+    // um create por usuário: os perdedores esperaram a linha do vencedor em vez de ir à Stripe
+    assertThat(stripe.createCalls()).isEqualTo(USERS);
+  }
+
+  @Test
+  void distinctUsersKeepMemoryBounded() throws Exception {
+    final BillingCustomerService service = replica();
+    final List<String> users = new ArrayList<>();
+    for (int i = 0; i < DISTINCT_USERS; i++) users.add(UUID.randomUUID().toString());
+    final long heapBefore = usedHeapAfterGc();
+
+    // cada usuário duas vezes: resolução fria e, se ainda couber no cache, a quente
+    final Result r = hammer("customer.distinct", THREADS, DISTINCT_USERS * 2,
+        i -> service.findOrCreateCustomer(users.get(i / 2), null));
+
+    assertThat(r.errors()).as("erros: %s", r.sampleErrors()).isZero();
+    assertThat(stripe.customersPerUser().values()).hasSize(DISTINCT_USERS).allMatch(n -> n == 1);
+
+    final Cache<?, ?> cache = field(service, "cache");
+    final Cache<?, ?> locks = field(service, "locks");
+    cache.cleanUp();
+    assertThat(cache.estimatedSize()).as("cache local").isLessThanOrEqualTo(CACHE_SIZE);
+    // monitores sem dono são coletáveis: depois de GC não sobra um por usuário já resolvido
+    for (int i = 0; i < 10 && locks.estimatedSize() > 0; i++) {
+      usedHeapAfterGc();
+      locks.cleanUp();
+    }
+    assertThat(locks.estimatedSize()).as("monitores por usuário").isLessThan(DISTINCT_USERS / 10);
+
+    final long growthMb = (usedHeapAfterGc() - heapBefore) / (1024 * 1024);
+    System.out.printf("[STRESS] customer.distinct heap growth=%dMB cache=%d locks=%d%n",
+        growthMb, cache.estimatedSize(), locks.estimatedSize());
+    assertThat(growthMb).as("crescimento do heap (MB)").isLessThan(64);
+  }
+
+  @Test
+  void customerLinkedToAnotherUserFailsInsteadOfSkippingTheRow() throws Exception {
+    final String user = UUID.randomUUID().toString();
+    final String id = replica().findOrCreateCustomer(user, null);
+    // o mesmo customer da Stripe passa a pertencer a outro usuário no banco
+    jdbc.update("UPDATE billing_customer SET user_id = ? WHERE user_id = ?", UUID.randomUUID(), UUID.fromString(user));
+
+    // nova réplica (cache vazio): a Stripe devolve o mesmo id (Idempotency-Key por usuário) e a gravação conflita
+    assertThatThrownBy(() -> replica().findOrCreateCustomer(user, null))
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessageContaining(id);
+    assertThat(jdbc.queryForObject("SELECT count(*) FROM billing_customer_claim WHERE user_id = ?",
+        Integer.class, UUID.fromString(user))).as("claim liberado").isZero();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T field(Object target, String name) {
+    return (T) ReflectionTestUtils.getField(target, name);
+  }
+}
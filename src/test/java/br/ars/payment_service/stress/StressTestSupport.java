@@ -0,0 +1,191 @@
+package br.ars.payment_service.stress;
+
+import com.stripe.Stripe;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Base da suíte de stress (tag "stress", fora do `test`; rodar com `stressTest`).
+ *
+ * Contexto completo contra Postgres real — STRESS_DB_URL/STRESS_DB_USER/STRESS_DB_PASSWORD ou, sem
+ * isso, um container via Testcontainers; sem nenhum dos dois os testes são pulados — e a SDK da
+ * Stripe apontada para o {@link StripeStandIn}. Banco e stand-in são únicos por JVM (o contexto Spring
+ * é reaproveitado entre as classes), então cada cenário usa ids próprios.
+ */
+@Tag("stress")
+@SpringBootTest(properties = {
+    "app.stripe.publishable-key=pk_test_stress",
+    "app.stripe.secret-key=sk_test_stress",
+    "app.stripe.webhook-secret=" + StressTestSupport.WEBHOOK_SECRET,
+    "app.catalog.enabled=false",
+    "app.warmup.enabled=false",
+    "app.audit.dir=${java.io.tmpdir}/audit-stress",
+    "app.billing.customer.wait-ms=30000",
+    "spring.datasource.hikari.connection-timeout=30000",
+    "pix.key=stress@example.com",
+    "pix.amount=1.00"
+})
+abstract class StressTestSupport {
+
+  static final String WEBHOOK_SECRET = "whsec_stress";
+
+  static final int THREADS = Integer.getInteger("stress.threads", 200);
+  static final long STRIPE_LATENCY_MS = Long.getLong("stress.stripe-latency-ms", 20);
+
+  private static String dbUrl;
+  private static String dbUser;
+  private static String dbPassword;
+  private static PostgreSQLContainer<?> container;
+  static StripeStandIn stripe;
+
+  @BeforeAll
+  static void infrastructure() throws IOException {
+    synchronized (StressTestSupport.class) {
+      if (dbUrl == null) {
+        final String url = System.getenv("STRESS_DB_URL");
+        if (url != null && !url.isBlank()) {
+          dbUrl = url;
+          dbUser = System.getenv().getOrDefault("STRESS_DB_USER", "postgres");
+          dbPassword = System.getenv().getOrDefault("STRESS_DB_PASSWORD", "");
+        } else {
+          Assumptions.assumeTrue(DockerClientFactory.instance().isDockerAvailable(),
+              "sem STRESS_DB_URL e sem Docker: suíte de stress pulada");
+          container = new PostgreSQLContainer<>("postgres:16-alpine")
+              .withCommand("postgres", "-c", "max_connections=300");
+          container.start();
+          dbUrl = container.getJdbcUrl();
+          dbUser = container.getUsername();
+          dbPassword = container.getPassword();
+        }
+      }
+      if (stripe == null) {
+        // busca da Stripe nunca enxerga o que foi criado durante o teste
+        stripe = new StripeStandIn(64, STRIPE_LATENCY_MS, TimeUnit.HOURS.toMillis(1));
+      }
+      Stripe.overrideApiBase(stripe.baseUrl());
+    }
+  }
+
+  @DynamicPropertySource
+  static void datasource(DynamicPropertyRegistry r) {
+    r.add("spring.datasource.url", () -> dbUrl);
+    r.add("spring.datasource.username", () -> dbUser);
+    r.add("spring.datasource.password", () -> dbPassword);
+  }
+
+  /* ---------------- execução concorrente + relatório ---------------- */
+
+  @FunctionalInterface
+  interface Op {
+    void run(int i) throws Exception;
+  }
+
+  record Result(String scenario, int threads, int ops, long errors, double seconds,
+                double throughput, double p50Ms, double p99Ms, double maxMs, List<String> sampleErrors) {}
+
+  /** Executa ops operações distribuídas entre threads (todas largam juntas) e mede cada uma. */
+  static Result hammer(String scenario, int threads, int ops, Op op) throws InterruptedException {
+    final AtomicInteger next = new AtomicInteger();
+    final AtomicLongArray nanos = new AtomicLongArray(ops);
+    final LongAdder errors = new LongAdder();
+    final Queue<String> sample = new ConcurrentLinkedQueue<>();
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(threads);
+
+    for (int t = 0; t < threads; t++) {
+      final Thread th = new Thread(() -> {
+        try {
+          start.await();
+          int i;
+          while ((i = next.getAndIncrement()) < ops) {
+            final long t0 = System.nanoTime();
+            try {
+              op.run(i);
+            } catch (Exception e) {
+              errors.increment();
+              if (sample.size() < 5) sample.add(e.getClass().getSimpleName() + ": " + e.getMessage());
+            }
+            nanos.set(i, System.nanoTime() - t0);
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } finally {
+          done.countDown();
+        }
+      }, "stress-" + t);
+      th.setDaemon(true);
+      th.start();
+    }
+
+    final long t0 = System.nanoTime();
+    start.countDown();
+    if (!done.await(10, TimeUnit.MINUTES)) throw new IllegalStateException(scenario + ": timeout");
+    final double seconds = (System.nanoTime() - t0) / 1e9;
+
+    final long[] sorted = new long[ops];
+    for (int i = 0; i < ops; i++) sorted[i] = nanos.get(i);
+    Arrays.sort(sorted);
+    final Result r = new Result(scenario, threads, ops, errors.sum(), seconds, ops / seconds,
+        pct(sorted, 0.50), pct(sorted, 0.99), sorted[ops - 1] / 1e6, List.copyOf(sample));
+    report(r);
+    return r;
+  }
+
+  private static double pct(long[] sorted, double p) {
+    return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)] / 1e6;
+  }
+
+  /** Uma linha legível no stdout e uma linha JSON em stress.report.dir (para comparar execuções). */
+  static void report(Result r) {
+    System.out.printf("[STRESS] %-36s threads=%d ops=%d errors=%d %.0f ops/s p50=%.2fms p99=%.2fms max=%.2fms%n",
+        r.scenario(), r.threads(), r.ops(), r.errors(), r.throughput(), r.p50Ms(), r.p99Ms(), r.maxMs());
+    r.sampleErrors().forEach(e -> System.out.println("[STRESS]   " + e));
+    final String dir = System.getProperty("stress.report.dir");
+    if (dir == null) return;
+    final String line = String.format(Locale.ROOT,
+        "{\"at\":\"%s\",\"scenario\":\"%s\",\"threads\":%d,\"ops\":%d,\"errors\":%d,\"seconds\":%.3f,"
+            + "\"throughput\":%.1f,\"p50Ms\":%.3f,\"p99Ms\":%.3f,\"maxMs\":%.3f}%n",
+        Instant.now(), r.scenario(), r.threads(), r.ops(), r.errors(), r.seconds(),
+        r.throughput(), r.p50Ms(), r.p99Ms(), r.maxMs());
+    try {
+      Files.createDirectories(Path.of(dir));
+      Files.writeString(Path.of(dir, "stress-report.jsonl"), line, StandardCharsets.UTF_8,
+          StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    } catch (IOException e) {
+      System.out.println("[STRESS] relatório não gravado: " + e.getMessage());
+    }
+  }
+
+  /** Heap usado depois de GC completo (aproximação estável o bastante para limites em MB). */
+  static long usedHeapAfterGc() throws InterruptedException {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      Thread.sleep(100);
+    }
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+}
@@ -0,0 +1,73 @@
+package br.ars.payment_service.stress;
+
+import br.ars.payment_service.replay.StripeEventReplayer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Replay de export contra o banco real: um export mais antigo que a linha gravada (por replay anterior
+ * ou webhook) não regride status nem version; reaplicar o mesmo export também não.
+ */
+class StripeEventReplayStressTest extends StressTestSupport {
+
+  @Autowired StripeEventReplayer replayer;
+  @Autowired JdbcTemplate jdbc;
+
+  @Test
+  void olderExportDoesNotRegressNewerRow() throws Exception {
+    final String run = UUID.randomUUID().toString().substring(0, 8);
+    final String sub = "sub_replay_" + run;
+    final String cus = "cus_replay_" + run;
+    final long base = Instant.now().getEpochSecond() - 3600;
+    jdbc.update("""
+        INSERT INTO billing_customer(id, user_id, email, stripe_customer_id, created_at, updated_at)
+        VALUES (?, ?, '', ?, now(), now())
+        """, UUID.randomUUID(), UUID.randomUUID(), cus);
+
+    final StripeEventReplayer.ReplayReport newer = replay(event(run + "_2", sub, cus, "canceled", base + 60));
+    assertThat(newer.upsertedSubscriptions()).isEqualTo(1);
+    final Map<String, Object> afterNewer = row(sub);
+    assertThat(afterNewer.get("status")).isEqualTo("CANCELED");
+
+    final StripeEventReplayer.ReplayReport older = replay(event(run + "_1", sub, cus, "active", base));
+    assertThat(older.upsertedSubscriptions()).isZero();
+    assertThat(older.staleSubscriptions()).isEqualTo(1);
+    assertThat(older.orphanSubscriptions()).isZero();
+    assertThat(row(sub)).as("export antigo não regride").isEqualTo(afterNewer);
+
+    final StripeEventReplayer.ReplayReport again = replay(event(run + "_2", sub, cus, "canceled", base + 60));
+    assertThat(again.upsertedSubscriptions()).isZero();
+    assertThat(row(sub)).as("mesmo export de novo não sobe version").isEqualTo(afterNewer);
+
+    // linha escrita depois do evento (webhook com updated_at = now()) também vence
+    jdbc.update("UPDATE subscription_record SET status = 'PAST_DUE', updated_at = now() WHERE stripe_subscription_id = ?", sub);
+    replay(event(run + "_3", sub, cus, "active", base + 120));
+    assertThat(row(sub).get("status")).isEqualTo("PAST_DUE");
+  }
+
+  private StripeEventReplayer.ReplayReport replay(String jsonl) throws Exception {
+    return replayer.replay(new ByteArrayInputStream(jsonl.getBytes(StandardCharsets.UTF_8)), false);
+  }
+
+  private Map<String, Object> row(String sub) {
+    return jdbc.queryForMap("SELECT status, version, updated_at FROM subscription_record WHERE stripe_subscription_id = ?", sub);
+  }
+
+  private static String event(String eventId, String sub, String cus, String status, long created) {
+    return """
+        {"id":"evt_%s","type":"customer.subscription.updated","created":%d,"data":{"object":{\
+        "id":"%s","object":"subscription","customer":"%s","status":"%s","created":%d,\
+        "items":{"data":[{"price":{"id":"price_replay","product":"prod_replay"},\
+        "current_period_start":%d,"current_period_end":%d}]}}}}
+        """.formatted(eventId, created, sub, cus, status, created, created, created + 2_592_000);
+  }
+}
@@ -0,0 +1,203 @@
+package br.ars.payment_service.stress;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Stand-in local da API da Stripe (só o que os caminhos testados chamam), com latência fixa por
+ * chamada.
+ *
+ * Customers: a busca (/v1/customers/search) só enxerga customers criados há mais de searchLagMs,
+ * como o índice eventualmente consistente da Stripe; assim só a coordenação do serviço (claim +
+ * billing_customer) impede duplicatas. Idempotency-Key repetida devolve o mesmo customer, mas
+ * conta como chamada de create. Subscriptions/invoices: 404 (o webhook segue sem retrieve).
+ */
+final class StripeStandIn implements AutoCloseable {
+
+  record Customer(String id, String email, String userId, long createdMillis) {}
+
+  private final HttpServer server;
+  private final ExecutorService pool;
+  private final long latencyMs;
+  private final long searchLagMs;
+
+  // ids únicos como os da Stripe, também entre execuções sobre o mesmo banco; o conflito de
+  // stripe_customer_id em si é exercitado de propósito em CustomerResolutionStressTest
+  private final String idPrefix = "cus_stress_" + UUID.randomUUID().toString().substring(0, 8) + "_";
+  private final AtomicLong seq = new AtomicLong();
+  private final Map<String, Customer> customers = new ConcurrentHashMap<>();
+  private final Map<String, Customer> byIdempotencyKey = new ConcurrentHashMap<>();
+  private final Map<String, LongAdder> createdPerUser = new ConcurrentHashMap<>();
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder createCalls = new LongAdder();
+
+  StripeStandIn(int threads, long latencyMs, long searchLagMs) throws IOException {
+    this.latencyMs = latencyMs;
+    this.searchLagMs = searchLagMs;
+    this.pool = Executors.newFixedThreadPool(threads);
+    this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+    this.server.createContext("/", this::handle);
+    this.server.setExecutor(pool);
+    this.server.start();
+  }
+
+  String baseUrl() {
+    return "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  long requests() {
+    return requests.sum();
+  }
+
+  long createCalls() {
+    return createCalls.sum();
+  }
+
+  /** Customers distintos criados para o userId (metadata). */
+  long customersCreatedFor(String userId) {
+    final LongAdder n = createdPerUser.get(userId);
+    return n != null ? n.sum() : 0;
+  }
+
+  Map<String, Long> customersPerUser() {
+    final Map<String, Long> out = new HashMap<>();
+    createdPerUser.forEach((u, n) -> out.put(u, n.sum()));
+    return out;
+  }
+
+  void reset() {
+    customers.clear();
+    byIdempotencyKey.clear();
+    createdPerUser.clear();
+    requests.reset();
+    createCalls.reset();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    pool.shutdownNow();
+  }
+
+  /* ---------------- HTTP ---------------- */
+
+  private void handle(HttpExchange ex) throws IOException {
+    requests.increment();
+    try (ex) {
+      if (latencyMs > 0) TimeUnit.MILLISECONDS.sleep(latencyMs);
+      final String method = ex.getRequestMethod();
+      final String path = ex.getRequestURI().getPath();
+      final Map<String, String> q = form(ex.getRequestURI().getRawQuery());
+      final Map<String, String> body = "POST".equals(method)
+          ? form(new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8))
+          : Map.of();
+
+      if ("GET".equals(method) && "/v1/customers/search".equals(path)) {
+        reply(ex, 200, search(q.getOrDefault("query", "")));
+      } else if ("POST".equals(method) && "/v1/customers".equals(path)) {
+        reply(ex, 200, json(create(ex.getRequestHeaders().getFirst("Idempotency-Key"), body)));
+      } else if ("POST".equals(method) && path.startsWith("/v1/customers/")) {
+        final Customer c = customers.get(path.substring("/v1/customers/".length()));
+        if (c == null) notFound(ex, "customer");
+        else reply(ex, 200, json(c));
+      } else {
+        notFound(ex, path);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private Customer create(String idempotencyKey, Map<String, String> body) {
+    createCalls.increment();
+    final String userId = body.get("metadata[userId]");
+    final Function<String, Customer> make = k -> {
+      final Customer c = new Customer(idPrefix + seq.incrementAndGet(), body.get("email"), userId,
+          System.currentTimeMillis());
+      customers.put(c.id(), c);
+      if (userId != null) createdPerUser.computeIfAbsent(userId, u -> new LongAdder()).increment();
+      return c;
+    };
+    return idempotencyKey != null ? byIdempotencyKey.computeIfAbsent(idempotencyKey, make) : make.apply(null);
+  }
+
+  /** Suporta as duas formas usadas pelo serviço: metadata['userId']:'x' e email:'x'. */
+  private JsonObject search(String query) {
+    final long visibleBefore = System.currentTimeMillis() - searchLagMs;
+    final String value = query.substring(query.indexOf(":'") + 2, query.length() - 1).replace("\\'", "'");
+    final boolean byMetadata = query.startsWith("metadata[");
+    final JsonArray data = new JsonArray();
+    for (Customer c : customers.values()) {
+      if (c.createdMillis() > visibleBefore) continue;
+      if (byMetadata ? value.equals(c.userId()) : value.equals(c.email())) data.add(json(c));
+    }
+    final JsonObject res = new JsonObject();
+    res.addProperty("object", "search_result");
+    res.addProperty("url", "/v1/customers/search");
+    res.addProperty("has_more", false);
+    res.add("data", data);
+    return res;
+  }
+
+  private static JsonObject json(Customer c) {
+    final JsonObject o = new JsonObject();
+    o.addProperty("id", c.id());
+    o.addProperty("object", "customer");
+    o.addProperty("created", c.createdMillis() / 1000);
+    o.addProperty("email", c.email());
+    o.addProperty("livemode", false);
+    final JsonObject md = new JsonObject();
+    if (c.userId() != null) md.addProperty("userId", c.userId());
+    o.add("metadata", md);
+    return o;
+  }
+
+  private static void notFound(HttpExchange ex, String what) throws IOException {
+    final JsonObject err = new JsonObject();
+    err.addProperty("type", "invalid_request_error");
+    err.addProperty("message", "No such resource: " + what);
+    final JsonObject res = new JsonObject();
+    res.add("error", err);
+    reply(ex, 404, res);
+  }
+
+  private static void reply(HttpExchange ex, int status, JsonObject body) throws IOException {
+    final byte[] b = body.toString().getBytes(StandardCharsets.UTF_8);
+    ex.getResponseHeaders().set("Content-Type", "application/json");
+    ex.getResponseHeaders().set("Request-Id", "req_stress");
+    ex.sendResponseHeaders(status, b.length);
+    try (OutputStream os = ex.getResponseBody()) {
+      os.write(b);
+    }
+  }
+
+  private static Map<String, String> form(String raw) {
+    final Map<String, String> out = new HashMap<>();
+    if (raw == null || raw.isEmpty()) return out;
+    for (String pair : raw.split("&")) {
+      final int eq = pair.indexOf('=');
+      if (eq <= 0) continue;
+      out.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+          URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+    }
+    return out;
+  }
+}
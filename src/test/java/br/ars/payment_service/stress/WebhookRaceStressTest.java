@@ -0,0 +1,178 @@
+package br.ars.payment_service.stress;
+
+import br.ars.payment_service.controller.StripeWebhookController;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.stripe.Stripe;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Webhooks paralelos para as mesmas assinaturas, pelo controller real (assinatura, dispatch,
+ * transação, change feed, ledger). Como a Stripe, um 500 é re-entregue até dar 200.
+ *
+ * Cada customer.subscription.updated traz um current_period_end único, então todo evento aceito é
+ * uma mudança de estado: version tem de subir exatamente uma vez por evento e o change feed tem de
+ * ter cada valor uma vez. Invoices entregues em dobro têm de virar uma linha só no invoice_ledger.
+ */
+class WebhookRaceStressTest extends StressTestSupport {
+
+  private static final int SUBSCRIPTIONS = Integer.getInteger("stress.webhook.subscriptions", 20);
+  private static final int UPDATES = Integer.getInteger("stress.webhook.updates", 50);
+  private static final int INVOICES = Integer.getInteger("stress.webhook.invoices", 10);
+  private static final int MAX_DELIVERIES = 100;
+
+  @Autowired StripeWebhookController webhook;
+  @Autowired JdbcTemplate jdbc;
+
+  private record Delivery(String subscriptionId, String eventId, String payload) {}
+
+  @Test
+  void parallelWebhooksNeverLoseUpdates() throws Exception {
+    final String run = UUID.randomUUID().toString().substring(0, 8);
+    final long base = Instant.now().getEpochSecond();
+    final List<String> subs = new ArrayList<>();
+    for (int s = 0; s < SUBSCRIPTIONS; s++) {
+      final String sub = "sub_stress_" + run + "_" + s;
+      final String cus = "cus_stress_" + run + "_" + s;
+      jdbc.update("""
+          INSERT INTO billing_customer(id, user_id, email, stripe_customer_id, created_at, updated_at)
+          VALUES (?, ?, '', ?, now(), now())
+          """, UUID.randomUUID(), UUID.randomUUID(), cus);
+      // primeiro evento cria o subscription_record (sequencial)
+      assertThat(deliver(subscriptionUpdated(run, sub, cus, base, 0)).getStatusCode().value()).isEqualTo(200);
+      subs.add(sub);
+    }
+    final Map<String, Long> versionBefore = new ConcurrentHashMap<>();
+    for (String sub : subs) versionBefore.put(sub, version(sub));
+
+    final List<Delivery> deliveries = new ArrayList<>();
+    final List<String> invoiceEvents = new ArrayList<>();
+    for (int s = 0; s < SUBSCRIPTIONS; s++) {
+      final String sub = subs.get(s);
+      final String cus = "cus_stress_" + run + "_" + s;
+      for (int u = 1; u <= UPDATES; u++) deliveries.add(subscriptionUpdated(run, sub, cus, base, u));
+      for (int i = 0; i < INVOICES; i++) {
+        final Delivery inv = invoicePaid(run, sub, cus, i);
+        invoiceEvents.add(inv.eventId());
+        deliveries.add(inv);
+        deliveries.add(inv); // entrega duplicada
+      }
+    }
+    Collections.shuffle(deliveries);
+
+    final LongAdder redeliveries = new LongAdder();
+    final Result r = hammer("webhook.race", THREADS, deliveries.size(), i -> {
+      final Delivery d = deliveries.get(i);
+      for (int attempt = 1; ; attempt++) {
+        if (deliver(d).getStatusCode().is2xxSuccessful()) return;
+        if (attempt >= MAX_DELIVERIES) throw new IllegalStateException("não aceito: " + d.eventId());
+        redeliveries.increment();
+        TimeUnit.MILLISECONDS.sleep(attempt);
+      }
+    });
+    System.out.printf("[STRESS] webhook.race redeliveries=%d%n", redeliveries.sum());
+
+    assertThat(r.errors()).as("erros: %s", r.sampleErrors()).isZero();
+    for (String sub : subs) {
+      assertThat(version(sub) - versionBefore.get(sub)).as("version de %s", sub).isEqualTo(UPDATES);
+      final List<Long> ends = jdbc.queryForList("""
+          SELECT extract(epoch FROM current_period_end)::bigint FROM subscription_change_log
+           WHERE stripe_subscription_id = ? AND old_status IS NOT NULL
+          """, Long.class, sub);
+      assertThat(ends).as("change feed de %s", sub).hasSize(UPDATES).doesNotHaveDuplicates();
+    }
+    final Long ledgerRows = jdbc.queryForObject(
+        "SELECT count(*) FROM invoice_ledger WHERE event_id LIKE ?", Long.class, "evt_inv_" + run + "_%");
+    assertThat(ledgerRows).as("linhas no invoice_ledger").isEqualTo(invoiceEvents.size());
+  }
+
+  private ResponseEntity<String> deliver(Delivery d) throws Exception {
+    final long t = Instant.now().getEpochSecond();
+    final Mac mac = Mac.getInstance("HmacSHA256");
+    mac.init(new SecretKeySpec(WEBHOOK_SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+    final String sig = HexFormat.of().formatHex(mac.doFinal((t + "." + d.payload()).getBytes(StandardCharsets.UTF_8)));
+    return webhook.handle("t=" + t + ",v1=" + sig, d.payload());
+  }
+
+  private Long version(String sub) {
+    return jdbc.queryForObject("SELECT version FROM subscription_record WHERE stripe_subscription_id = ?", Long.class, sub);
+  }
+
+  private static Delivery subscriptionUpdated(String run, String sub, String cus, long base, int n) {
+    final JsonObject price = new JsonObject();
+    price.addProperty("id", "price_stress");
+    price.addProperty("object", "price");
+    price.addProperty("product", "prod_stress");
+    final JsonObject item = new JsonObject();
+    item.addProperty("id", "si_" + sub);
+    item.addProperty("object", "subscription_item");
+    item.addProperty("current_period_start", base);
+    item.addProperty("current_period_end", base + 86_400 + n);
+    item.add("price", price);
+    final JsonArray items = new JsonArray();
+    items.add(item);
+    final JsonObject list = new JsonObject();
+    list.addProperty("object", "list");
+    list.add("data", items);
+
+    final JsonObject s = new JsonObject();
+    s.addProperty("id", sub);
+    s.addProperty("object", "subscription");
+    s.addProperty("customer", cus);
+    s.addProperty("status", "active");
+    s.addProperty("cancel_at_period_end", false);
+    s.add("items", list);
+    final String eventId = "evt_sub_" + run + "_" + sub + "_" + n;
+    return new Delivery(sub, eventId, event(eventId, "customer.subscription.updated", s));
+  }
+
+  private static Delivery invoicePaid(String run, String sub, String cus, int n) {
+    final JsonObject inv = new JsonObject();
+    inv.addProperty("id", "in_" + sub + "_" + n);
+    inv.addProperty("object", "invoice");
+    inv.addProperty("customer", cus);
+    inv.addProperty("subscription", sub);
+    inv.addProperty("status", "paid");
+    inv.addProperty("currency", "brl");
+    inv.addProperty("amount_due", 2990);
+    inv.addProperty("amount_paid", 2990);
+    inv.addProperty("amount_remaining", 0);
+    inv.addProperty("total", 2990);
+    inv.addProperty("created", Instant.now().getEpochSecond());
+    final String eventId = "evt_inv_" + run + "_" + sub + "_" + n;
+    return new Delivery(sub, eventId, event(eventId, "invoice.payment_succeeded", inv));
+  }
+
+  private static String event(String id, String type, JsonObject object) {
+    final JsonObject data = new JsonObject();
+    data.add("object", object);
+    final JsonObject e = new JsonObject();
+    e.addProperty("id", id);
+    e.addProperty("object", "event");
+    e.addProperty("api_version", Stripe.API_VERSION);
+    e.addProperty("created", Instant.now().getEpochSecond());
+    e.addProperty("type", type);
+    e.addProperty("livemode", false);
+    e.add("data", data);
+    return e.toString();
+  }
+}